@@ -0,0 +1,826 @@
+// BookFlow - Loan Analytics
+// Created by Michael Semera
+// LoanAnalytics.java, LoanQuery.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// ==================== LoanAnalytics.java ====================
+// Every loan, current and archived, copied once into primitive columns so reports run
+// in memory instead of against the desks' database. A query is one pass over the
+// columns, split across the fork/join pool: each slice filters its rows and sums them
+// into its own group table, and the tables are merged pairwise on the way back up.
+//
+// 21 bytes per loan: book, patron and issue day as ints, due and return as
+// offsets from the issue day, fine in cents, status. Category and membership are
+// per-book and per-patron codes, as they stood when the snapshot was taken.
+class LoanAnalytics {
+
+    // Rows per fork/join leaf; smaller slices just add merge work
+    private static final int LEAF_ROWS = 1 << 16;
+    // Above this many possible groups (books, patrons, book x month...) merging the slices'
+    // tables would cost more than the scan, so each worker owns a share of the keys instead
+    private static final long PARTITION_ABOVE_GROUPS = 1 << 12;
+    private static final short NOT_RETURNED = -1;
+    private static final String[] STATUS_NAMES = { "Active", "Returned", "Overdue" };
+    private static final String UNCATEGORIZED = "Uncategorized";
+    private static final String[] MEMBERSHIP_NAMES = { "Unknown", "Basic", "Premium", "Student" };
+
+    // One group of a report; labels are in the query's group-by order
+    static class Row {
+        final String[] labels;
+        final int[] codes;
+        final long loans;
+        final long fineCents;
+        final long late;
+        final long returned;
+        final long loanDays;
+
+        Row(String[] labels, int[] codes, long loans, long fineCents, long late, long returned, long loanDays) {
+            this.labels = labels;
+            this.codes = codes;
+            this.loans = loans;
+            this.fineCents = fineCents;
+            this.late = late;
+            this.returned = returned;
+            this.loanDays = loanDays;
+        }
+
+        public String getLabel(int dimension) { return labels[dimension]; }
+        public long getLoans() { return loans; }
+        public double getFines() { return fineCents / 100.0; }
+        public long getLate() { return late; }
+
+        // Mean days out, over the loans in the group that have come back
+        public double getAverageDays() {
+            return returned == 0 ? 0 : (double) loanDays / returned;
+        }
+    }
+
+    // Outcome of one query
+    static class Report {
+        final LoanQuery query;
+        final List<Row> rows;
+        final int groups;          // before the top-k cut
+        final int rowsScanned;
+        final long rowsMatched;
+        final long elapsedMs;
+
+        Report(LoanQuery query, List<Row> rows, int groups, int rowsScanned, long rowsMatched, long elapsedMs) {
+            this.query = query;
+            this.rows = rows;
+            this.groups = groups;
+            this.rowsScanned = rowsScanned;
+            this.rowsMatched = rowsMatched;
+            this.elapsedMs = elapsedMs;
+        }
+
+        // Book and patron groups are labelled "#id" by the engine; this swaps in titles and
+        // names for the rows actually shown
+        public void resolveNames(DatabaseManager db) throws SQLException {
+            List<LoanQuery.Dimension> dims = query.getGroupBy();
+            for (int d = 0; d < dims.size(); d++) {
+                LoanQuery.Dimension dim = dims.get(d);
+                if (dim != LoanQuery.Dimension.BOOK && dim != LoanQuery.Dimension.USER) {
+                    continue;
+                }
+                Set<Integer> ids = new HashSet<>();
+                for (Row row : rows) {
+                    ids.add(row.codes[d]);
+                }
+                Map<Integer, String> names = dim == LoanQuery.Dimension.BOOK
+                    ? db.lookupBookTitles(ids) : db.lookupUserNames(ids);
+                for (Row row : rows) {
+                    String name = names.get(row.codes[d]);
+                    if (name != null) {
+                        row.labels[d] = name;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return groups + " groups from " + rowsMatched + " of " + rowsScanned + " loans in " + elapsedMs + " ms";
+        }
+    }
+
+    // ---------- Columns ----------
+
+    private final int size;
+    private final int[] bookIds;
+    private final int[] userIds;
+    private final int[] issueDays;
+    private final short[] dueOffsets;
+    private final short[] returnOffsets;
+    private final int[] fineCents;
+    private final byte[] statuses;
+
+    // Dimension codes by id; 0 is "Uncategorized" / "Unknown"
+    private final short[] categoryOfBook;
+    private final byte[] membershipOfUser;
+    private final String[] categoryNames;
+
+    // Calendar lookups over the issue-day range, indexed by day - firstDay
+    private final int firstDay;
+    private final int[] monthOfDay;    // year * 12 + month - 1
+    private final int firstMonth;
+    private final int monthCount;
+
+    // Still-open loans past their due date on this day count as late
+    private final int asOfDay;
+    private final long loadedAtMillis;
+
+    private LoanAnalytics(Loader loader, Map<Integer, String> categoryByBook,
+                          Map<Integer, String> membershipByUser, int asOfDay) {
+        this.size = loader.size;
+        this.bookIds = loader.bookIds;
+        this.userIds = loader.userIds;
+        this.issueDays = loader.issueDays;
+        this.dueOffsets = loader.dueOffsets;
+        this.returnOffsets = loader.returnOffsets;
+        this.fineCents = loader.fineCents;
+        this.statuses = loader.statuses;
+        this.asOfDay = asOfDay;
+        this.loadedAtMillis = System.currentTimeMillis();
+
+        // Categories are dictionary-encoded in name order, so codes sort like labels
+        Set<String> categories = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (String category : categoryByBook.values()) {
+            if (category != null && !category.isBlank()) {
+                categories.add(category.trim());
+            }
+        }
+        categoryNames = new String[categories.size() + 1];
+        categoryNames[0] = UNCATEGORIZED;
+        Map<String, Short> categoryCodes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        int next = 1;
+        for (String category : categories) {
+            categoryNames[next] = category;
+            categoryCodes.put(category, (short) next++);
+        }
+        int maxBook = Math.max(loader.maxBookId, maxKey(categoryByBook));
+        categoryOfBook = new short[maxBook + 1];
+        for (Map.Entry<Integer, String> entry : categoryByBook.entrySet()) {
+            String category = entry.getValue();
+            if (category != null && !category.isBlank()) {
+                categoryOfBook[entry.getKey()] = categoryCodes.get(category.trim());
+            }
+        }
+
+        int maxUser = Math.max(loader.maxUserId, maxKey(membershipByUser));
+        membershipOfUser = new byte[maxUser + 1];
+        for (Map.Entry<Integer, String> entry : membershipByUser.entrySet()) {
+            membershipOfUser[entry.getKey()] = (byte) Math.max(0, indexOf(MEMBERSHIP_NAMES, entry.getValue()));
+        }
+
+        // A loan-free snapshot still gets a one-day table so every lookup stays in range
+        firstDay = size == 0 ? asOfDay : loader.minIssueDay;
+        int lastDay = size == 0 ? asOfDay : loader.maxIssueDay;
+        monthOfDay = new int[lastDay - firstDay + 1];
+        for (int i = 0; i < monthOfDay.length; i++) {
+            LocalDate date = LocalDate.ofEpochDay(firstDay + i);
+            monthOfDay[i] = date.getYear() * 12 + date.getMonthValue() - 1;
+        }
+        firstMonth = monthOfDay[0];
+        monthCount = monthOfDay[monthOfDay.length - 1] - firstMonth + 1;
+    }
+
+    // Reads the whole loan history in one streamed pass plus the two dimension columns.
+    // Seconds at 10M loans, so it is taken on demand and reused until refreshed.
+    public static LoanAnalytics load(DatabaseManager db) throws SQLException {
+        long start = System.nanoTime();
+        int today = (int) db.getBusinessCalendar().todayEpochDay();
+        Map<Integer, String> categoryByBook = db.getBookCategories();
+        Map<Integer, String> membershipByUser = db.getUserMembershipTypes();
+
+        Loader loader = new Loader();
+        db.forEachLoanFact(loader);
+        LoanAnalytics analytics = new LoanAnalytics(loader, categoryByBook, membershipByUser, today);
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("✅ Loan analytics: " + analytics.size + " loans, " + categoryByBook.size() +
+                           " books, " + membershipByUser.size() + " patrons loaded in " + elapsedMs + " ms");
+        return analytics;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getLoadedAtMillis() {
+        return loadedAtMillis;
+    }
+
+    public List<String> getCategories() {
+        return Arrays.asList(categoryNames);
+    }
+
+    public static List<String> getMembershipTypeNames() {
+        return Arrays.asList(MEMBERSHIP_NAMES).subList(1, MEMBERSHIP_NAMES.length);
+    }
+
+    public static List<String> getStatusNames() {
+        return Arrays.asList(STATUS_NAMES);
+    }
+
+    // ---------- Queries ----------
+
+    public Report run(LoanQuery query) {
+        long start = System.nanoTime();
+        Plan plan = new Plan(query);
+        Groups groups;
+        if (size == 0) {
+            groups = new Groups(1, 1);
+        } else if (plan.groupCount() <= PARTITION_ABOVE_GROUPS) {
+            groups = ForkJoinPool.commonPool().invoke(new Scan(plan, 0, size));
+        } else {
+            groups = ForkJoinPool.commonPool().invoke(new PartitionedScan(plan));
+        }
+
+        // Top k with a bounded heap: the weakest kept group sits on top and is pushed out
+        Comparator<Integer> order = plan.order(groups);
+        int k = query.getLimit() > 0 ? Math.min(query.getLimit(), groups.size) : groups.size;
+        List<Integer> picked = new ArrayList<>(k);
+        if (k < groups.size) {
+            PriorityQueue<Integer> heap = new PriorityQueue<>(k + 1, order.reversed());
+            for (int g = 0; g < groups.size; g++) {
+                heap.add(g);
+                if (heap.size() > k) {
+                    heap.poll();
+                }
+            }
+            picked.addAll(heap);
+        } else {
+            for (int g = 0; g < groups.size; g++) {
+                picked.add(g);
+            }
+        }
+        picked.sort(order);
+
+        List<Row> rows = new ArrayList<>(picked.size());
+        for (int g : picked) {
+            int[] codes = plan.decode(groups.keys[g]);
+            String[] labels = new String[codes.length];
+            for (int d = 0; d < codes.length; d++) {
+                labels[d] = label(plan.dims[d], codes[d]);
+            }
+            rows.add(new Row(labels, codes, groups.loans[g], groups.fines[g], groups.late[g],
+                             groups.returned[g], groups.loanDays[g]));
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        return new Report(query, rows, groups.size, size, groups.matched, elapsedMs);
+    }
+
+    private String label(LoanQuery.Dimension dim, int code) {
+        switch (dim) {
+            case CATEGORY: return categoryNames[code];
+            case MEMBERSHIP: return MEMBERSHIP_NAMES[code];
+            case STATUS: return STATUS_NAMES[code];
+            case WEEKDAY: return DayOfWeek.of(code + 1).getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+            case MONTH: {
+                int month = firstMonth + code;
+                return String.format("%d-%02d", month / 12, month % 12 + 1);
+            }
+            case QUARTER: {
+                int quarter = firstMonth / 3 + code;
+                return (quarter / 4) + "-Q" + (quarter % 4 + 1);
+            }
+            case YEAR: return String.valueOf(firstMonth / 12 + code);
+            default: return "#" + code; // BOOK, USER: see Report.resolveNames
+        }
+    }
+
+    // A query resolved against this snapshot's dictionaries: filters become flag arrays
+    // and day bounds, the group-by a mixed-radix key
+    private final class Plan {
+        final LoanQuery.Dimension[] dims;
+        final long[] radix;
+        final int fromDay;
+        final int toDay;
+        final boolean[] categoryAllowed;
+        final boolean[] membershipAllowed;
+        final boolean[] statusAllowed;
+        final LoanQuery.Order order;
+
+        Plan(LoanQuery query) {
+            dims = query.getGroupBy().toArray(new LoanQuery.Dimension[0]);
+            radix = new long[dims.length];
+            for (int d = 0; d < dims.length; d++) {
+                radix[d] = cardinality(dims[d]);
+            }
+            fromDay = query.getIssuedFrom() == null ? Integer.MIN_VALUE : (int) query.getIssuedFrom().toEpochDay();
+            toDay = query.getIssuedTo() == null ? Integer.MAX_VALUE : (int) query.getIssuedTo().toEpochDay();
+            categoryAllowed = allowed(categoryNames, query.getCategories());
+            membershipAllowed = allowed(MEMBERSHIP_NAMES, query.getMembershipTypes());
+            statusAllowed = allowed(STATUS_NAMES, query.getStatuses());
+            order = query.getOrder();
+        }
+
+        private long cardinality(LoanQuery.Dimension dim) {
+            switch (dim) {
+                case CATEGORY: return categoryNames.length;
+                case MEMBERSHIP: return MEMBERSHIP_NAMES.length;
+                case STATUS: return STATUS_NAMES.length;
+                case WEEKDAY: return 7;
+                case MONTH: return monthCount;
+                case QUARTER: return (firstMonth + monthCount - 1) / 3 - firstMonth / 3 + 1;
+                case YEAR: return (firstMonth + monthCount - 1) / 12 - firstMonth / 12 + 1;
+                case BOOK: return categoryOfBook.length;
+                default: return membershipOfUser.length;
+            }
+        }
+
+        // null when the query doesn't filter on this column; names match case-insensitively
+        private boolean[] allowed(String[] names, Set<String> wanted) {
+            if (wanted.isEmpty()) {
+                return null;
+            }
+            boolean[] flags = new boolean[names.length];
+            for (int i = 0; i < names.length; i++) {
+                for (String name : wanted) {
+                    flags[i] |= names[i].equalsIgnoreCase(name);
+                }
+            }
+            return flags;
+        }
+
+        int code(LoanQuery.Dimension dim, int row) {
+            switch (dim) {
+                case CATEGORY: return categoryOfBook[bookIds[row]];
+                case MEMBERSHIP: return membershipOfUser[userIds[row]];
+                case STATUS: return statuses[row];
+                case WEEKDAY: return Math.floorMod(issueDays[row] + 3, 7); // 1970-01-01 was a Thursday
+                case MONTH: return monthOfDay[issueDays[row] - firstDay] - firstMonth;
+                case QUARTER: return monthOfDay[issueDays[row] - firstDay] / 3 - firstMonth / 3;
+                case YEAR: return monthOfDay[issueDays[row] - firstDay] / 12 - firstMonth / 12;
+                case BOOK: return bookIds[row];
+                default: return userIds[row];
+            }
+        }
+
+        int rows() {
+            return size;
+        }
+
+        // Upper bound on distinct keys, saturating
+        long groupCount() {
+            long count = 1;
+            for (long r : radix) {
+                count = count > Long.MAX_VALUE / r ? Long.MAX_VALUE : count * r;
+            }
+            return count;
+        }
+
+        // The slice [from, to) folded into a fresh group table, keeping only the keys of
+        // the given partition (partitions == 1 keeps all)
+        Groups scan(int from, int to, int partition, int partitions) {
+            long keySpace = groupCount();
+            long expected = Math.min(keySpace, to - from) / partitions;
+            Groups groups = new Groups((int) Math.max(1, Math.min(1 << 20, expected)), keySpace);
+            for (int row = from; row < to; row++) {
+                int issue = issueDays[row];
+                if (issue < fromDay || issue > toDay) {
+                    continue;
+                }
+                if (statusAllowed != null && !statusAllowed[statuses[row]]) {
+                    continue;
+                }
+                if (categoryAllowed != null && !categoryAllowed[categoryOfBook[bookIds[row]]]) {
+                    continue;
+                }
+                if (membershipAllowed != null && !membershipAllowed[membershipOfUser[userIds[row]]]) {
+                    continue;
+                }
+
+                long key = 0;
+                for (int d = 0; d < dims.length; d++) {
+                    key = key * radix[d] + code(dims[d], row);
+                }
+                if (partitions > 1 && partitionOf(key, partitions) != partition) {
+                    continue;
+                }
+                int due = issue + dueOffsets[row];
+                short returnOffset = returnOffsets[row];
+                boolean late;
+                long days;
+                if (returnOffset == NOT_RETURNED) {
+                    late = asOfDay > due;
+                    days = -1;
+                } else {
+                    late = issue + returnOffset > due;
+                    days = returnOffset;
+                }
+                groups.add(key, fineCents[row], late, days);
+            }
+            return groups;
+        }
+
+        int[] decode(long key) {
+            int[] codes = new int[dims.length];
+            for (int d = dims.length - 1; d >= 0; d--) {
+                codes[d] = (int) (key % radix[d]);
+                key /= radix[d];
+            }
+            return codes;
+        }
+
+        // Best first; equal groups fall back to key order, so reports are repeatable
+        Comparator<Integer> order(Groups groups) {
+            Comparator<Integer> byKey = Comparator.comparingLong(g -> groups.keys[g]);
+            switch (order) {
+                case LOANS: return Comparator.<Integer>comparingLong(g -> -groups.loans[g]).thenComparing(byKey);
+                case FINES: return Comparator.<Integer>comparingLong(g -> -groups.fines[g]).thenComparing(byKey);
+                case LATE: return Comparator.<Integer>comparingLong(g -> -groups.late[g]).thenComparing(byKey);
+                default: return byKey;
+            }
+        }
+    }
+
+    static int partitionOf(long key, int partitions) {
+        return (int) (((key * 0x9E3779B97F4A7C15L) >>> 33) % partitions);
+    }
+
+    // Splits the row range until slices are LEAF_ROWS long, then merges the partial tables
+    private static final class Scan extends RecursiveTask<Groups> {
+        private static final long serialVersionUID = 1L;
+
+        private final Plan plan;
+        private final int from;
+        private final int to;
+
+        Scan(Plan plan, int from, int to) {
+            this.plan = plan;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Groups compute() {
+            if (to - from <= LEAF_ROWS) {
+                return plan.scan(from, to, 0, 1);
+            }
+            int middle = (from + to) >>> 1;
+            Scan left = new Scan(plan, from, middle);
+            left.fork();
+            Groups right = new Scan(plan, middle, to).compute();
+            Groups merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+
+    // One task per worker, each scanning every row but aggregating only its own share of
+    // the keys. The filters run once per worker, but no key is ever merged: the partial
+    // tables are disjoint and are simply concatenated.
+    private static final class PartitionedScan extends RecursiveTask<Groups> {
+        private static final long serialVersionUID = 1L;
+
+        private final Plan plan;
+
+        PartitionedScan(Plan plan) {
+            this.plan = plan;
+        }
+
+        @Override
+        protected Groups compute() {
+            int partitions = ForkJoinPool.getCommonPoolParallelism();
+            List<RecursiveTask<Groups>> tasks = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                int count = partitions;
+                tasks.add(new RecursiveTask<Groups>() {
+                    @Override
+                    protected Groups compute() {
+                        return plan.scan(0, plan.rows(), partition, count);
+                    }
+                });
+            }
+            invokeAll(tasks);
+            Groups all = tasks.get(0).join();
+            for (int p = 1; p < partitions; p++) {
+                all.append(tasks.get(p).join());
+            }
+            return all;
+        }
+    }
+
+    // Per-slice aggregate: group key -> slot in parallel measure arrays. Small key spaces
+    // index a plain array; large ones go through a hash map.
+    private static final class Groups {
+        private final int[] denseSlots;
+        private final LongLongHashMap slots;
+        long[] keys;
+        long[] loans;
+        long[] fines;
+        long[] late;
+        long[] returned;
+        long[] loanDays;
+        int size;
+        long matched;
+
+        Groups(int expected, long keySpace) {
+            if (keySpace <= PARTITION_ABOVE_GROUPS) {
+                denseSlots = new int[(int) keySpace];
+                Arrays.fill(denseSlots, -1);
+                slots = null;
+            } else {
+                denseSlots = null;
+                slots = new LongLongHashMap(expected);
+            }
+            keys = new long[expected];
+            loans = new long[expected];
+            fines = new long[expected];
+            late = new long[expected];
+            returned = new long[expected];
+            loanDays = new long[expected];
+        }
+
+        // days < 0: not returned yet
+        void add(long key, long fineCents, boolean isLate, long days) {
+            int g = slotFor(key);
+            loans[g]++;
+            fines[g] += fineCents;
+            if (isLate) {
+                late[g]++;
+            }
+            if (days >= 0) {
+                returned[g]++;
+                loanDays[g] += days;
+            }
+            matched++;
+        }
+
+        void merge(Groups other) {
+            for (int o = 0; o < other.size; o++) {
+                int g = slotFor(other.keys[o]);
+                loans[g] += other.loans[o];
+                fines[g] += other.fines[o];
+                late[g] += other.late[o];
+                returned[g] += other.returned[o];
+                loanDays[g] += other.loanDays[o];
+            }
+            matched += other.matched;
+        }
+
+        // Adds groups known not to be in this table
+        void append(Groups other) {
+            for (int o = 0; o < other.size; o++) {
+                int g = slotFor(other.keys[o]);
+                loans[g] = other.loans[o];
+                fines[g] = other.fines[o];
+                late[g] = other.late[o];
+                returned[g] = other.returned[o];
+                loanDays[g] = other.loanDays[o];
+            }
+            matched += other.matched;
+        }
+
+        private int slotFor(long key) {
+            if (denseSlots != null) {
+                int g = denseSlots[(int) key];
+                if (g >= 0) {
+                    return g;
+                }
+            } else {
+                // LongLongHashMap reserves key 0
+                long g = slots.get(key + 1, -1);
+                if (g >= 0) {
+                    return (int) g;
+                }
+            }
+            if (size == keys.length) {
+                int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                loans = Arrays.copyOf(loans, capacity);
+                fines = Arrays.copyOf(fines, capacity);
+                late = Arrays.copyOf(late, capacity);
+                returned = Arrays.copyOf(returned, capacity);
+                loanDays = Arrays.copyOf(loanDays, capacity);
+            }
+            keys[size] = key;
+            if (denseSlots != null) {
+                denseSlots[(int) key] = size;
+            } else {
+                slots.put(key + 1, size);
+            }
+            return size++;
+        }
+    }
+
+    // Growable columns filled from the loan cursor
+    private static final class Loader implements DatabaseManager.LoanFactVisitor {
+        int size;
+        int[] bookIds = new int[1 << 16];
+        int[] userIds = new int[1 << 16];
+        int[] issueDays = new int[1 << 16];
+        short[] dueOffsets = new short[1 << 16];
+        short[] returnOffsets = new short[1 << 16];
+        int[] fineCents = new int[1 << 16];
+        byte[] statuses = new byte[1 << 16];
+        int maxBookId;
+        int maxUserId;
+        int minIssueDay = Integer.MAX_VALUE;
+        int maxIssueDay = Integer.MIN_VALUE;
+
+        @Override
+        public void visit(int bookId, int userId, int issueDay, int dueDay, int returnDay, int status, int fine) {
+            if (size == bookIds.length) {
+                int capacity = size + (size >> 1);
+                bookIds = Arrays.copyOf(bookIds, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+                issueDays = Arrays.copyOf(issueDays, capacity);
+                dueOffsets = Arrays.copyOf(dueOffsets, capacity);
+                returnOffsets = Arrays.copyOf(returnOffsets, capacity);
+                fineCents = Arrays.copyOf(fineCents, capacity);
+                statuses = Arrays.copyOf(statuses, capacity);
+            }
+            bookIds[size] = bookId;
+            userIds[size] = userId;
+            issueDays[size] = issueDay;
+            dueOffsets[size] = offset(dueDay - issueDay);
+            returnOffsets[size] = returnDay < 0 ? NOT_RETURNED : offset(returnDay - issueDay);
+            fineCents[size] = fine;
+            statuses[size] = (byte) Math.max(0, Math.min(STATUS_NAMES.length, status) - 1);
+            maxBookId = Math.max(maxBookId, bookId);
+            maxUserId = Math.max(maxUserId, userId);
+            minIssueDay = Math.min(minIssueDay, issueDay);
+            maxIssueDay = Math.max(maxIssueDay, issueDay);
+            size++;
+        }
+
+        // Clamped; a loan out for 90 years is a data error, not something to overflow on
+        private static short offset(int days) {
+            return (short) Math.max(0, Math.min(Short.MAX_VALUE, days));
+        }
+    }
+
+    private static int maxKey(Map<Integer, ?> map) {
+        int max = 0;
+        for (int id : map.keySet()) {
+            max = Math.max(max, id);
+        }
+        return max;
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
+
+// ==================== LoanQuery.java ====================
+// What the Reports screen (or the loan-report command) asks for: filters on issue
+// date, category, membership and status, up to three group-by dimensions, an order
+// and an optional top-k cut. Empty filter sets mean "all".
+class LoanQuery {
+
+    enum Dimension {
+        CATEGORY("Category"),
+        MEMBERSHIP("Membership"),
+        STATUS("Status"),
+        WEEKDAY("Weekday"),
+        MONTH("Month"),
+        QUARTER("Quarter"),
+        YEAR("Year"),
+        BOOK("Book"),
+        USER("Patron");
+
+        private final String label;
+
+        Dimension(String label) { this.label = label; }
+
+        public String getLabel() { return label; }
+    }
+
+    enum Order {
+        LOANS("Most loans"),
+        FINES("Highest fines"),
+        LATE("Most late"),
+        GROUP("Group order");
+
+        private final String label;
+
+        Order(String label) { this.label = label; }
+
+        public String getLabel() { return label; }
+
+        @Override
+        public String toString() { return label; }
+    }
+
+    static final int MAX_DIMENSIONS = 3;
+
+    private LocalDate issuedFrom;
+    private LocalDate issuedTo;
+    private final Set<String> categories = new LinkedHashSet<>();
+    private final Set<String> membershipTypes = new LinkedHashSet<>();
+    private final Set<String> statuses = new LinkedHashSet<>();
+    private final List<Dimension> groupBy = new ArrayList<>();
+    private Order order = Order.LOANS;
+    private int limit;
+
+    // Inclusive; either end may be null
+    public LoanQuery issuedBetween(LocalDate from, LocalDate to) {
+        this.issuedFrom = from;
+        this.issuedTo = to;
+        return this;
+    }
+
+    public LoanQuery category(String category) {
+        categories.add(category);
+        return this;
+    }
+
+    public LoanQuery membership(String membershipType) {
+        membershipTypes.add(membershipType);
+        return this;
+    }
+
+    public LoanQuery status(String status) {
+        statuses.add(status);
+        return this;
+    }
+
+    public LoanQuery groupBy(Dimension dimension) {
+        if (groupBy.contains(dimension)) {
+            return this;
+        }
+        if (groupBy.size() == MAX_DIMENSIONS) {
+            throw new IllegalArgumentException("At most " + MAX_DIMENSIONS + " group-by dimensions");
+        }
+        groupBy.add(dimension);
+        return this;
+    }
+
+    public LoanQuery orderBy(Order order) {
+        this.order = order;
+        return this;
+    }
+
+    // Keep only the first n groups in order; 0 keeps all
+    public LoanQuery top(int n) {
+        this.limit = Math.max(0, n);
+        return this;
+    }
+
+    public LocalDate getIssuedFrom() { return issuedFrom; }
+    public LocalDate getIssuedTo() { return issuedTo; }
+    public Set<String> getCategories() { return categories; }
+    public Set<String> getMembershipTypes() { return membershipTypes; }
+    public Set<String> getStatuses() { return statuses; }
+    public List<Dimension> getGroupBy() { return groupBy; }
+    public Order getOrder() { return order; }
+    public int getLimit() { return limit; }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("loans");
+        if (issuedFrom != null || issuedTo != null) {
+            text.append(" issued ").append(issuedFrom == null ? "..." : issuedFrom)
+                .append(" to ").append(issuedTo == null ? "..." : issuedTo);
+        }
+        appendFilter(text, "category", categories);
+        appendFilter(text, "membership", membershipTypes);
+        appendFilter(text, "status", statuses);
+        if (!groupBy.isEmpty()) {
+            text.append(" by");
+            for (Dimension dimension : groupBy) {
+                text.append(' ').append(dimension.getLabel().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (limit > 0) {
+            text.append(", top ").append(limit);
+        }
+        return text.toString();
+    }
+
+    private static void appendFilter(StringBuilder text, String name, Collection<String> values) {
+        if (!values.isEmpty()) {
+            text.append(", ").append(name).append(' ').append(String.join("/", values));
+        }
+    }
+}
@@ -0,0 +1,525 @@
+// BookFlow - HTTP API
+// Created by Michael Semera
+// ApiServer.java, Json.java
+
+package com.michaelsemera.bookflow;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// ==================== ApiServer.java ====================
+// Headless mode for kiosks and the web catalogue: JSON over the JDK's built-in HTTP
+// server, one (virtual, where the JDK has them) thread per request, calling straight
+// into DatabaseManager on a pooled connection of its own. A semaphore caps in-flight
+// work; anything beyond it waits briefly and is then turned away with 503 so overload
+// never becomes a growing queue.
+//
+//   GET  /api/search?q=...&limit=20      GET  /api/books/{id}     GET /api/books/isbn/{isbn}
+//   POST /api/checkout {"bookId","userId","days"}   POST /api/return {"loanId"}
+//   GET  /api/stats                      GET  /api/metrics
+class ApiServer {
+
+    static final int PORT = Integer.getInteger("bookflow.api.port", 8080);
+    // Requests executing at once; the rest wait up to QUEUE_TIMEOUT_MS for a slot
+    static final int MAX_CONCURRENT = Integer.getInteger("bookflow.api.maxConcurrent", 256);
+    static final long QUEUE_TIMEOUT_MS = Long.getLong("bookflow.api.queueTimeoutMs", 100L);
+    // Database connections shared by the running requests; MySQL does little better with
+    // many more queries in flight than it has cores, so this stays well below MAX_CONCURRENT
+    static final int POOL_SIZE = Integer.getInteger("bookflow.api.poolSize", 16);
+    // How long an admitted request waits for a connection before it gets a 503
+    static final long POOL_TIMEOUT_MS = Long.getLong("bookflow.api.poolTimeoutMs", 1000L);
+    static final int MAX_BODY_BYTES = Integer.getInteger("bookflow.api.maxBodyBytes", 4096);
+    static final int MAX_QUERY_LENGTH = 200;
+    static final int MAX_RESULTS = 100;
+    static final int DEFAULT_LOAN_DAYS = 14;
+
+    private final DatabaseManager dbManager;
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT);
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new HashMap<>();
+    private final LongAdder rejected = new LongAdder();
+    private final long startedAt = System.currentTimeMillis();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // Thrown by handlers to answer with a specific status and message
+    private static class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Handler {
+        String handle(HttpExchange exchange) throws ApiException, SQLException, IOException;
+    }
+
+    public ApiServer(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    public void start() throws IOException {
+        // Read by the JDK server at first use: drop connections that dawdle (seconds)
+        setDefault("sun.net.httpserver.maxReqTime", "10");
+        setDefault("sun.net.httpserver.maxRspTime", "30");
+
+        server = HttpServer.create(new InetSocketAddress(PORT), 1024);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        dbManager.enableRequestPool(POOL_SIZE);
+
+        route("GET", "/api/search", this::search);
+        route("GET", "/api/books/isbn/", this::bookByIsbn);
+        route("GET", "/api/books/", this::bookById);
+        route("POST", "/api/checkout", this::checkout);
+        route("POST", "/api/return", this::returnLoan);
+        route("GET", "/api/stats", exchange -> Json.stats(dbManager.getDashboardStats()));
+        route("GET", "/api/metrics", false, exchange -> metricsJson());
+
+        server.start();
+        System.out.println("✅ BookFlow API listening on port " + PORT);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Virtual threads make a blocked JDBC call cost a few hundred bytes instead of a
+    // platform thread; looked up reflectively so the code still runs on older JDKs
+    private static ExecutorService newRequestExecutor() {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            System.out.println("✅ API requests run on virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException e) {
+            // Enough threads to fill every permit plus headroom to send quick 503s;
+            // past that the dispatcher runs the task itself, which slows accepting
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_CONCURRENT, MAX_CONCURRENT * 2,
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), new ThreadPoolExecutor.CallerRunsPolicy());
+            System.out.println("✅ API requests run on a pool of up to " + MAX_CONCURRENT * 2 + " threads");
+            return pool;
+        }
+    }
+
+    private void route(String method, String path, Handler handler) {
+        route(method, path, true, handler);
+    }
+
+    // database: borrow a pooled connection for the handler; /api/metrics answers without one
+    private void route(String method, String path, boolean database, Handler handler) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        String name = method + " " + path;
+        latencies.put(name, histogram);
+        errors.put(name, new LongAdder());
+
+        server.createContext(path, exchange -> {
+            long start = System.nanoTime();
+            boolean admitted = false;
+            boolean bound = false;
+            try {
+                if (!method.equals(exchange.getRequestMethod())) {
+                    send(exchange, 405, Json.error("Use " + method));
+                    return;
+                }
+                admitted = permits.tryAcquire(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (!admitted) {
+                    rejected.increment();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, Json.error("Server busy, retry shortly"));
+                    return;
+                }
+                if (database) {
+                    bound = dbManager.beginRequest(POOL_TIMEOUT_MS);
+                    if (!bound) {
+                        rejected.increment();
+                        exchange.getResponseHeaders().set("Retry-After", "1");
+                        send(exchange, 503, Json.error("Server busy, retry shortly"));
+                        return;
+                    }
+                }
+                send(exchange, 200, handler.handle(exchange));
+            } catch (ApiException e) {
+                send(exchange, e.status, Json.error(e.getMessage()));
+            } catch (SQLException e) {
+                errors.get(name).increment();
+                System.err.println("API " + name + " failed: " + e.getMessage());
+                send(exchange, 500, Json.error("Database error"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, Json.error("Server shutting down"));
+            } catch (RuntimeException e) {
+                errors.get(name).increment();
+                System.err.println("API " + name + " failed: " + e);
+                send(exchange, 500, Json.error("Internal error"));
+            } finally {
+                if (bound) {
+                    dbManager.endRequest();
+                }
+                if (admitted) {
+                    permits.release();
+                    histogram.recordNanos(System.nanoTime() - start);
+                }
+                exchange.close();
+            }
+        });
+    }
+
+    // ---------- Handlers ----------
+
+    private String search(HttpExchange exchange) throws ApiException, SQLException {
+        Map<String, String> params = queryParams(exchange);
+        String query = params.getOrDefault("q", "").trim();
+        if (query.isEmpty() || query.length() > MAX_QUERY_LENGTH) {
+            throw new ApiException(400, "q must be 1-" + MAX_QUERY_LENGTH + " characters");
+        }
+        int limit = Math.min(MAX_RESULTS, parseInt(params.getOrDefault("limit", "20"), "limit"));
+
+        List<Book> books = dbManager.searchBooks(query);
+        return Json.books(books.subList(0, Math.min(limit, books.size())));
+    }
+
+    private String bookById(HttpExchange exchange) throws ApiException, SQLException {
+        int id = parseInt(pathTail(exchange, "/api/books/"), "book id");
+        return Json.book(requireBook(dbManager.getBookById(id)));
+    }
+
+    private String bookByIsbn(HttpExchange exchange) throws ApiException, SQLException {
+        String isbn = pathTail(exchange, "/api/books/isbn/");
+        if (!Isbn.isValid(isbn)) {
+            throw new ApiException(400, "Invalid ISBN");
+        }
+        return Json.book(requireBook(dbManager.getBookByIsbn(isbn)));
+    }
+
+    private String checkout(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        Map<String, String> body = readJsonBody(exchange);
+        int bookId = parseInt(body.get("bookId"), "bookId");
+        int userId = parseInt(body.get("userId"), "userId");
+        int days = body.containsKey("days") ? parseInt(body.get("days"), "days") : DEFAULT_LOAN_DAYS;
+        if (days < 1 || days > 90) {
+            throw new ApiException(400, "days must be 1-90");
+        }
+
+        // Due dates never land on a day the branch is closed
+        BusinessCalendar calendar = dbManager.getBusinessCalendar();
+        LocalDate today = calendar.today();
+        LocalDate dueDate = calendar.dueDate(today, days);
+        // No availability pre-read: the checkout's own guarded update decides, so two
+        // kiosks racing for the last copy get one loan and one 409
+        try {
+            dbManager.issueLoan(bookId, userId, today, dueDate);
+        } catch (SQLException e) {
+            if (DatabaseManager.BOOK_NOT_FOUND.equals(e.getMessage())) {
+                throw new ApiException(404, e.getMessage());
+            }
+            if (DatabaseManager.NO_COPIES_AVAILABLE.equals(e.getMessage())) {
+                throw new ApiException(409, e.getMessage());
+            }
+            throw e;
+        }
+        return "{\"ok\":true,\"bookId\":" + bookId + ",\"userId\":" + userId +
+               ",\"dueDate\":" + Json.string(dueDate.toString()) + "}";
+    }
+
+    private String returnLoan(HttpExchange exchange) throws ApiException, SQLException, IOException {
+        Map<String, String> body = readJsonBody(exchange);
+        int loanId = parseInt(body.get("loanId"), "loanId");
+        try {
+            dbManager.returnBook(loanId);
+        } catch (SQLException e) {
+            if (DatabaseManager.LOAN_NOT_FOUND.equals(e.getMessage())) {
+                throw new ApiException(404, e.getMessage());
+            }
+            if (DatabaseManager.LOAN_ALREADY_RETURNED.equals(e.getMessage())) {
+                throw new ApiException(409, e.getMessage());
+            }
+            throw e;
+        }
+        return "{\"ok\":true,\"loanId\":" + loanId + "}";
+    }
+
+    private String metricsJson() {
+        StringBuilder sb = new StringBuilder("{\"uptimeMs\":")
+            .append(System.currentTimeMillis() - startedAt)
+            .append(",\"inFlight\":").append(MAX_CONCURRENT - permits.availablePermits())
+            .append(",\"connectionsInUse\":").append(dbManager.getRequestPool().inUse())
+            .append(",\"rejected\":").append(rejected.sum())
+            .append(",\"endpoints\":{");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            sb.append(first ? "" : ",").append(Json.string(entry.getKey()))
+              .append(":{\"count\":").append(h.count())
+              .append(",\"errors\":").append(errors.get(entry.getKey()).sum())
+              .append(",\"meanMs\":").append(Json.number(h.meanMillis()))
+              .append(",\"p50Ms\":").append(Json.number(h.percentileMillis(50)))
+              .append(",\"p95Ms\":").append(Json.number(h.percentileMillis(95)))
+              .append(",\"p99Ms\":").append(Json.number(h.percentileMillis(99)))
+              .append(",\"maxMs\":").append(Json.number(h.maxMillis())).append('}');
+            first = false;
+        }
+        return sb.append("}}").toString();
+    }
+
+    // ---------- Helpers ----------
+
+    private static Book requireBook(Book book) throws ApiException {
+        if (book == null) {
+            throw new ApiException(404, "Book not found");
+        }
+        return book;
+    }
+
+    private static int parseInt(String value, String field) throws ApiException {
+        try {
+            return Integer.parseInt(value == null ? "" : value.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, field + " must be a whole number");
+        }
+    }
+
+    private static String pathTail(HttpExchange exchange, String prefix) {
+        String path = exchange.getRequestURI().getPath();
+        return URLDecoder.decode(path.substring(Math.min(prefix.length(), path.length())), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                           URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static String readBody(HttpExchange exchange) throws ApiException, IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out.size() + read > MAX_BODY_BYTES) {
+                throw new ApiException(413, "Request body over " + MAX_BODY_BYTES + " bytes");
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> readJsonBody(HttpExchange exchange) throws ApiException, IOException {
+        String body = readBody(exchange);
+        try {
+            return Json.parseObject(body);
+        } catch (RuntimeException e) {
+            throw new ApiException(400, "Malformed JSON body");
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        DatabaseManager dbManager = new DatabaseManager();
+        dbManager.initializeDatabase();
+
+        ApiServer api = new ApiServer(dbManager);
+        api.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.stop();
+            dbManager.closeConnection();
+        }, "bookflow-api-shutdown"));
+    }
+}
+
+// ==================== Json.java ====================
+// Just enough JSON for the API: writers for the model classes and a reader for flat
+// request objects of strings and numbers
+final class Json {
+
+    private Json() { }
+
+    static String book(Book book) {
+        return "{\"id\":" + book.getId() +
+               ",\"title\":" + string(book.getTitle()) +
+               ",\"author\":" + string(book.getAuthor()) +
+               ",\"isbn\":" + string(book.getIsbn()) +
+               ",\"publisher\":" + string(book.getPublisher()) +
+               ",\"year\":" + book.getPublicationYear() +
+               ",\"category\":" + string(book.getCategory()) +
+               ",\"totalCopies\":" + book.getTotalCopies() +
+               ",\"availableCopies\":" + book.getAvailableCopies() + "}";
+    }
+
+    static String books(List<Book> books) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < books.size(); i++) {
+            sb.append(i == 0 ? "" : ",").append(book(books.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    static String stats(DashboardStats stats) {
+        return "{\"totalBooks\":" + stats.getTotalBooks() +
+               ",\"availableBooks\":" + stats.getAvailableBooks() +
+               ",\"totalUsers\":" + stats.getTotalUsers() +
+               ",\"activeLoans\":" + stats.getActiveLoans() + "}";
+    }
+
+    static String error(String message) {
+        return "{\"error\":" + string(message) + "}";
+    }
+
+    static String number(double value) {
+        return String.format(java.util.Locale.ROOT, "%.3f", value);
+    }
+
+    static String string(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // {"a": 1, "b": "x"} -> {a=1, b=x}; nested values are rejected
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> values = new HashMap<>();
+        String s = json.trim();
+        if (!s.startsWith("{") || !s.endsWith("}")) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        int i = 1;
+        int end = s.length() - 1;
+        while (i < end) {
+            i = skipSpace(s, i);
+            if (i >= end) {
+                break;
+            }
+            int[] next = new int[1];
+            String key = readString(s, i, next);
+            i = skipSpace(s, next[0]);
+            if (s.charAt(i) != ':') {
+                throw new IllegalArgumentException("Expected ':' at " + i);
+            }
+            i = skipSpace(s, i + 1);
+            String value;
+            if (s.charAt(i) == '"') {
+                value = readString(s, i, next);
+                i = next[0];
+            } else {
+                int start = i;
+                while (i < end && s.charAt(i) != ',' && !Character.isWhitespace(s.charAt(i))) {
+                    i++;
+                }
+                value = s.substring(start, i);
+                if (value.startsWith("{") || value.startsWith("[")) {
+                    throw new IllegalArgumentException("Nested values are not supported");
+                }
+            }
+            values.put(key, value);
+            i = skipSpace(s, i);
+            if (i < end && s.charAt(i) == ',') {
+                i++;
+            }
+        }
+        return values;
+    }
+
+    private static int skipSpace(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String readString(String s, int i, int[] next) {
+        if (s.charAt(i) != '"') {
+            throw new IllegalArgumentException("Expected '\"' at " + i);
+        }
+        StringBuilder sb = new StringBuilder();
+        i++;
+        while (s.charAt(i) != '"') {
+            char c = s.charAt(i++);
+            if (c == '\\') {
+                char escaped = s.charAt(i++);
+                switch (escaped) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'u': sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16)); i += 4; break;
+                    default: sb.append(escaped);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        next[0] = i + 1;
+        return sb.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,212 @@
+// BookFlow - Loan Archival
+// Created by Michael Semera
+// LoanArchiver.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// ==================== LoanArchiver.java ====================
+// Moves returned loans older than the cutoff out of the hot loans table into
+// loans_archive, one short transaction per batch so the desks never wait long
+class LoanArchiver {
+
+    // Run once in the background after startup
+    static final boolean ENABLED = Boolean.getBoolean("bookflow.archive.enabled");
+    // Returned loans older than this many days are archived
+    static final int DEFAULT_MIN_AGE_DAYS = Integer.getInteger("bookflow.archive.minAgeDays", 365);
+    // Rows moved per transaction; small batches keep row locks short for the desks
+    static final int DEFAULT_BATCH_SIZE = Integer.getInteger("bookflow.archive.batchSize", 500);
+    // Breathing room between batches
+    static final long DEFAULT_PAUSE_MS = Long.getLong("bookflow.archive.pauseMs", 50L);
+
+    private final DatabaseManager dbManager;
+    private final int minAgeDays;
+    private final int batchSize;
+    private final long pauseMs;
+    private volatile boolean cancelled;
+
+    public LoanArchiver(DatabaseManager dbManager) {
+        this(dbManager, DEFAULT_MIN_AGE_DAYS, DEFAULT_BATCH_SIZE, DEFAULT_PAUSE_MS);
+    }
+
+    public LoanArchiver(DatabaseManager dbManager, int minAgeDays, int batchSize, long pauseMs) {
+        this.dbManager = dbManager;
+        this.minAgeDays = minAgeDays;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Archives everything eligible in bounded batches; returns the number of loans moved
+    public int archive() throws SQLException {
+        LocalDate cutoff = LocalDate.now().minusDays(minAgeDays);
+        Connection conn = dbManager.openDedicatedConnection();
+        int archived = 0;
+        // Loans whose copy was refused (id already archived under the same year); they
+        // stay in loans for a person to look at and are left out of later batches
+        Set<Integer> held = new LinkedHashSet<>();
+
+        try {
+            // Fewer gap locks than REPEATABLE READ, so inserts by the desks aren't blocked
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            ensurePartitions(conn, cutoff);
+
+            while (!cancelled) {
+                List<Integer> ids = selectBatch(conn, cutoff, held);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                archived += moveBatch(conn, ids, held);
+
+                if (pauseMs > 0) {
+                    try {
+                        Thread.sleep(pauseMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        } finally {
+            conn.close();
+        }
+
+        System.out.println("✅ Archived " + archived + " returned loans older than " + cutoff);
+        if (!held.isEmpty()) {
+            System.err.println("Left " + held.size() + " loans in place, their ids are already archived: " + held);
+        }
+        return archived;
+    }
+
+    private List<Integer> selectBatch(Connection conn, LocalDate cutoff, Set<Integer> held) throws SQLException {
+        String sql = "SELECT id FROM loans WHERE status = 'Returned' AND return_date < ? " +
+                    (held.isEmpty() ? "" : "AND id NOT IN (" + placeholders(held.size()) + ") ") +
+                    "ORDER BY return_date LIMIT ?";
+        PreparedStatement pstmt = conn.prepareStatement(sql);
+        int index = 1;
+        pstmt.setDate(index++, Date.valueOf(cutoff));
+        for (int id : held) {
+            pstmt.setInt(index++, id);
+        }
+        pstmt.setInt(index, batchSize);
+
+        List<Integer> ids = new ArrayList<>();
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            ids.add(rs.getInt(1));
+        }
+
+        rs.close();
+        pstmt.close();
+        return ids;
+    }
+
+    // Copy and delete in one transaction, so a loan is never in both tables or neither
+    private int moveBatch(Connection conn, List<Integer> ids, Set<Integer> held) throws SQLException {
+        String inList = placeholders(ids.size());
+        conn.setAutoCommit(false);
+
+        try {
+            // IGNORE: another workstation running the archiver may have copied these already
+            PreparedStatement copy = conn.prepareStatement(
+                "INSERT IGNORE INTO loans_archive " +
+                "(id, book_id, user_id, issue_date, due_date, return_date, status, fine, archive_year) " +
+                "SELECT id, book_id, user_id, issue_date, due_date, return_date, status, fine, YEAR(return_date) " +
+                "FROM loans WHERE status = 'Returned' AND id IN (" + inList + ")");
+            bindIds(copy, ids);
+            copy.executeUpdate();
+            copy.close();
+
+            // Delete only what the archive now holds. An ignored insert (an archived row with
+            // the same id and year, e.g. after an AUTO_INCREMENT reset) must not lose the loan.
+            PreparedStatement delete = conn.prepareStatement(
+                "DELETE l FROM loans l JOIN loans_archive a ON a.id = l.id " +
+                "AND a.archive_year = YEAR(l.return_date) AND a.book_id = l.book_id AND a.user_id = l.user_id " +
+                "AND a.issue_date = l.issue_date AND a.return_date = l.return_date " +
+                "WHERE l.status = 'Returned' AND l.id IN (" + inList + ")");
+            bindIds(delete, ids);
+            int moved = delete.executeUpdate();
+            delete.close();
+
+            if (moved < ids.size()) {
+                PreparedStatement left = conn.prepareStatement(
+                    "SELECT id FROM loans WHERE status = 'Returned' AND id IN (" + inList + ")");
+                bindIds(left, ids);
+                ResultSet rs = left.executeQuery();
+                while (rs.next()) {
+                    held.add(rs.getInt(1));
+                }
+                rs.close();
+                left.close();
+            }
+
+            conn.commit();
+            return moved;
+
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // RANGE partitions must be added in ascending order, so create one per return
+    // year from the oldest eligible year up, splitting them off p_future
+    private void ensurePartitions(Connection conn, LocalDate cutoff) throws SQLException {
+        PreparedStatement range = conn.prepareStatement(
+            "SELECT MIN(YEAR(return_date)), MAX(YEAR(return_date)) FROM loans " +
+            "WHERE status = 'Returned' AND return_date < ?");
+        range.setDate(1, Date.valueOf(cutoff));
+        ResultSet rs = range.executeQuery();
+        rs.next();
+        int firstYear = rs.getInt(1);
+        int lastYear = rs.getInt(2);
+        boolean anyEligible = !rs.wasNull();
+        rs.close();
+        range.close();
+        if (!anyEligible) {
+            return;
+        }
+
+        PreparedStatement existing = conn.prepareStatement(
+            "SELECT MAX(CAST(SUBSTRING(PARTITION_NAME, 2) AS UNSIGNED)) FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'loans_archive' AND PARTITION_NAME <> 'p_future'");
+        rs = existing.executeQuery();
+        rs.next();
+        int highestYear = rs.getInt(1); // 0 when only p_future exists
+        rs.close();
+        existing.close();
+
+        Statement stmt = conn.createStatement();
+        for (int year = Math.max(firstYear, highestYear + 1); year <= lastYear; year++) {
+            stmt.executeUpdate("ALTER TABLE loans_archive REORGANIZE PARTITION p_future INTO (" +
+                               "PARTITION p" + year + " VALUES LESS THAN (" + (year + 1) + "), " +
+                               "PARTITION p_future VALUES LESS THAN MAXVALUE)");
+        }
+        stmt.close();
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    private static void bindIds(PreparedStatement pstmt, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            pstmt.setInt(i + 1, ids.get(i));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,412 @@
+// BookFlow - Audit Journal
+// Created by Michael Semera
+// AuditJournal.java, AuditRecord.java
+
+package com.michaelsemera.bookflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// ==================== AuditJournal.java ====================
+// Append-only trail of every circulation and catalog change. Committed domain events
+// are turned into fixed-size binary records, handed over through a lock-free queue,
+// and written by one background thread into memory-mapped segment files, so the desk
+// thread never waits on disk. Segments are named by sequence number and rotate when full.
+//
+// Segment layout: 16-byte header (magic, version, first timestamp), then 32-byte records:
+// timestamp, type, branch, desk, loan, book, user, value, CRC32 of the preceding 28 bytes.
+// Record timestamps never decrease across the journal, which makes time ranges seekable.
+class AuditJournal {
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("bookflow.audit.enabled", "true"));
+    static final String DEFAULT_DIR = System.getProperty("bookflow.audit.dir",
+        System.getProperty("user.home") + File.separator + ".bookflow" + File.separator + "audit");
+    // Records per segment = (bytes - header) / 32; the default holds about two million
+    static final int SEGMENT_BYTES = Integer.getInteger("bookflow.audit.segmentBytes", 64 * 1024 * 1024);
+    // Identifies this workstation in every record it writes
+    static final short DESK_ID = Short.parseShort(System.getProperty("bookflow.audit.deskId", "0"));
+    // Dirty pages are forced to disk at most this often while records keep arriving
+    static final long FORCE_INTERVAL_MS = Long.getLong("bookflow.audit.forceIntervalMs", 1000L);
+
+    private static final int MAGIC = 0x42464155; // "BFAU"
+    private static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 32;
+
+    private final File dir;
+    private final int segmentBytes;
+    private final ConcurrentLinkedQueue<AuditRecord> queue = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Owned by the writer thread
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentSeq;
+    private long lastTimestamp;
+    private long lastForceNanos;
+    private boolean dirty;
+    private final CRC32 crc = new CRC32();
+
+    private AuditJournal(File dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create audit directory " + dir);
+        }
+
+        // One writer per directory; a second process would interleave into the same segment
+        lockFile = new RandomAccessFile(new File(dir, "journal.lock"), "rw");
+        lock = lockFile.getChannel().tryLock();
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException("Audit journal " + dir + " is in use by another BookFlow process");
+        }
+        try {
+            openTail();
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+
+        writer = new Thread(this::writeLoop, "bookflow-audit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    static AuditJournal open(File dir) throws IOException {
+        return new AuditJournal(dir, SEGMENT_BYTES);
+    }
+
+    static AuditJournal open(File dir, int segmentBytes) throws IOException {
+        return new AuditJournal(dir, segmentBytes);
+    }
+
+    // Records every committed write announced on the bus
+    void attach(DomainEventBus bus) {
+        attach(bus, 0);
+    }
+
+    // Same, tagging each record with the branch shard the bus belongs to
+    void attach(DomainEventBus bus, int branchId) {
+        bus.subscribe(LoanIssued.class, e -> append(AuditRecord.Type.LOAN_ISSUED, branchId, e.getTimestamp(),
+            e.getLoan().getId(), e.getLoan().getBookId(), e.getLoan().getUserId(),
+            (int) e.getLoan().getDueDate().toEpochDay()));
+        bus.subscribe(LoanReturned.class, e -> append(AuditRecord.Type.LOAN_RETURNED, branchId, e.getTimestamp(),
+            e.getLoanId(), e.getBookId(), e.getUserId(), (int) e.getReturnDate().toEpochDay()));
+        bus.subscribe(BookAdded.class, e -> append(AuditRecord.Type.BOOK_ADDED, branchId, e.getTimestamp(),
+            0, e.getBook().getId(), 0, e.getBook().getTotalCopies()));
+        bus.subscribe(BookUpdated.class, e -> append(AuditRecord.Type.BOOK_UPDATED, branchId, e.getTimestamp(),
+            0, e.getBook().getId(), 0, e.getBook().getTotalCopies()));
+        bus.subscribe(BookDeleted.class, e -> append(AuditRecord.Type.BOOK_DELETED, branchId, e.getTimestamp(),
+            0, e.getBookId(), 0, 0));
+    }
+
+    // Called on the publishing thread: one allocation and a CAS, never blocks
+    void append(AuditRecord.Type type, int branchId, long timestamp, int loanId, int bookId, int userId, int value) {
+        if (!running) {
+            return;
+        }
+        queue.offer(new AuditRecord(timestamp, type, (byte) branchId, DESK_ID, loanId, bookId, userId, value));
+        LockSupport.unpark(writer);
+    }
+
+    // Drains what is queued, forces it to disk and releases the segment
+    void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (running || !queue.isEmpty()) {
+                AuditRecord record = queue.poll();
+                if (record != null) {
+                    write(record);
+                    continue;
+                }
+                if (dirty && System.nanoTime() - lastForceNanos >= FORCE_INTERVAL_MS * 1_000_000L) {
+                    force();
+                }
+                LockSupport.parkNanos(FORCE_INTERVAL_MS * 1_000_000L);
+            }
+            force();
+        } catch (IOException | RuntimeException e) {
+            running = false;
+            System.err.println("Audit journal stopped: " + e.getMessage());
+        } finally {
+            release();
+        }
+    }
+
+    private void write(AuditRecord record) throws IOException {
+        // Queue order can trail the wall clock by a hair across threads; never step back
+        long timestamp = Math.max(record.getTimestamp(), lastTimestamp);
+        lastTimestamp = timestamp;
+
+        if (segment.remaining() < RECORD_BYTES) {
+            force();
+            channel.close();
+            startSegment(segmentSeq + 1);
+        }
+        int start = segment.position();
+        if (start == HEADER_BYTES) {
+            segment.putLong(8, timestamp); // The header holds the first record's time
+        }
+        segment.putLong(timestamp);
+        segment.put((byte) record.getType().ordinal());
+        segment.put(record.getBranchId());
+        segment.putShort(record.getDeskId());
+        segment.putInt(record.getLoanId());
+        segment.putInt(record.getBookId());
+        segment.putInt(record.getUserId());
+        segment.putInt(record.getValue());
+        segment.putInt(checksum(segment, start, crc));
+        dirty = true;
+    }
+
+    private void force() {
+        if (dirty) {
+            segment.force();
+            dirty = false;
+        }
+        lastForceNanos = System.nanoTime();
+    }
+
+    // Reopens the newest segment at its first empty slot, or starts the first one
+    private void openTail() throws IOException {
+        File[] segments = listSegments(dir);
+        if (segments.length == 0) {
+            startSegment(1);
+            return;
+        }
+        File tail = segments[segments.length - 1];
+        segmentSeq = sequenceOf(tail);
+        channel = new RandomAccessFile(tail, "rw").getChannel();
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        checkHeader(segment, tail);
+
+        int count = validRecordCount(segment);
+        segment.position(HEADER_BYTES + count * RECORD_BYTES);
+        lastTimestamp = count > 0 ? segment.getLong(HEADER_BYTES + (count - 1) * RECORD_BYTES) : 0;
+    }
+
+    private void startSegment(int seq) throws IOException {
+        File file = new File(dir, segmentName(seq));
+        segmentSeq = seq;
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(MAGIC);
+        segment.putInt(FORMAT_VERSION);
+        segment.putLong(Math.max(lastTimestamp, System.currentTimeMillis()));
+    }
+
+    private void release() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            lock.release();
+            lockFile.close();
+        } catch (IOException e) {
+            System.err.println("Error closing audit journal: " + e.getMessage());
+        }
+    }
+
+    // ---------- Reading ----------
+
+    interface RecordVisitor {
+        void visit(AuditRecord record);
+    }
+
+    // Every record in write order
+    static void readAll(File dir, RecordVisitor visitor) throws IOException {
+        scan(dir, Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+    }
+
+    // Records with fromMillis <= timestamp < toMillis, in write order. Segments entirely
+    // outside the range are skipped by their header; inside one, the start is binary searched.
+    static void scan(File dir, long fromMillis, long toMillis, RecordVisitor visitor) throws IOException {
+        File[] segments = listSegments(dir);
+        long[] firstTimestamps = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            firstTimestamps[i] = readFirstTimestamp(segments[i]);
+        }
+
+        for (int i = 0; i < segments.length; i++) {
+            if (firstTimestamps[i] >= toMillis) {
+                break;
+            }
+            // Strictly before: a segment can end on the millisecond the next one starts with
+            if (i + 1 < segments.length && firstTimestamps[i + 1] < fromMillis) {
+                continue; // The next segment starts before the range: nothing here
+            }
+            if (!scanSegment(segments[i], fromMillis, toMillis, visitor)) {
+                break;
+            }
+        }
+    }
+
+    // Returns false once a record at or past toMillis is seen
+    private static boolean scanSegment(File file, long fromMillis, long toMillis,
+                                       RecordVisitor visitor) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            checkHeader(buf, file);
+            int count = validRecordCount(buf);
+
+            // First record with timestamp >= fromMillis
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buf.getLong(HEADER_BYTES + mid * RECORD_BYTES) < fromMillis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            AuditRecord.Type[] types = AuditRecord.Type.values();
+            for (int i = low; i < count; i++) {
+                int at = HEADER_BYTES + i * RECORD_BYTES;
+                long timestamp = buf.getLong(at);
+                if (timestamp >= toMillis) {
+                    return false;
+                }
+                visitor.visit(new AuditRecord(timestamp, types[buf.get(at + 8)], buf.get(at + 9), buf.getShort(at + 10),
+                    buf.getInt(at + 12), buf.getInt(at + 16), buf.getInt(at + 20), buf.getInt(at + 24)));
+            }
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Records are written front to back, so the valid ones form a prefix: stop at the first
+    // empty slot, or at a torn record (bad checksum) left by a crash mid-write
+    private static int validRecordCount(MappedByteBuffer buf) {
+        int capacity = (buf.capacity() - HEADER_BYTES) / RECORD_BYTES;
+        CRC32 crc = new CRC32();
+        int count = 0;
+        while (count < capacity) {
+            int at = HEADER_BYTES + count * RECORD_BYTES;
+            if (buf.getLong(at) == 0 || buf.getInt(at + RECORD_BYTES - 4) != checksum(buf, at, crc)) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static int checksum(MappedByteBuffer buf, int start, CRC32 crc) {
+        crc.reset();
+        crc.update(buf.duplicate().position(start).limit(start + RECORD_BYTES - 4));
+        return (int) crc.getValue();
+    }
+
+    private static long readFirstTimestamp(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(8);
+            return raf.readLong();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void checkHeader(MappedByteBuffer buf, File file) throws IOException {
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a BookFlow audit segment: " + file);
+        }
+    }
+
+    private static File[] listSegments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("audit-") && name.endsWith(".seg"));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files); // Zero-padded sequence numbers sort by name
+        return files;
+    }
+
+    private static String segmentName(int seq) {
+        return String.format("audit-%010d.seg", seq);
+    }
+
+    private static int sequenceOf(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring("audit-".length(), name.length() - ".seg".length()));
+    }
+
+    // For callers that want the records rather than a visitor
+    static List<AuditRecord> scan(File dir, long fromMillis, long toMillis) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        scan(dir, fromMillis, toMillis, records::add);
+        return records;
+    }
+}
+
+// ==================== AuditRecord.java ====================
+// One journal entry. Fields a record type does not use are 0; value holds the due date
+// (issue) or return date (return) as an epoch day, and the copy count for book changes.
+class AuditRecord {
+
+    // Stored by ordinal: only ever append new types
+    enum Type { LOAN_ISSUED, LOAN_RETURNED, BOOK_ADDED, BOOK_UPDATED, BOOK_DELETED }
+
+    private final long timestamp;
+    private final Type type;
+    private final byte branchId;
+    private final short deskId;
+    private final int loanId;
+    private final int bookId;
+    private final int userId;
+    private final int value;
+
+    public AuditRecord(long timestamp, Type type, byte branchId, short deskId,
+                       int loanId, int bookId, int userId, int value) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.branchId = branchId;
+        this.deskId = deskId;
+        this.loanId = loanId;
+        this.bookId = bookId;
+        this.userId = userId;
+        this.value = value;
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public Type getType() { return type; }
+    public byte getBranchId() { return branchId; }
+    public short getDeskId() { return deskId; }
+    public int getLoanId() { return loanId; }
+    public int getBookId() { return bookId; }
+    public int getUserId() { return userId; }
+    public int getValue() { return value; }
+
+    @Override
+    public String toString() {
+        return new java.sql.Timestamp(timestamp) + " branch " + branchId + " desk " + deskId + " " + type +
+               " loan=" + loanId + " book=" + bookId + " user=" + userId + " value=" + value;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+// BookFlow - Business Calendar
+// Created by Michael Semera
+// BusinessCalendar.java
+
+package com.michaelsemera.bookflow;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+// ==================== BusinessCalendar.java ====================
+// A branch's open days, precomputed over a window of years: a bitset of open days, a
+// prefix count of open days, and next-open-day / k-th-open-day tables. Due dates,
+// open days overdue and fines are then array lookups, so a batch of any size costs
+// one pass. Days the library is closed (weekly closing days and holidays) never
+// count against a patron.
+class BusinessCalendar {
+
+    static final int YEARS_BACK = Integer.getInteger("bookflow.calendar.yearsBack", 5);
+    static final int YEARS_AHEAD = Integer.getInteger("bookflow.calendar.yearsAhead", 3);
+    // Weekdays the branch opens, e.g. MONDAY,TUESDAY,...; default Monday to Saturday
+    static final String OPEN_DAYS = System.getProperty("bookflow.calendar.openDays",
+        "MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY,SATURDAY");
+    // How long a DatabaseManager keeps its calendar before re-reading the closures, so a
+    // closure added from another process (e.g. BookFlowCli add-closure) reaches it
+    static final long REFRESH_MS = Long.getLong("bookflow.calendar.refreshMs", 5 * 60_000L);
+
+    private final long firstDay;   // epoch day of index 0
+    private final int days;
+    private final long[] openBits;
+    private final int[] openBefore; // open days in [0, i)
+    private final int[] nextOpen;   // first open index >= i, or days if none
+    private final int[] openDayAt;  // index of the k-th open day
+    private final Set<DayOfWeek> weeklyOpen;
+    private final ZoneId zone;
+
+    // Business date cache: valid until the next local midnight
+    private volatile long cachedToday;
+    private volatile long cachedUntilMillis;
+
+    BusinessCalendar(LocalDate from, LocalDate to, Set<DayOfWeek> weeklyOpen,
+                     Collection<LocalDate> closures, ZoneId zone) {
+        this.firstDay = from.toEpochDay();
+        this.days = (int) (to.toEpochDay() - firstDay + 1);
+        this.weeklyOpen = EnumSet.copyOf(weeklyOpen);
+        this.zone = zone;
+
+        openBits = new long[(days + 63) >>> 6];
+        for (int i = 0; i < days; i++) {
+            if (weeklyOpen.contains(LocalDate.ofEpochDay(firstDay + i).getDayOfWeek())) {
+                openBits[i >>> 6] |= 1L << i;
+            }
+        }
+        for (LocalDate closed : closures) {
+            long index = closed.toEpochDay() - firstDay;
+            if (index >= 0 && index < days) {
+                openBits[(int) index >>> 6] &= ~(1L << index);
+            }
+        }
+
+        openBefore = new int[days + 1];
+        for (int i = 0; i < days; i++) {
+            openBefore[i + 1] = openBefore[i] + (isOpenIndex(i) ? 1 : 0);
+        }
+        nextOpen = new int[days + 1];
+        nextOpen[days] = days;
+        for (int i = days - 1; i >= 0; i--) {
+            nextOpen[i] = isOpenIndex(i) ? i : nextOpen[i + 1];
+        }
+        openDayAt = new int[openBefore[days]];
+        for (int i = 0, k = 0; i < days; i++) {
+            if (isOpenIndex(i)) {
+                openDayAt[k++] = i;
+            }
+        }
+    }
+
+    // The standard window around today for a branch with these closures
+    static BusinessCalendar forClosures(Collection<LocalDate> closures) {
+        LocalDate today = LocalDate.now();
+        Set<DayOfWeek> open = EnumSet.noneOf(DayOfWeek.class);
+        for (String day : OPEN_DAYS.split(",")) {
+            open.add(DayOfWeek.valueOf(day.trim().toUpperCase()));
+        }
+        return new BusinessCalendar(LocalDate.of(today.getYear() - YEARS_BACK, 1, 1),
+                                    LocalDate.of(today.getYear() + YEARS_AHEAD, 12, 31),
+                                    open, closures, ZoneId.systemDefault());
+    }
+
+    // Today's date without a time zone lookup per call; recomputed once after midnight
+    public long todayEpochDay() {
+        long now = System.currentTimeMillis();
+        if (now >= cachedUntilMillis) {
+            ZonedDateTime start = ZonedDateTime.now(zone).toLocalDate().atStartOfDay(zone);
+            cachedToday = start.toLocalDate().toEpochDay();
+            cachedUntilMillis = start.plusDays(1).toInstant().toEpochMilli();
+        }
+        return cachedToday;
+    }
+
+    public LocalDate today() {
+        return LocalDate.ofEpochDay(todayEpochDay());
+    }
+
+    public boolean isOpen(LocalDate date) {
+        long index = date.toEpochDay() - firstDay;
+        if (index < 0 || index >= days) {
+            return weeklyOpen.contains(date.getDayOfWeek());
+        }
+        return isOpenIndex((int) index);
+    }
+
+    // Loan period in calendar days; a due date that lands on a closed day moves to the
+    // next open day so the patron can always return it in person
+    public LocalDate dueDate(LocalDate issueDate, int loanDays) {
+        return LocalDate.ofEpochDay(dueEpochDay(issueDate.toEpochDay(), loanDays));
+    }
+
+    public long dueEpochDay(long issueEpochDay, int loanDays) {
+        long index = issueEpochDay + loanDays - firstDay;
+        if (index < 0 || index >= days) {
+            LocalDate due = LocalDate.ofEpochDay(issueEpochDay + loanDays);
+            while (!isOpen(due)) {
+                due = due.plusDays(1);
+            }
+            return due.toEpochDay();
+        }
+        return firstDay + nextOpen[(int) index];
+    }
+
+    // The date n open days after date (date itself not counted)
+    public LocalDate addOpenDays(LocalDate date, int n) {
+        long index = date.toEpochDay() - firstDay;
+        if (index >= 0 && index < days) {
+            int k = openBefore[(int) index + 1] + n - 1;
+            if (k >= 0 && k < openDayAt.length) {
+                return LocalDate.ofEpochDay(firstDay + openDayAt[k]);
+            }
+        }
+        LocalDate result = date;
+        for (int left = n; left > 0; ) {
+            result = result.plusDays(1);
+            if (isOpen(result)) {
+                left--;
+            }
+        }
+        return result;
+    }
+
+    // Open days after the due date up to and including asOf; 0 if not yet late
+    public int openDaysOverdue(long dueEpochDay, long asOfEpochDay) {
+        if (asOfEpochDay <= dueEpochDay) {
+            return 0;
+        }
+        return openDaysThrough(asOfEpochDay) - openDaysThrough(dueEpochDay);
+    }
+
+    public int openDaysOverdue(LocalDate dueDate, LocalDate asOf) {
+        return openDaysOverdue(dueDate.toEpochDay(), asOf.toEpochDay());
+    }
+
+    // Fines for a whole batch in one pass: fines[i] for dueEpochDays[i] as of asOf
+    public void fines(int count, long[] dueEpochDays, long asOfEpochDay, double finePerDay, double[] fines) {
+        int asOfCount = openDaysThrough(asOfEpochDay);
+        for (int i = 0; i < count; i++) {
+            long due = dueEpochDays[i];
+            fines[i] = due >= asOfEpochDay ? 0 : (asOfCount - openDaysThrough(due)) * finePerDay;
+        }
+    }
+
+    // Open days in [firstDay, epochDay]; extrapolated by week outside the window
+    private int openDaysThrough(long epochDay) {
+        long index = epochDay - firstDay;
+        if (index < 0) {
+            return -countWeeklyOpen(epochDay + 1, firstDay);
+        }
+        if (index >= days) {
+            return openBefore[days] + countWeeklyOpen(firstDay + days, epochDay + 1);
+        }
+        return openBefore[(int) index + 1];
+    }
+
+    // Weekly open days in [fromEpochDay, toEpochDay)
+    private int countWeeklyOpen(long fromEpochDay, long toEpochDay) {
+        long span = toEpochDay - fromEpochDay;
+        int count = (int) (span / 7) * weeklyOpen.size();
+        for (long d = fromEpochDay + span / 7 * 7; d < toEpochDay; d++) {
+            if (weeklyOpen.contains(LocalDate.ofEpochDay(d).getDayOfWeek())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean isOpenIndex(int index) {
+        return (openBits[index >>> 6] & (1L << index)) != 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,547 @@
+// BookFlow - Command Line
+// Created by Michael Semera
+// BookFlowCli.java
+
+package com.michaelsemera.bookflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// ==================== BookFlowCli.java ====================
+// Batch entry point for cron: opens only DatabaseManager (no JavaFX toolkit), runs one
+// named command and prints a single JSON object on stdout. Progress messages go to
+// stderr so stdout stays machine-readable.
+//
+// Exit codes: 0 success, 1 the command failed, 2 bad usage.
+public class BookFlowCli {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILED = 1;
+    static final int EXIT_USAGE = 2;
+
+    static final double DEFAULT_FINE_PER_DAY =
+        Double.parseDouble(System.getProperty("bookflow.fines.perDay", "0.50"));
+
+    private static final String USAGE =
+        "Usage: BookFlowCli <command> [options]\n" +
+        "  stats                                  dashboard counters\n" +
+        "  import-books <file.csv>                add books (title,author,isbn,publisher,year,category,copies)\n" +
+        "  import-users <file.csv>                register a roster (name,email,phone,membership); skips existing emails\n" +
+        "  export-books [file.csv]                write the catalogue as CSV (stdout without a file)\n" +
+        "  overdue [--as-of DATE] [--fine-per-day N]  flag overdue loans; fines count open days only\n" +
+        "  add-closure <DATE> [--reason TEXT]     mark a day the branch is closed\n" +
+        "  archive-loans                          move old returned loans to loans_archive\n" +
+        "  send-reminders [--date DATE]           render due date reminders to the outbox\n" +
+        "  generate-dataset [--seed N] [--books N] [--users N] [--loans N] [--years N] [--as-of DATE]\n" +
+        "                                         bulk-load a reproducible synthetic library\n" +
+        "  loan-report [--group-by DIM[,DIM...]] [--from DATE] [--to DATE] [--category C] [--membership M]\n" +
+        "              [--status S] [--order loans|fines|late|group] [--top N]\n" +
+        "                                         loan counts, fines and lateness from an in-memory snapshot;\n" +
+        "                                         DIM is category, membership, status, weekday, month, quarter,\n" +
+        "                                         year, book or user\n" +
+        "  find-duplicates [--threshold 0.6] [--limit N]  near-duplicate catalogue records to merge\n" +
+        "  reconcile-inventory [--repair true] [--full true] [--limit N]\n" +
+        "                                         check available_copies against active loans; changed\n" +
+        "                                         id ranges only unless --full\n" +
+        "  audit [--from DATETIME] [--to DATETIME]    audit records, one JSON object per line\n" +
+        "  branch-search <query> [--limit N]      search every branch shard (see bookflow.shards)\n" +
+        "  branch-stats                           counters per branch and consortium total";
+
+    // Bad arguments: reported with the usage text and exit code 2
+    private static class UsageException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    private final PrintStream out;
+    private DatabaseManager dbManager;
+    private BranchShards branchShards;
+
+    BookFlowCli(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        // Everything else the app prints (status lines, warnings) goes to stderr
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        System.exit(new BookFlowCli(stdout).run(args));
+    }
+
+    int run(String[] args) {
+        if (args.length == 0 || "help".equals(args[0]) || "--help".equals(args[0])) {
+            System.err.println(USAGE);
+            return args.length == 0 ? EXIT_USAGE : EXIT_OK;
+        }
+        String command = args[0];
+        long start = System.nanoTime();
+
+        try {
+            Map<String, String> options = parseOptions(args);
+            String result = execute(command, options);
+            if (result != null) {
+                long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                out.println("{\"command\":" + Json.string(command) + ",\"ok\":true,\"elapsedMs\":" +
+                            elapsedMs + "," + result + "}");
+            }
+            return EXIT_OK;
+        } catch (UsageException e) {
+            out.println(failure(command, e.getMessage()));
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        } catch (SQLException | IOException | RuntimeException e) {
+            out.println(failure(command, e.getMessage()));
+            System.err.println("❌ " + command + " failed: " + e);
+            return EXIT_FAILED;
+        } finally {
+            if (dbManager != null) {
+                dbManager.closeConnection();
+            }
+            if (branchShards != null) {
+                branchShards.close();
+            }
+        }
+    }
+
+    // Returns the fields of the result object, or null when the command streamed its own output
+    private String execute(String command, Map<String, String> options)
+            throws UsageException, SQLException, IOException {
+        switch (command) {
+            case "stats": {
+                String stats = Json.stats(db().getDashboardStats());
+                return "\"stats\":" + stats;
+            }
+            case "import-books": {
+                String file = requirePositional(options, "CSV file");
+                List<Book> books = readBooksCsv(file);
+                db().importBooks(books);
+                return "\"imported\":" + books.size();
+            }
+            case "import-users": {
+                String file = requirePositional(options, "CSV file");
+                UserImporter.Result result = new UserImporter(db()).importUsers(readUsersCsv(file));
+                return "\"rows\":" + result.rows + ",\"inserted\":" + result.inserted +
+                       ",\"alreadyRegistered\":" + result.alreadyRegistered +
+                       ",\"duplicatesInFile\":" + result.duplicatesInFile + ",\"invalid\":" + result.invalid +
+                       ",\"verified\":" + result.verified;
+            }
+            case "export-books": {
+                // Streamed from a cursor, so the catalogue never has to fit in memory
+                String file = options.get("_1");
+                Stream<Book> books = db().streamBooks();
+                try {
+                    if (file == null) {
+                        writeBooksCsv(books, new java.io.OutputStreamWriter(out, StandardCharsets.UTF_8));
+                        return null;
+                    }
+                    Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8);
+                    int exported = writeBooksCsv(books, writer);
+                    writer.close();
+                    return "\"exported\":" + exported + ",\"file\":" + Json.string(file);
+                } catch (DatabaseManager.CursorException e) {
+                    throw e.getCause();
+                } finally {
+                    books.close();
+                }
+            }
+            case "overdue": {
+                LocalDate asOf = options.containsKey("as-of") ? parseDate(options.get("as-of"))
+                                                              : db().getBusinessCalendar().today();
+                double finePerDay = parseNumber(options.getOrDefault("fine-per-day",
+                                                String.valueOf(DEFAULT_FINE_PER_DAY)));
+                int updated = db().processOverdueLoans(asOf, finePerDay);
+                return "\"asOf\":" + Json.string(asOf.toString()) + ",\"overdueLoans\":" + updated;
+            }
+            case "add-closure": {
+                LocalDate date = parseDate(requirePositional(options, "date"));
+                db().addClosure(date, options.get("reason"));
+                return "\"closed\":" + Json.string(date.toString());
+            }
+            case "archive-loans": {
+                int archived = new LoanArchiver(db()).archive();
+                return "\"archived\":" + archived;
+            }
+            case "send-reminders": {
+                LocalDate date = parseDate(options.getOrDefault("date", LocalDate.now().toString()));
+                DueDateReminderJob.Result result = new DueDateReminderJob(db()).run(date);
+                return "\"date\":" + Json.string(date.toString()) + ",\"scanned\":" + result.scanned +
+                       ",\"written\":" + result.written + ",\"skippedNoEmail\":" + result.skippedNoEmail +
+                       ",\"resumed\":" + result.resumed;
+            }
+            case "generate-dataset": {
+                // Same seed, sizes and as-of date give the same rows; echoed so a run can be repeated
+                long seed = (long) parseNumber(options.getOrDefault("seed", "1"));
+                int books = (int) parseNumber(options.getOrDefault("books", "10000"));
+                int users = (int) parseNumber(options.getOrDefault("users", "5000"));
+                long loans = (long) parseNumber(options.getOrDefault("loans", "100000"));
+                int years = (int) parseNumber(options.getOrDefault("years", "3"));
+                LocalDate asOf = parseDate(options.getOrDefault("as-of", LocalDate.now().toString()));
+                if (books < 1 || users < 1 || loans < 0 || years < 1) {
+                    throw new UsageException("Sizes must be positive");
+                }
+                DatasetGenerator.Result result =
+                    new DatasetGenerator(db(), seed, books, users, loans, years, asOf).generate();
+                return "\"seed\":" + seed + ",\"asOf\":" + Json.string(asOf.toString()) +
+                       ",\"books\":" + result.books + ",\"users\":" + result.users + ",\"loans\":" + result.loans +
+                       ",\"returned\":" + result.returned + ",\"active\":" + result.active +
+                       ",\"overdue\":" + result.overdue;
+            }
+            case "loan-report": {
+                LoanQuery query = parseLoanQuery(options);
+                LoanAnalytics.Report report = LoanAnalytics.load(db()).run(query);
+                report.resolveNames(db());
+                StringBuilder rows = new StringBuilder("[");
+                for (LoanAnalytics.Row row : report.rows) {
+                    rows.append(rows.length() > 1 ? "," : "").append('{');
+                    for (int d = 0; d < query.getGroupBy().size(); d++) {
+                        rows.append(Json.string(query.getGroupBy().get(d).name().toLowerCase())).append(':')
+                            .append(Json.string(row.getLabel(d))).append(',');
+                    }
+                    rows.append("\"loans\":").append(row.getLoans())
+                        .append(",\"fines\":").append(row.getFines())
+                        .append(",\"late\":").append(row.getLate())
+                        .append(",\"averageDays\":").append(Math.round(row.getAverageDays() * 10) / 10.0)
+                        .append('}');
+                }
+                return "\"query\":" + Json.string(query.toString()) + ",\"scanned\":" + report.rowsScanned +
+                       ",\"matched\":" + report.rowsMatched + ",\"groups\":" + report.groups +
+                       ",\"queryMs\":" + report.elapsedMs + ",\"rows\":" + rows.append(']');
+            }
+            case "find-duplicates": {
+                double threshold = parseNumber(options.getOrDefault("threshold",
+                                                                    String.valueOf(DuplicateDetector.DEFAULT_THRESHOLD)));
+                int limit = (int) parseNumber(options.getOrDefault("limit", "1000"));
+                if (threshold <= 0 || threshold > 1) {
+                    throw new UsageException("Threshold must be in (0, 1]");
+                }
+                DuplicateDetector.Result result = new DuplicateDetector(db(), threshold).run();
+                // Strongest pairs first within each cluster; --limit 0 lists them all
+                StringBuilder pairs = new StringBuilder("[");
+                int shown = 0;
+                for (DuplicateDetector.Candidate candidate : result.candidates) {
+                    if (limit > 0 && shown++ == limit) {
+                        break;
+                    }
+                    pairs.append(pairs.length() > 1 ? "," : "")
+                         .append("{\"cluster\":").append(candidate.cluster)
+                         .append(",\"similarity\":").append(Math.round(candidate.similarity * 1000) / 1000.0)
+                         .append(",\"first\":").append(Json.book(candidate.first))
+                         .append(",\"second\":").append(Json.book(candidate.second)).append('}');
+                }
+                return "\"threshold\":" + threshold + ",\"scanned\":" + result.scanned +
+                       ",\"comparisons\":" + result.comparisons + ",\"oversizedBuckets\":" + result.oversizedBuckets +
+                       ",\"clusters\":" + result.clusters + ",\"total\":" + result.candidates.size() +
+                       ",\"candidates\":" + pairs.append(']');
+            }
+            case "reconcile-inventory": {
+                boolean repair = Boolean.parseBoolean(options.getOrDefault("repair", "false"));
+                boolean full = Boolean.parseBoolean(options.getOrDefault("full", "false"));
+                int limit = (int) parseNumber(options.getOrDefault("limit", "1000"));
+                InventoryReconciler.Result result = new InventoryReconciler(db()).run(full, repair);
+                StringBuilder drifts = new StringBuilder("[");
+                int shown = 0;
+                for (InventoryReconciler.Drift drift : result.drifts) {
+                    if (limit > 0 && shown++ == limit) {
+                        break;
+                    }
+                    drifts.append(drifts.length() > 1 ? "," : "")
+                          .append("{\"bookId\":").append(drift.bookId)
+                          .append(",\"title\":").append(Json.string(drift.title))
+                          .append(",\"totalCopies\":").append(drift.totalCopies)
+                          .append(",\"activeLoans\":").append(drift.activeLoans)
+                          .append(",\"availableCopies\":").append(drift.availableCopies)
+                          .append(",\"expectedAvailable\":").append(drift.getExpectedAvailable())
+                          .append(",\"overLoaned\":").append(drift.isOverLoaned())
+                          .append(",\"repaired\":").append(drift.repaired).append('}');
+                }
+                return "\"full\":" + full + ",\"repair\":" + repair + ",\"chunks\":" + result.chunks +
+                       ",\"chunksSkipped\":" + result.chunksSkipped + ",\"booksChecked\":" + result.booksChecked +
+                       ",\"drifted\":" + result.drifts.size() + ",\"repaired\":" + result.repaired +
+                       ",\"changedDuringRepair\":" + result.changedDuringRepair + ",\"drifts\":" + drifts.append(']');
+            }
+            case "audit": {
+                // Reads the journal files only; no database connection needed
+                long from = parseTimestamp(options.get("from"), Long.MIN_VALUE);
+                long to = parseTimestamp(options.get("to"), Long.MAX_VALUE);
+                AuditJournal.scan(new File(AuditJournal.DEFAULT_DIR), from, to, record -> out.println(
+                    "{\"timestamp\":" + record.getTimestamp() + ",\"type\":" + Json.string(record.getType().name()) +
+                    ",\"branch\":" + record.getBranchId() +
+                    ",\"desk\":" + record.getDeskId() + ",\"loanId\":" + record.getLoanId() +
+                    ",\"bookId\":" + record.getBookId() + ",\"userId\":" + record.getUserId() +
+                    ",\"value\":" + record.getValue() + "}"));
+                return null;
+            }
+            case "branch-search": {
+                String query = requirePositional(options, "search text");
+                int limit = (int) parseNumber(options.getOrDefault("limit", "20"));
+                BranchShards.Gathered<List<BranchBook>> found = shards().search(query, limit);
+                StringBuilder hits = new StringBuilder("[");
+                for (BranchBook hit : found.merged) {
+                    hits.append(hits.length() > 1 ? "," : "")
+                        .append("{\"branch\":").append(hit.getBranchId())
+                        .append(",\"score\":").append(hit.getScore())
+                        .append(",\"book\":").append(Json.book(hit.getBook())).append('}');
+                }
+                return "\"results\":" + hits.append(']') + "," + shardStatus(found);
+            }
+            case "branch-stats": {
+                BranchShards.Gathered<DashboardStats> stats = shards().stats();
+                StringBuilder byBranch = new StringBuilder("{");
+                for (Map.Entry<Integer, DashboardStats> entry : stats.byBranch.entrySet()) {
+                    byBranch.append(byBranch.length() > 1 ? "," : "")
+                            .append(Json.string(String.valueOf(entry.getKey()))).append(':')
+                            .append(Json.stats(entry.getValue()));
+                }
+                return "\"total\":" + Json.stats(stats.merged) + ",\"branches\":" + byBranch.append('}') +
+                       "," + shardStatus(stats);
+            }
+            default:
+                throw new UsageException("Unknown command: " + command);
+        }
+    }
+
+    private BranchShards shards() throws SQLException, IOException {
+        if (branchShards == null) {
+            branchShards = BranchShards.fromConfig();
+            branchShards.initializeAll();
+        }
+        return branchShards;
+    }
+
+    private static String shardStatus(BranchShards.Gathered<?> gathered) {
+        StringBuilder failed = new StringBuilder("{");
+        for (Map.Entry<Integer, String> entry : gathered.failed.entrySet()) {
+            failed.append(failed.length() > 1 ? "," : "")
+                  .append(Json.string(String.valueOf(entry.getKey()))).append(':').append(Json.string(entry.getValue()));
+        }
+        return "\"complete\":" + gathered.isComplete() + ",\"timedOut\":" + gathered.timedOut +
+               ",\"failed\":" + failed.append('}');
+    }
+
+    private DatabaseManager db() throws SQLException {
+        if (dbManager == null) {
+            dbManager = new DatabaseManager();
+            dbManager.initializeDatabase(); // Just a version check once the schema is current
+        }
+        return dbManager;
+    }
+
+    // --name value pairs; anything else is positional as _1, _2, ...
+    private static Map<String, String> parseOptions(String[] args) throws UsageException {
+        Map<String, String> options = new HashMap<>();
+        int positional = 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                if (i + 1 >= args.length) {
+                    throw new UsageException("Missing value for " + args[i]);
+                }
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                options.put("_" + (++positional), args[i]);
+            }
+        }
+        return options;
+    }
+
+    private static String requirePositional(Map<String, String> options, String what) throws UsageException {
+        String value = options.get("_1");
+        if (value == null) {
+            throw new UsageException("Missing " + what);
+        }
+        return value;
+    }
+
+    private static LoanQuery parseLoanQuery(Map<String, String> options) throws UsageException {
+        LoanQuery query = new LoanQuery().issuedBetween(
+            options.containsKey("from") ? parseDate(options.get("from")) : null,
+            options.containsKey("to") ? parseDate(options.get("to")) : null);
+        if (options.containsKey("category")) {
+            query.category(options.get("category"));
+        }
+        if (options.containsKey("membership")) {
+            query.membership(options.get("membership"));
+        }
+        if (options.containsKey("status")) {
+            query.status(options.get("status"));
+        }
+        try {
+            for (String dimension : options.getOrDefault("group-by", "").split(",")) {
+                if (!dimension.isBlank()) {
+                    query.groupBy(LoanQuery.Dimension.valueOf(dimension.trim().toUpperCase()));
+                }
+            }
+            query.orderBy(LoanQuery.Order.valueOf(options.getOrDefault("order", "loans").toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new UsageException("Bad --group-by or --order: " + e.getMessage());
+        }
+        query.top((int) parseNumber(options.getOrDefault("top", "100")));
+        return query;
+    }
+
+    private static LocalDate parseDate(String value) throws UsageException {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new UsageException("Dates are YYYY-MM-DD: " + value);
+        }
+    }
+
+    private static double parseNumber(String value) throws UsageException {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new UsageException("Not a number: " + value);
+        }
+    }
+
+    // A date (start of day) or a date-time such as 2024-10-01T08:30, in local time
+    private static long parseTimestamp(String value, long missing) throws UsageException {
+        if (value == null) {
+            return missing;
+        }
+        try {
+            LocalDateTime time = value.contains("T") ? LocalDateTime.parse(value)
+                                                     : LocalDate.parse(value).atStartOfDay();
+            return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new UsageException("Expected YYYY-MM-DD or YYYY-MM-DDTHH:MM: " + value);
+        }
+    }
+
+    // ---------- CSV ----------
+
+    private static final String CSV_HEADER = "id,title,author,isbn,publisher,year,category,total_copies,available_copies";
+
+    // Columns: title, author, isbn, publisher, year, category, copies; a header row is skipped
+    static List<Book> readBooksCsv(String file) throws IOException, UsageException {
+        List<Book> books = new ArrayList<>();
+        BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.toLowerCase().startsWith("title"))) {
+                    continue;
+                }
+                List<String> fields = parseCsvLine(line);
+                if (fields.size() < 7) {
+                    throw new UsageException(file + ":" + lineNumber + ": expected 7 columns");
+                }
+                try {
+                    int copies = Integer.parseInt(fields.get(6).trim());
+                    books.add(new Book(0, fields.get(0), fields.get(1), fields.get(2), fields.get(3),
+                                       Integer.parseInt(fields.get(4).trim()), fields.get(5), copies, copies));
+                } catch (NumberFormatException e) {
+                    throw new UsageException(file + ":" + lineNumber + ": year and copies must be numbers");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return books;
+    }
+
+    // Columns: name, email, then optional phone and membership type; a header row is skipped
+    static List<User> readUsersCsv(String file) throws IOException, UsageException {
+        List<User> users = new ArrayList<>();
+        BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.toLowerCase().startsWith("name"))) {
+                    continue;
+                }
+                List<String> fields = parseCsvLine(line);
+                if (fields.size() < 2) {
+                    throw new UsageException(file + ":" + lineNumber + ": expected at least name and email");
+                }
+                String phone = fields.size() > 2 && !fields.get(2).isBlank() ? fields.get(2).trim() : null;
+                String membership = fields.size() > 3 && !fields.get(3).isBlank() ? fields.get(3).trim() : null;
+                users.add(new User(0, fields.get(0), fields.get(1), phone, null, membership, null, "Active"));
+            }
+        } finally {
+            reader.close();
+        }
+        return users;
+    }
+
+    static int writeBooksCsv(Stream<Book> books, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        int count = 0;
+        for (Iterator<Book> it = books.iterator(); it.hasNext(); count++) {
+            Book book = it.next();
+            writer.write(book.getId() + "," + csv(book.getTitle()) + "," + csv(book.getAuthor()) + "," +
+                         csv(book.getIsbn()) + "," + csv(book.getPublisher()) + "," +
+                         book.getPublicationYear() + "," + csv(book.getCategory()) + "," +
+                         book.getTotalCopies() + "," + book.getAvailableCopies() + "\n");
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String failure(String command, String message) {
+        return "{\"command\":" + Json.string(command) + ",\"ok\":false,\"error\":" + Json.string(message) + "}";
+    }
+}
\ No newline at end of file
@@ -4,51 +4,517 @@
 
 package com.michaelsemera.bookflow;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DatabaseManager {
     
-    // Database connection parameters
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/";
-    private static final String DB_NAME = "bookflow";
-    private static final String DB_USER = "root";
-    private static final String DB_PASSWORD = "password"; // Change this
+    // Database connection parameters (override with -Dbookflow.db.url=... etc.)
+    private static final String DB_URL = System.getProperty("bookflow.db.url", "jdbc:mysql://localhost:3306/");
+    private static final String DB_NAME = System.getProperty("bookflow.db.name", "bookflow");
+    private static final String DB_USER = System.getProperty("bookflow.db.user", "root");
+    private static final String DB_PASSWORD = System.getProperty("bookflow.db.password", "password"); // Change this
     
-    private Connection connection;
+    // Optional read-only replica for list and report queries; unset means everything uses the primary
+    private static final String REPLICA_URL = System.getProperty("bookflow.db.replicaUrl");
+    private static final String REPLICA_USER = System.getProperty("bookflow.db.replicaUser", DB_USER);
+    private static final String REPLICA_PASSWORD = System.getProperty("bookflow.db.replicaPassword", DB_PASSWORD);
+    // Reads fall back to the primary when the replica is further behind than this; -1 skips the check
+    private static final long MAX_REPLICA_LAG_MS = Long.getLong("bookflow.db.maxReplicaLagMs", 5000L);
+    // After a write, this desk reads from the primary for this long so it sees its own changes
+    private static final long READ_YOUR_WRITES_MS = Long.getLong("bookflow.db.readYourWritesMs", 5000L);
+    // How often the replica's lag is re-measured
+    private static final long LAG_CHECK_INTERVAL_MS = 1000L;
+    
+    // Bump whenever the schema changes so existing installs re-run provisioning
+    // v2: books.isbn13 normalized ISBN column
+    // v3: loans_archive table and loans (status, return_date) index
+    // v4: library_closures table for the business calendar
+    // v5: books.updated_at and book_deletions for catalog snapshot deltas
+    // v6: idx_loans_status_book and inventory_checksums for inventory reconciliation
+    // v7: users.updated_at so loan listings pick up patrons renamed at other desks
+    static final int SCHEMA_VERSION = 7;
+    
+    // Set -Dbookflow.fastStart=false to force the full bootstrap on every launch
+    private static final boolean FAST_START =
+        Boolean.parseBoolean(System.getProperty("bookflow.fastStart", "true"));
+    
+    // Rows per round trip for the streaming cursors
+    static final int DEFAULT_FETCH_SIZE = Integer.getInteger("bookflow.db.streamFetchSize", 1000);
+    
+    // Rows per batch (and per IN list) for bulk user registration
+    private static final int USER_IMPORT_BATCH = 1000;
+    
+    // Ids per IN (...) list when fetching books by id
+    private static final int BOOK_LOOKUP_BATCH = 1000;
+    
+    // Loan ids per UPDATE ... WHERE id IN (...) when flagging overdue loans
+    private static final int OVERDUE_UPDATE_CHUNK = 1000;
+    
+    // Messages of the circulation failures callers tell apart (the API answers 404 / 409)
+    static final String BOOK_NOT_FOUND = "Book not found";
+    static final String NO_COPIES_AVAILABLE = "No copies available";
+    static final String LOAN_NOT_FOUND = "Loan not found";
+    static final String LOAN_ALREADY_RETURNED = "Loan already returned";
+    
+    // MySQL error codes
+    private static final int ER_BAD_DB_ERROR = 1049;
+    private static final int ER_NO_SUCH_TABLE = 1146;
+    
+    private volatile Connection connection;
+    private volatile Connection replicaConnection;
+    
+    // Transactions on the shared desk connection take turns; a lock rather than a monitor
+    // so a virtual thread waiting its turn doesn't pin its carrier
+    private final ReentrantLock deskLock = new ReentrantLock();
+    
+    // Server mode: each request borrows a connection of its own (see beginRequest), and
+    // everything it calls uses that instead of the desk connection
+    private volatile ConnectionPool requestPool;
+    private final ThreadLocal<Connection> requestConnection = new ThreadLocal<>();
+    
+    // Read routing state, shared by the FX thread and background loaders
+    private volatile long lastWriteNanos;
+    private volatile long lagCheckedNanos;
+    private volatile boolean replicaUsable;
+    
+    // Committed changes are announced here so views can patch instead of reloading
+    private final DomainEventBus eventBus = new DomainEventBus();
+    
+    // Shared checkout/return transactions; created on first use when enabled
+    private GroupCommitter groupCommitter;
+    
+    // Binary trail of committed writes, fed from the event bus off the desk thread
+    private AuditJournal auditJournal;
+    
+    // Barcode lookups; loaded on first use so short-lived callers don't pay for it
+    private volatile IsbnIndex isbnIndex;
+    private final ReentrantLock isbnIndexLock = new ReentrantLock();
+    
+    // Titles and patron names for loan listings; loaded with the first listing and
+    // brought up to date with each later one
+    private volatile NameDictionary bookTitles;
+    private volatile NameDictionary userNames;
+    
+    // This branch's open days; built on first use from library_closures
+    private volatile BusinessCalendar businessCalendar;
+    private volatile long businessCalendarExpiresMillis;
+    
+    // Limit on each call for a branch shard, in ms; 0 is none (see limitCalls)
+    private long callTimeoutMs;
+    
+    // Where this instance's data lives; a branch shard points these at its own database
+    private final String dbUrl;
+    private final String dbName;
+    private final String replicaUrl;
     
     public DatabaseManager() throws SQLException {
+        this(DB_URL, DB_NAME, REPLICA_URL, AuditJournal.ENABLED);
+    }
+    
+    // For branch shards: the caller owns the (shared) audit journal, if any
+    DatabaseManager(String dbUrl, String dbName, String replicaUrl, boolean openAudit) throws SQLException {
+        this.dbUrl = dbUrl;
+        this.dbName = dbName;
+        this.replicaUrl = replicaUrl;
         connectToDatabase();
+        connectToReplica();
+        if (openAudit) {
+            openAuditJournal();
+        }
+        trackNameChanges();
+    }
+    
+    String getDatabaseName() {
+        return dbName;
+    }
+    
+    private void openAuditJournal() {
+        try {
+            auditJournal = AuditJournal.open(new File(AuditJournal.DEFAULT_DIR));
+            auditJournal.attach(eventBus);
+        } catch (IOException e) {
+            // Auditing must never keep the desk from working
+            System.err.println("Audit journal unavailable: " + e.getMessage());
+        }
+    }
+    
+    // Keeps the loan listing dictionaries in step with this desk's own writes
+    private void trackNameChanges() {
+        eventBus.subscribe(BookAdded.class, e -> {
+            NameDictionary titles = bookTitles;
+            if (titles != null) {
+                titles.put(e.getBook().getId(), e.getBook().getTitle());
+            }
+        });
+        eventBus.subscribe(BookUpdated.class, e -> {
+            NameDictionary titles = bookTitles;
+            if (titles != null) {
+                titles.put(e.getBook().getId(), e.getBook().getTitle());
+            }
+        });
+        eventBus.subscribe(BookDeleted.class, e -> {
+            NameDictionary titles = bookTitles;
+            if (titles != null) {
+                titles.remove(e.getBookId());
+            }
+        });
+        eventBus.subscribe(UserAdded.class, e -> {
+            NameDictionary names = userNames;
+            if (names != null) {
+                names.put(e.getUser().getId(), e.getUser().getName());
+            }
+        });
+    }
+    
+    public DomainEventBus getEventBus() {
+        return eventBus;
     }
     
     private void connectToDatabase() throws SQLException {
         try {
-            // Load MySQL JDBC driver
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            
-            // First connect without database to create it if needed
-            Connection tempConn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+            connection = openConnection(dbUrl + dbName);
+        } catch (SQLException e) {
+            if (e.getErrorCode() != ER_BAD_DB_ERROR) {
+                throw e;
+            }
+            // First launch against this server: create the database, then reconnect
+            Connection tempConn = openConnection(dbUrl);
             Statement stmt = tempConn.createStatement();
-            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS " + DB_NAME);
+            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS " + dbName);
             tempConn.close();
             
-            // Now connect to the database
-            connection = DriverManager.getConnection(DB_URL + DB_NAME, DB_USER, DB_PASSWORD);
-            System.out.println("✅ Connected to database: " + DB_NAME);
-            
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("MySQL JDBC Driver not found: " + e.getMessage());
+            connection = openConnection(dbUrl + dbName);
+        }
+        System.out.println("✅ Connected to database: " + dbName);
+    }
+    
+    private void connectToReplica() {
+        if (replicaUrl == null) {
+            return;
+        }
+        try {
+            replicaConnection = openReplicaConnection();
+            System.out.println("✅ Connected to read replica: " + replicaUrl);
+        } catch (SQLException e) {
+            // The desk keeps working on the primary alone
+            System.err.println("Read replica unavailable, using primary for reads: " + e.getMessage());
+        }
+    }
+    
+    private Connection openReplicaConnection() throws SQLException {
+        Connection conn = openConnection(replicaUrl + dbName, REPLICA_USER, REPLICA_PASSWORD);
+        conn.setReadOnly(true);
+        return conn;
+    }
+    
+    private Connection openConnection(String url) throws SQLException {
+        return openConnection(url, DB_USER, DB_PASSWORD);
+    }
+    
+    private Connection openConnection(String url, String user, String password) throws SQLException {
+        try {
+            // Connector/J 8 registers itself through the JDBC service loader
+            return DriverManager.getConnection(url, user, password);
+        } catch (SQLException e) {
+            if (!"08001".equals(e.getSQLState())) {
+                throw e;
+            }
+            // No suitable driver: an older driver jar that needs explicit loading
+            try {
+                Class.forName("com.mysql.cj.jdbc.Driver");
+            } catch (ClassNotFoundException cnf) {
+                throw new SQLException("MySQL JDBC Driver not found: " + cnf.getMessage());
+            }
+            return DriverManager.getConnection(url, user, password);
         }
     }
     
+    // ==================== REQUEST CONNECTIONS ====================
+    
+    // Gives concurrent requests (the API server) up to size primary connections of their own
+    void enableRequestPool(int size) {
+        requestPool = new ConnectionPool(this::openDedicatedConnection, size);
+        System.out.println("✅ Request connection pool: " + size + " connections");
+    }
+    
+    ConnectionPool getRequestPool() {
+        return requestPool;
+    }
+    
+    // Binds a pooled connection to the calling thread until endRequest. Returns false
+    // when none came free within timeoutMs.
+    boolean beginRequest(long timeoutMs) throws SQLException, InterruptedException {
+        Connection conn = requestPool.borrow(timeoutMs);
+        if (conn == null) {
+            return false;
+        }
+        requestConnection.set(conn);
+        return true;
+    }
+    
+    void endRequest() {
+        Connection conn = requestConnection.get();
+        if (conn != null) {
+            requestConnection.remove();
+            requestPool.release(conn);
+        }
+    }
+    
+    // The primary connection for this thread: its request's own, or the desk connection
+    private Connection primary() {
+        Connection conn = requestConnection.get();
+        return conn != null ? conn : connection;
+    }
+    
+    // ==================== CALL LIMITS ====================
+    
+    // Extra time a reply gets past the server-side limit before the link is given up on
+    private static final long NETWORK_TIMEOUT_GRACE_MS = 1000L;
+    
+    // For branch shards, so a slow or unreachable branch can't hold its thread: the server
+    // stops a SELECT running past timeoutMs (max_execution_time; the connection stays
+    // usable), and a reply that never comes, e.g. over a dead link, trips the socket
+    // timeout shortly after. That closes the connection; the next call reopens it.
+    // 0 removes the limits.
+    void limitCalls(long timeoutMs) throws SQLException {
+        if (connection.isClosed()) {
+            connection = openConnection(dbUrl + dbName);
+            callTimeoutMs = 0; // a fresh session has no limits
+        }
+        if (timeoutMs == callTimeoutMs) {
+            return;
+        }
+        Statement stmt = connection.createStatement();
+        stmt.execute("SET SESSION max_execution_time = " + timeoutMs);
+        stmt.close();
+        int networkMs = timeoutMs == 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, timeoutMs + NETWORK_TIMEOUT_GRACE_MS);
+        connection.setNetworkTimeout(Runnable::run, networkMs);
+        callTimeoutMs = timeoutMs;
+    }
+    
+    // ==================== READ ROUTING ====================
+    
+    // Connection for queries that tolerate slightly stale data: the replica when it is
+    // reachable and caught up, unless this desk wrote recently; otherwise the primary.
+    // A request with a pooled connection reads there rather than queue on the one replica link.
+    private Connection readConnection() {
+        Connection bound = requestConnection.get();
+        if (bound != null) {
+            return bound;
+        }
+        if (replicaConnection == null) {
+            return connection;
+        }
+        if (System.nanoTime() - lastWriteNanos < READ_YOUR_WRITES_MS * 1_000_000L) {
+            return connection;
+        }
+        return isReplicaUsable() ? replicaConnection : connection;
+    }
+    
+    // Writes go to the primary and pin this desk's reads there for a while
+    private void markWrite() {
+        lastWriteNanos = System.nanoTime();
+    }
+    
+    private boolean isReplicaUsable() {
+        long now = System.nanoTime();
+        if (now - lagCheckedNanos < LAG_CHECK_INTERVAL_MS * 1_000_000L) {
+            return replicaUsable;
+        }
+        synchronized (this) {
+            if (now - lagCheckedNanos >= LAG_CHECK_INTERVAL_MS * 1_000_000L) {
+                replicaUsable = checkReplica();
+                lagCheckedNanos = System.nanoTime();
+            }
+            return replicaUsable;
+        }
+    }
+    
+    private boolean checkReplica() {
+        try {
+            if (!replicaConnection.isValid(1)) {
+                replicaConnection.close();
+                replicaConnection = openReplicaConnection();
+            }
+            if (MAX_REPLICA_LAG_MS < 0) {
+                return true;
+            }
+            long lagMs = readReplicaLagMs();
+            return lagMs >= 0 && lagMs <= MAX_REPLICA_LAG_MS;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    // Seconds_Behind_Source from the replica, or -1 when replication is stopped or not set up
+    private long readReplicaLagMs() throws SQLException {
+        Statement stmt = replicaConnection.createStatement();
+        ResultSet rs;
+        String column;
+        try {
+            rs = stmt.executeQuery("SHOW REPLICA STATUS");
+            column = "Seconds_Behind_Source";
+        } catch (SQLException e) {
+            // MySQL before 8.0.22 only knows the old spelling
+            rs = stmt.executeQuery("SHOW SLAVE STATUS");
+            column = "Seconds_Behind_Master";
+        }
+        long lagMs = -1;
+        if (rs.next()) {
+            long seconds = rs.getLong(column);
+            if (!rs.wasNull()) {
+                lagMs = seconds * 1000;
+            }
+        }
+        rs.close();
+        stmt.close();
+        return lagMs;
+    }
+    
     public void initializeDatabase() throws SQLException {
+        if (FAST_START && readSchemaVersion() == SCHEMA_VERSION) {
+            System.out.println("✅ Schema v" + SCHEMA_VERSION + " is current, skipping provisioning");
+            return;
+        }
         createTables();
         insertSampleData();
+        upgradeSchema();
+        stampSchemaVersion();
         System.out.println("✅ Database initialized successfully");
     }
     
+    private int readSchemaVersion() throws SQLException {
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT version FROM schema_version WHERE id = 1");
+            int version = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            return version;
+        } catch (SQLException e) {
+            if (e.getErrorCode() == ER_NO_SUCH_TABLE) {
+                return 0; // Never provisioned, or provisioned before version stamps existed
+            }
+            throw e;
+        } finally {
+            stmt.close();
+        }
+    }
+    
+    // Brings tables created by older versions up to date; every step is idempotent
+    private void upgradeSchema() throws SQLException {
+        // v2: normalized ISBN-13 for exact barcode lookups
+        if (!columnExists("books", "isbn13")) {
+            Statement stmt = connection.createStatement();
+            stmt.executeUpdate("ALTER TABLE books ADD COLUMN isbn13 BIGINT NULL AFTER isbn, " +
+                               "ADD INDEX idx_books_isbn13 (isbn13)");
+            stmt.close();
+        }
+        backfillIsbn13();
+        
+        // v3: lets the archiver find old returned loans without scanning the table
+        if (!indexExists("loans", "idx_loans_status_return")) {
+            Statement stmt = connection.createStatement();
+            stmt.executeUpdate("ALTER TABLE loans ADD INDEX idx_loans_status_return (status, return_date)");
+            stmt.close();
+        }
+        
+        // v5: lets catalog snapshots fetch only the books changed since they were written
+        if (!columnExists("books", "updated_at")) {
+            Statement stmt = connection.createStatement();
+            stmt.executeUpdate("ALTER TABLE books ADD COLUMN updated_at TIMESTAMP(3) NOT NULL " +
+                               "DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3), " +
+                               "ADD INDEX idx_books_updated (updated_at)");
+            stmt.close();
+        }
+        
+        // v6: active loans per book straight from the index, for inventory reconciliation
+        if (!indexExists("loans", "idx_loans_status_book")) {
+            Statement stmt = connection.createStatement();
+            stmt.executeUpdate("ALTER TABLE loans ADD INDEX idx_loans_status_book (status, book_id)");
+            stmt.close();
+        }
+        
+        // v7: lets the patron name dictionary fetch only the users changed since its last sync
+        if (!columnExists("users", "updated_at")) {
+            Statement stmt = connection.createStatement();
+            stmt.executeUpdate("ALTER TABLE users ADD COLUMN updated_at TIMESTAMP(3) NOT NULL " +
+                               "DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3), " +
+                               "ADD INDEX idx_users_updated (updated_at)");
+            stmt.close();
+        }
+    }
+    
+    private boolean indexExists(String table, String index) throws SQLException {
+        ResultSet rs = connection.getMetaData().getIndexInfo(dbName, null, table, false, true);
+        boolean exists = false;
+        while (rs.next() && !exists) {
+            exists = index.equalsIgnoreCase(rs.getString("INDEX_NAME"));
+        }
+        rs.close();
+        return exists;
+    }
+    
+    private boolean columnExists(String table, String column) throws SQLException {
+        ResultSet rs = connection.getMetaData().getColumns(dbName, null, table, column);
+        boolean exists = rs.next();
+        rs.close();
+        return exists;
+    }
+    
+    private void backfillIsbn13() throws SQLException {
+        Statement select = connection.createStatement();
+        ResultSet rs = select.executeQuery(
+            "SELECT id, isbn FROM books WHERE isbn13 IS NULL AND isbn IS NOT NULL");
+        
+        PreparedStatement update = connection.prepareStatement("UPDATE books SET isbn13 = ? WHERE id = ?");
+        int pending = 0;
+        while (rs.next()) {
+            long isbn13 = Isbn.toIsbn13(rs.getString("isbn"));
+            if (isbn13 == Isbn.INVALID) {
+                continue;
+            }
+            update.setLong(1, isbn13);
+            update.setInt(2, rs.getInt("id"));
+            update.addBatch();
+            if (++pending % 500 == 0) {
+                update.executeBatch();
+            }
+        }
+        update.executeBatch();
+        
+        update.close();
+        rs.close();
+        select.close();
+    }
+    
+    private void stampSchemaVersion() throws SQLException {
+        PreparedStatement pstmt = connection.prepareStatement(
+            "REPLACE INTO schema_version (id, version) VALUES (1, ?)");
+        pstmt.setInt(1, SCHEMA_VERSION);
+        pstmt.executeUpdate();
+        pstmt.close();
+    }
+    
     private void createTables() throws SQLException {
         Statement stmt = connection.createStatement();
         
@@ -59,12 +525,16 @@ public class DatabaseManager {
             "title VARCHAR(255) NOT NULL," +
             "author VARCHAR(255) NOT NULL," +
             "isbn VARCHAR(20) UNIQUE," +
+            "isbn13 BIGINT NULL," +
             "publisher VARCHAR(255)," +
             "publication_year INT," +
             "category VARCHAR(100)," +
             "total_copies INT DEFAULT 1," +
             "available_copies INT DEFAULT 1," +
-            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)," +
+            "INDEX idx_books_isbn13 (isbn13)," +
+            "INDEX idx_books_updated (updated_at)" +
             ")";
         stmt.executeUpdate(createBooksTable);
         
@@ -78,7 +548,9 @@ public class DatabaseManager {
             "address TEXT," +
             "membership_type ENUM('Basic', 'Premium', 'Student') DEFAULT 'Basic'," +
             "registration_date DATE," +
-            "status ENUM('Active', 'Suspended', 'Inactive') DEFAULT 'Active'" +
+            "status ENUM('Active', 'Suspended', 'Inactive') DEFAULT 'Active'," +
+            "updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)," +
+            "INDEX idx_users_updated (updated_at)" +
             ")";
         stmt.executeUpdate(createUsersTable);
         
@@ -93,11 +565,35 @@ public class DatabaseManager {
             "return_date DATE," +
             "status ENUM('Active', 'Returned', 'Overdue') DEFAULT 'Active'," +
             "fine DECIMAL(10,2) DEFAULT 0.00," +
+            "INDEX idx_loans_status_return (status, return_date)," +
+            "INDEX idx_loans_status_book (status, book_id)," +
             "FOREIGN KEY (book_id) REFERENCES books(id)," +
             "FOREIGN KEY (user_id) REFERENCES users(id)" +
             ")";
         stmt.executeUpdate(createLoansTable);
         
+        // Returned loans moved out of the hot table by LoanArchiver, one partition per
+        // return year. Partitioned InnoDB tables can't carry foreign keys.
+        String createLoansArchiveTable = 
+            "CREATE TABLE IF NOT EXISTS loans_archive (" +
+            "id INT NOT NULL," +
+            "book_id INT NOT NULL," +
+            "user_id INT NOT NULL," +
+            "issue_date DATE NOT NULL," +
+            "due_date DATE NOT NULL," +
+            "return_date DATE NOT NULL," +
+            "status ENUM('Active', 'Returned', 'Overdue') DEFAULT 'Returned'," +
+            "fine DECIMAL(10,2) DEFAULT 0.00," +
+            "archive_year SMALLINT NOT NULL," +
+            "archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "PRIMARY KEY (id, archive_year)," +
+            "INDEX idx_loans_archive_user (user_id)," +
+            "INDEX idx_loans_archive_book (book_id)" +
+            ") PARTITION BY RANGE (archive_year) (" +
+            "PARTITION p_future VALUES LESS THAN MAXVALUE" +
+            ")";
+        stmt.executeUpdate(createLoansArchiveTable);
+        
         // Reservations table
         String createReservationsTable = 
             "CREATE TABLE IF NOT EXISTS reservations (" +
@@ -111,12 +607,51 @@ public class DatabaseManager {
             ")";
         stmt.executeUpdate(createReservationsTable);
         
+        // Holidays and other days this branch is shut; no fines accrue on them
+        String createClosuresTable = 
+            "CREATE TABLE IF NOT EXISTS library_closures (" +
+            "closed_date DATE PRIMARY KEY," +
+            "reason VARCHAR(255)" +
+            ")";
+        stmt.executeUpdate(createClosuresTable);
+        
+        // Tombstones for deleted books, so catalog snapshots can catch up on deletes
+        String createBookDeletionsTable = 
+            "CREATE TABLE IF NOT EXISTS book_deletions (" +
+            "book_id INT PRIMARY KEY," +
+            "deleted_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)," +
+            "INDEX idx_book_deletions_at (deleted_at)" +
+            ")";
+        stmt.executeUpdate(createBookDeletionsTable);
+        
+        // Per-chunk checksums from the last inventory reconciliation, so unchanged
+        // ranges of books can be skipped next time
+        String createInventoryChecksumsTable = 
+            "CREATE TABLE IF NOT EXISTS inventory_checksums (" +
+            "chunk_size INT NOT NULL," +
+            "chunk_id INT NOT NULL," +
+            "checksum BIGINT NOT NULL," +
+            "clean BOOLEAN NOT NULL," +
+            "checked_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+            "PRIMARY KEY (chunk_size, chunk_id)" +
+            ")";
+        stmt.executeUpdate(createInventoryChecksumsTable);
+        
+        // Single-row version stamp checked by the fast-start path
+        String createSchemaVersionTable = 
+            "CREATE TABLE IF NOT EXISTS schema_version (" +
+            "id TINYINT PRIMARY KEY," +
+            "version INT NOT NULL," +
+            "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+            ")";
+        stmt.executeUpdate(createSchemaVersionTable);
+        
         stmt.close();
     }
     
     private void insertSampleData() throws SQLException {
         // Check if data already exists
-        Statement checkStmt = connection.createStatement();
+        Statement checkStmt = primary().createStatement();
         ResultSet rs = checkStmt.executeQuery("SELECT COUNT(*) FROM books");
         rs.next();
         if (rs.getInt(1) > 0) {
@@ -170,7 +705,7 @@ public class DatabaseManager {
             "VALUES (5, 1, '2024-10-01', '2024-10-15', 'Active')"
         };
         
-        Statement stmt = connection.createStatement();
+        Statement stmt = primary().createStatement();
         
         for (String sql : sampleBooks) {
             stmt.executeUpdate(sql);
@@ -192,9 +727,10 @@ public class DatabaseManager {
     
     public void addBook(Book book) throws SQLException {
         String sql = "INSERT INTO books (title, author, isbn, publisher, publication_year, " +
-                    "category, total_copies, available_copies) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+                    "category, total_copies, available_copies, isbn13) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
         
-        PreparedStatement pstmt = connection.prepareStatement(sql);
+        long isbn13 = Isbn.toIsbn13(book.getIsbn());
+        PreparedStatement pstmt = primary().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
         pstmt.setString(1, book.getTitle());
         pstmt.setString(2, book.getAuthor());
         pstmt.setString(3, book.getIsbn());
@@ -203,16 +739,73 @@ public class DatabaseManager {
         pstmt.setString(6, book.getCategory());
         pstmt.setInt(7, book.getTotalCopies());
         pstmt.setInt(8, book.getAvailableCopies());
+        setIsbn13(pstmt, 9, isbn13);
         
         pstmt.executeUpdate();
+        book.setId(readGeneratedId(pstmt));
         pstmt.close();
+        markWrite();
+        
+        if (isbnIndex != null) {
+            isbnIndex.put(book.getId(), isbn13);
+        }
+        
+        eventBus.publish(new BookAdded(book));
+    }
+    
+    // Bulk insert for imports: one batched statement and one commit instead of a round
+    // trip per book. Ids are filled in, and BookAdded is published for each after commit.
+    public void importBooks(List<Book> books) throws SQLException {
+        String sql = "INSERT INTO books (title, author, isbn, publisher, publication_year, " +
+                    "category, total_copies, available_copies, isbn13) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        
+        Connection conn = primary();
+        conn.setAutoCommit(false);
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            for (Book book : books) {
+                pstmt.setString(1, book.getTitle());
+                pstmt.setString(2, book.getAuthor());
+                pstmt.setString(3, book.getIsbn());
+                pstmt.setString(4, book.getPublisher());
+                pstmt.setInt(5, book.getPublicationYear());
+                pstmt.setString(6, book.getCategory());
+                pstmt.setInt(7, book.getTotalCopies());
+                pstmt.setInt(8, book.getAvailableCopies());
+                setIsbn13(pstmt, 9, Isbn.toIsbn13(book.getIsbn()));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            
+            ResultSet keys = pstmt.getGeneratedKeys();
+            for (int i = 0; i < books.size() && keys.next(); i++) {
+                books.get(i).setId(keys.getInt(1));
+            }
+            keys.close();
+            pstmt.close();
+            
+            conn.commit();
+            markWrite();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        
+        for (Book book : books) {
+            if (isbnIndex != null) {
+                isbnIndex.put(book.getId(), Isbn.toIsbn13(book.getIsbn()));
+            }
+            eventBus.publish(new BookAdded(book));
+        }
     }
     
     public List<Book> getAllBooks() throws SQLException {
         List<Book> books = new ArrayList<>();
         String sql = "SELECT * FROM books ORDER BY title";
         
-        Statement stmt = connection.createStatement();
+        Statement stmt = readConnection().createStatement();
         ResultSet rs = stmt.executeQuery(sql);
         
         while (rs.next()) {
@@ -227,7 +820,7 @@ public class DatabaseManager {
     
     public Book getBookById(int id) throws SQLException {
         String sql = "SELECT * FROM books WHERE id = ?";
-        PreparedStatement pstmt = connection.prepareStatement(sql);
+        PreparedStatement pstmt = primary().prepareStatement(sql);
         pstmt.setInt(1, id);
         
         ResultSet rs = pstmt.executeQuery();
@@ -243,11 +836,36 @@ public class DatabaseManager {
         return book;
     }
     
+    // Several books by id, in IN (...) batches; ids that no longer exist are left out
+    public Map<Integer, Book> getBooksByIds(Collection<Integer> ids) throws SQLException {
+        Map<Integer, Book> books = new HashMap<>();
+        List<Integer> pending = new ArrayList<>(ids);
+        for (int from = 0; from < pending.size(); from += BOOK_LOOKUP_BATCH) {
+            List<Integer> chunk = pending.subList(from, Math.min(pending.size(), from + BOOK_LOOKUP_BATCH));
+            PreparedStatement pstmt = readConnection().prepareStatement(
+                "SELECT * FROM books WHERE id IN (" +
+                String.join(",", Collections.nCopies(chunk.size(), "?")) + ")");
+            for (int i = 0; i < chunk.size(); i++) {
+                pstmt.setInt(i + 1, chunk.get(i));
+            }
+            
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Book book = extractBookFromResultSet(rs);
+                books.put(book.getId(), book);
+            }
+            
+            rs.close();
+            pstmt.close();
+        }
+        return books;
+    }
+    
     public List<Book> searchBooks(String query) throws SQLException {
         List<Book> books = new ArrayList<>();
         String sql = "SELECT * FROM books WHERE title LIKE ? OR author LIKE ? OR isbn LIKE ?";
         
-        PreparedStatement pstmt = connection.prepareStatement(sql);
+        PreparedStatement pstmt = readConnection().prepareStatement(sql);
         String searchPattern = "%" + query + "%";
         pstmt.setString(1, searchPattern);
         pstmt.setString(2, searchPattern);
@@ -267,10 +885,11 @@ public class DatabaseManager {
     
     public void updateBook(Book book) throws SQLException {
         String sql = "UPDATE books SET title = ?, author = ?, isbn = ?, publisher = ?, " +
-                    "publication_year = ?, category = ?, total_copies = ?, available_copies = ? " +
-                    "WHERE id = ?";
+                    "publication_year = ?, category = ?, total_copies = ?, available_copies = ?, " +
+                    "isbn13 = ? WHERE id = ?";
         
-        PreparedStatement pstmt = connection.prepareStatement(sql);
+        long isbn13 = Isbn.toIsbn13(book.getIsbn());
+        PreparedStatement pstmt = primary().prepareStatement(sql);
         pstmt.setString(1, book.getTitle());
         pstmt.setString(2, book.getAuthor());
         pstmt.setString(3, book.getIsbn());
@@ -279,18 +898,157 @@ public class DatabaseManager {
         pstmt.setString(6, book.getCategory());
         pstmt.setInt(7, book.getTotalCopies());
         pstmt.setInt(8, book.getAvailableCopies());
-        pstmt.setInt(9, book.getId());
+        setIsbn13(pstmt, 9, isbn13);
+        pstmt.setInt(10, book.getId());
         
         pstmt.executeUpdate();
         pstmt.close();
+        markWrite();
+        
+        if (isbnIndex != null) {
+            isbnIndex.put(book.getId(), isbn13);
+        }
+        
+        eventBus.publish(new BookUpdated(book));
     }
     
+    // The row and its tombstone commit together, or snapshots would never hear of the delete
     public void deleteBook(int id) throws SQLException {
-        String sql = "DELETE FROM books WHERE id = ?";
-        PreparedStatement pstmt = connection.prepareStatement(sql);
-        pstmt.setInt(1, id);
-        pstmt.executeUpdate();
+        int deleted = inPrimaryTransaction(conn -> {
+            PreparedStatement pstmt = conn.prepareStatement("DELETE FROM books WHERE id = ?");
+            pstmt.setInt(1, id);
+            int rows = pstmt.executeUpdate();
+            pstmt.close();
+            if (rows > 0) {
+                PreparedStatement tombstone = conn.prepareStatement(
+                    "REPLACE INTO book_deletions (book_id) VALUES (?)");
+                tombstone.setInt(1, id);
+                tombstone.executeUpdate();
+                tombstone.close();
+            }
+            return rows;
+        });
+        markWrite();
+        
+        if (deleted > 0) {
+            if (isbnIndex != null) {
+                isbnIndex.remove(id);
+            }
+            eventBus.publish(new BookDeleted(id));
+        }
+    }
+    
+    // Exact barcode lookup: the in-memory index resolves the id, the row comes by primary key.
+    // Returns null for an invalid ISBN or one not in the catalog.
+    public Book getBookByIsbn(String isbn) throws SQLException {
+        long isbn13 = Isbn.toIsbn13(isbn);
+        if (isbn13 == Isbn.INVALID) {
+            return null;
+        }
+        
+        int bookId = findBookIdByIsbn(isbn13);
+        if (bookId > 0) {
+            Book book = getBookById(bookId);
+            if (book != null && Isbn.toIsbn13(book.getIsbn()) == isbn13) {
+                return book;
+            }
+        }
+        
+        // Miss or stale entry, e.g. a book added from another desk: one indexed lookup
+        PreparedStatement pstmt = primary().prepareStatement("SELECT * FROM books WHERE isbn13 = ?");
+        pstmt.setLong(1, isbn13);
+        ResultSet rs = pstmt.executeQuery();
+        Book book = rs.next() ? extractBookFromResultSet(rs) : null;
+        rs.close();
         pstmt.close();
+        
+        if (book != null) {
+            isbnIndex.put(book.getId(), isbn13);
+        } else if (bookId > 0) {
+            isbnIndex.remove(bookId);
+        }
+        return book;
+    }
+    
+    // Index-only resolution of a normalized ISBN; 0 when unknown
+    public int findBookIdByIsbn(long isbn13) throws SQLException {
+        return getIsbnIndex().findBookId(isbn13);
+    }
+    
+    // Concurrent first lookups wait on a lock, not a monitor, while one of them loads
+    private IsbnIndex getIsbnIndex() throws SQLException {
+        IsbnIndex index = isbnIndex;
+        if (index != null) {
+            return index;
+        }
+        isbnIndexLock.lock();
+        try {
+            if (isbnIndex == null) {
+                index = new IsbnIndex();
+                Statement stmt = primary().createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id, isbn13 FROM books WHERE isbn13 IS NOT NULL");
+                while (rs.next()) {
+                    index.put(rs.getInt(1), rs.getLong(2));
+                }
+                rs.close();
+                stmt.close();
+                isbnIndex = index;
+            }
+            return isbnIndex;
+        } finally {
+            isbnIndexLock.unlock();
+        }
+    }
+    
+    // ---------- Catalog deltas ----------
+    // Times are epoch milliseconds on the database server's clock, so desks with a
+    // skewed clock still ask for the right rows
+    
+    public long readServerTimeMillis() throws SQLException {
+        Statement stmt = readConnection().createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000)");
+        rs.next();
+        long millis = rs.getLong(1);
+        rs.close();
+        stmt.close();
+        return millis;
+    }
+    
+    // Books added or changed (including copies lent or returned) at or after sinceMillis
+    public List<Book> getBooksChangedSince(long sinceMillis) throws SQLException {
+        List<Book> books = new ArrayList<>();
+        PreparedStatement pstmt = readConnection().prepareStatement(
+            "SELECT * FROM books WHERE updated_at >= FROM_UNIXTIME(? / 1000)");
+        pstmt.setLong(1, sinceMillis);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            books.add(extractBookFromResultSet(rs));
+        }
+        rs.close();
+        pstmt.close();
+        return books;
+    }
+    
+    public List<Integer> getBookDeletionsSince(long sinceMillis) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        PreparedStatement pstmt = readConnection().prepareStatement(
+            "SELECT book_id FROM book_deletions WHERE deleted_at >= FROM_UNIXTIME(? / 1000)");
+        pstmt.setLong(1, sinceMillis);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            ids.add(rs.getInt(1));
+        }
+        rs.close();
+        pstmt.close();
+        return ids;
+    }
+    
+    private static void setIsbn13(PreparedStatement pstmt, int index, long isbn13) throws SQLException {
+        if (isbn13 == Isbn.INVALID) {
+            pstmt.setNull(index, Types.BIGINT);
+        } else {
+            pstmt.setLong(index, isbn13);
+        }
     }
     
     private Book extractBookFromResultSet(ResultSet rs) throws SQLException {
@@ -313,7 +1071,7 @@ public class DatabaseManager {
         String sql = "INSERT INTO users (name, email, phone, address, membership_type, registration_date) " +
                     "VALUES (?, ?, ?, ?, ?, ?)";
         
-        PreparedStatement pstmt = connection.prepareStatement(sql);
+        PreparedStatement pstmt = primary().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
         pstmt.setString(1, user.getName());
         pstmt.setString(2, user.getEmail());
         pstmt.setString(3, user.getPhone());
@@ -322,14 +1080,126 @@ public class DatabaseManager {
         pstmt.setDate(6, Date.valueOf(user.getRegistrationDate()));
         
         pstmt.executeUpdate();
+        user.setId(readGeneratedId(pstmt));
         pstmt.close();
+        markWrite();
+        
+        eventBus.publish(new UserAdded(user));
+    }
+    
+    // Bulk registration: batched multi-row inserts on a bulk-load connection, committed
+    // every USER_IMPORT_BATCH rows. Ids are filled in and UserAdded is published for each.
+    // Callers screen out existing emails first; one registered in the meantime (another
+    // desk, a second import) is skipped rather than failing the import. Returns how many
+    // were skipped that way; their ids stay 0.
+    public int importUsers(List<User> users) throws SQLException {
+        String sql = "INSERT INTO users (name, email, phone, address, membership_type, registration_date, status) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE id = id";
+        
+        // useAffectedRows: a duplicate left as it was counts 0 rather than 1 "found"
+        Connection conn = openConnection(dbUrl + dbName + "?rewriteBatchedStatements=true&useAffectedRows=true");
+        List<User> committed = new ArrayList<>();
+        int skipped = 0;
+        try {
+            conn.setAutoCommit(false);
+            PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            for (int from = 0; from < users.size(); from += USER_IMPORT_BATCH) {
+                List<User> batch = users.subList(from, Math.min(users.size(), from + USER_IMPORT_BATCH));
+                for (User user : batch) {
+                    bindImportedUser(pstmt, user);
+                    pstmt.addBatch();
+                }
+                try {
+                    pstmt.executeBatch();
+                    if (lastRowCount(conn) == batch.size()) {
+                        ResultSet keys = pstmt.getGeneratedKeys();
+                        for (int i = 0; i < batch.size() && keys.next(); i++) {
+                            batch.get(i).setId(keys.getInt(1));
+                        }
+                        keys.close();
+                        committed.addAll(batch);
+                    } else {
+                        // Some of these were registered since the caller checked, so the batch's
+                        // keys can't be matched to rows: redo it a row at a time to find out which
+                        conn.rollback();
+                        for (User user : batch) {
+                            bindImportedUser(pstmt, user);
+                            if (pstmt.executeUpdate() == 1) {
+                                user.setId(readGeneratedId(pstmt));
+                                committed.add(user);
+                            } else {
+                                skipped++;
+                            }
+                        }
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+            pstmt.close();
+        } finally {
+            conn.close();
+            if (!committed.isEmpty()) {
+                markWrite();
+                for (User user : committed) {
+                    eventBus.publish(new UserAdded(user));
+                }
+            }
+        }
+        return skipped;
+    }
+    
+    private static void bindImportedUser(PreparedStatement pstmt, User user) throws SQLException {
+        pstmt.setString(1, user.getName());
+        pstmt.setString(2, user.getEmail());
+        pstmt.setString(3, user.getPhone());
+        pstmt.setString(4, user.getAddress());
+        pstmt.setString(5, user.getMembershipType());
+        pstmt.setDate(6, Date.valueOf(user.getRegistrationDate()));
+        pstmt.setString(7, user.getStatus() != null ? user.getStatus() : "Active");
+    }
+    
+    // Rows the connection's last statement inserted or changed; a rewritten batch reports
+    // no per-row counts, so this is the only total there is
+    private static long lastRowCount(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT ROW_COUNT()");
+        rs.next();
+        long count = rs.getLong(1);
+        rs.close();
+        stmt.close();
+        return count;
+    }
+    
+    // Which of these emails are already registered, as stored. Asks the primary, so a
+    // lagging replica can't let a duplicate through.
+    public List<String> findExistingEmails(List<String> emails) throws SQLException {
+        List<String> existing = new ArrayList<>();
+        for (int from = 0; from < emails.size(); from += USER_IMPORT_BATCH) {
+            List<String> chunk = emails.subList(from, Math.min(emails.size(), from + USER_IMPORT_BATCH));
+            PreparedStatement pstmt = primary().prepareStatement(
+                "SELECT email FROM users WHERE email IN (" +
+                String.join(",", Collections.nCopies(chunk.size(), "?")) + ")");
+            for (int i = 0; i < chunk.size(); i++) {
+                pstmt.setString(i + 1, chunk.get(i));
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                existing.add(rs.getString(1));
+            }
+            rs.close();
+            pstmt.close();
+        }
+        return existing;
     }
     
     public List<User> getAllUsers() throws SQLException {
         List<User> users = new ArrayList<>();
         String sql = "SELECT * FROM users ORDER BY name";
         
-        Statement stmt = connection.createStatement();
+        Statement stmt = readConnection().createStatement();
         ResultSet rs = stmt.executeQuery(sql);
         
         while (rs.next()) {
@@ -358,97 +1228,505 @@ public class DatabaseManager {
     // ==================== LOAN OPERATIONS ====================
     
     public void issueLoan(int bookId, int userId, LocalDate issueDate, LocalDate dueDate) throws SQLException {
-        connection.setAutoCommit(false);
+        int loanId = inCirculationTransaction(conn -> applyIssueLoan(conn, bookId, userId, issueDate, dueDate));
+        markWrite();
+        
+        Loan loan = getLoanById(loanId);
+        if (loan != null) {
+            eventBus.publish(new LoanIssued(loan));
+        }
+    }
+    
+    public void returnBook(int loanId) throws SQLException {
+        LocalDate returnDate = LocalDate.now();
+        LoanReturned returned = inCirculationTransaction(conn -> applyReturn(conn, loanId, returnDate));
+        markWrite();
+        
+        eventBus.publish(returned);
+    }
+    
+    // Flags loans still out past their due date as Overdue and sets the fine accrued
+    // so far, counting only days the branch was open; returns how many loans were updated
+    public int processOverdueLoans(LocalDate asOf, double finePerDay) throws SQLException {
+        BusinessCalendar calendar = getBusinessCalendar();
+        
+        // One pass over the late loans into flat arrays
+        int[] ids = new int[1024];
+        long[] dueDays = new long[1024];
+        int count = 0;
+        PreparedStatement select = primary().prepareStatement(
+            "SELECT id, due_date FROM loans WHERE status IN ('Active', 'Overdue') AND due_date < ?");
+        select.setDate(1, Date.valueOf(asOf));
+        ResultSet rs = select.executeQuery();
+        while (rs.next()) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                dueDays = Arrays.copyOf(dueDays, count * 2);
+            }
+            ids[count] = rs.getInt(1);
+            dueDays[count] = rs.getDate(2).toLocalDate().toEpochDay();
+            count++;
+        }
+        rs.close();
+        select.close();
+        if (count == 0) {
+            return 0;
+        }
+        
+        double[] fines = new double[count];
+        calendar.fines(count, dueDays, asOf.toEpochDay(), finePerDay, fines);
+        
+        // Loans late by the same number of open days share a fine, so the update is one
+        // statement per distinct fine rather than one per loan
+        Map<Long, List<Integer>> idsByFineCents = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            idsByFineCents.computeIfAbsent(Math.round(fines[i] * 100), k -> new ArrayList<>()).add(ids[i]);
+        }
         
+        int updated = inPrimaryTransaction(conn -> {
+            int rows = 0;
+            for (Map.Entry<Long, List<Integer>> entry : idsByFineCents.entrySet()) {
+                List<Integer> group = entry.getValue();
+                for (int from = 0; from < group.size(); from += OVERDUE_UPDATE_CHUNK) {
+                    List<Integer> chunk = group.subList(from, Math.min(group.size(), from + OVERDUE_UPDATE_CHUNK));
+                    // Re-checked here: a loan returned since the select above stays returned
+                    PreparedStatement update = conn.prepareStatement(
+                        "UPDATE loans SET status = 'Overdue', fine = ? WHERE status IN ('Active', 'Overdue') " +
+                        "AND id IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")");
+                    update.setBigDecimal(1, BigDecimal.valueOf(entry.getKey(), 2));
+                    for (int i = 0; i < chunk.size(); i++) {
+                        update.setInt(i + 2, chunk.get(i));
+                    }
+                    rows += update.executeUpdate();
+                    update.close();
+                }
+            }
+            return rows;
+        });
+        markWrite();
+        return updated;
+    }
+    
+    // The branch calendar. Closures are cached until the next local midnight or for
+    // BusinessCalendar.REFRESH_MS, whichever comes first, so closures added by other
+    // desks or the CLI show up without a restart; addClosure here drops it at once.
+    public BusinessCalendar getBusinessCalendar() throws SQLException {
+        BusinessCalendar calendar = businessCalendar;
+        long now = System.currentTimeMillis();
+        if (calendar == null || now >= businessCalendarExpiresMillis) {
+            List<LocalDate> closures = new ArrayList<>();
+            Statement stmt = readConnection().createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT closed_date FROM library_closures");
+            while (rs.next()) {
+                closures.add(rs.getDate(1).toLocalDate());
+            }
+            rs.close();
+            stmt.close();
+            calendar = BusinessCalendar.forClosures(closures);
+            long midnight = LocalDate.now().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            businessCalendarExpiresMillis = Math.min(now + BusinessCalendar.REFRESH_MS, midnight);
+            businessCalendar = calendar;
+        }
+        return calendar;
+    }
+    
+    public void addClosure(LocalDate date, String reason) throws SQLException {
+        PreparedStatement pstmt = primary().prepareStatement(
+            "REPLACE INTO library_closures (closed_date, reason) VALUES (?, ?)");
+        pstmt.setDate(1, Date.valueOf(date));
+        pstmt.setString(2, reason);
+        pstmt.executeUpdate();
+        pstmt.close();
+        markWrite();
+        businessCalendar = null;
+    }
+    
+    // Checkouts and returns share a group commit when enabled, otherwise each gets
+    // its own transaction on the primary; deadlock victims are retried either way
+    private <T> T inCirculationTransaction(GroupCommitter.Operation<T> operation) throws SQLException {
+        GroupCommitter committer = getGroupCommitter();
+        if (committer != null) {
+            return committer.execute(operation);
+        }
+        return inPrimaryTransaction(operation);
+    }
+    
+    // One transaction on this thread's primary connection: a request's own runs at once,
+    // the shared desk connection is taken in turns
+    private <T> T inPrimaryTransaction(GroupCommitter.Operation<T> operation) throws SQLException {
+        Connection bound = requestConnection.get();
+        if (bound != null) {
+            return GroupCommitter.inTransaction(bound, operation);
+        }
+        deskLock.lock();
         try {
-            // Insert loan record
-            String insertLoan = "INSERT INTO loans (book_id, user_id, issue_date, due_date, status) " +
-                               "VALUES (?, ?, ?, ?, 'Active')";
-            PreparedStatement pstmt1 = connection.prepareStatement(insertLoan);
-            pstmt1.setInt(1, bookId);
-            pstmt1.setInt(2, userId);
-            pstmt1.setDate(3, Date.valueOf(issueDate));
-            pstmt1.setDate(4, Date.valueOf(dueDate));
-            pstmt1.executeUpdate();
-            pstmt1.close();
-            
-            // Decrease available copies
-            String updateBook = "UPDATE books SET available_copies = available_copies - 1 WHERE id = ?";
-            PreparedStatement pstmt2 = connection.prepareStatement(updateBook);
-            pstmt2.setInt(1, bookId);
-            pstmt2.executeUpdate();
-            pstmt2.close();
-            
-            connection.commit();
-            
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
+            return GroupCommitter.inTransaction(connection, operation);
         } finally {
-            connection.setAutoCommit(true);
+            deskLock.unlock();
         }
     }
     
-    public void returnBook(int loanId) throws SQLException {
-        connection.setAutoCommit(false);
+    private synchronized GroupCommitter getGroupCommitter() throws SQLException {
+        if (groupCommitter == null && GroupCommitter.ENABLED) {
+            groupCommitter = new GroupCommitter(openDedicatedConnection());
+        }
+        return groupCommitter;
+    }
+    
+    // Takes a copy off the shelf and inserts the loan; the caller owns the transaction.
+    // The guarded decrement is the availability check, so two desks can't both take the last copy.
+    private int applyIssueLoan(Connection conn, int bookId, int userId,
+                               LocalDate issueDate, LocalDate dueDate) throws SQLException {
+        // Decrease available copies first: the book row's lock is taken before the
+        // loan insert needs it for the foreign key
+        String updateBook = "UPDATE books SET available_copies = available_copies - 1 " +
+                           "WHERE id = ? AND available_copies > 0";
+        PreparedStatement pstmt2 = conn.prepareStatement(updateBook);
+        pstmt2.setInt(1, bookId);
+        int taken = pstmt2.executeUpdate();
+        pstmt2.close();
+        if (taken == 0) {
+            throw new SQLException(bookExists(conn, bookId) ? NO_COPIES_AVAILABLE : BOOK_NOT_FOUND);
+        }
+        
+        // Insert loan record
+        String insertLoan = "INSERT INTO loans (book_id, user_id, issue_date, due_date, status) " +
+                           "VALUES (?, ?, ?, ?, 'Active')";
+        PreparedStatement pstmt1 = conn.prepareStatement(insertLoan, Statement.RETURN_GENERATED_KEYS);
+        pstmt1.setInt(1, bookId);
+        pstmt1.setInt(2, userId);
+        pstmt1.setDate(3, Date.valueOf(issueDate));
+        pstmt1.setDate(4, Date.valueOf(dueDate));
+        pstmt1.executeUpdate();
+        int loanId = readGeneratedId(pstmt1);
+        pstmt1.close();
+        
+        return loanId;
+    }
+    
+    private static boolean bookExists(Connection conn, int bookId) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM books WHERE id = ?");
+        pstmt.setInt(1, bookId);
+        ResultSet rs = pstmt.executeQuery();
+        boolean exists = rs.next();
+        rs.close();
+        pstmt.close();
+        return exists;
+    }
+    
+    // Closes the loan and puts the copy back; returns the event to publish once committed
+    private LoanReturned applyReturn(Connection conn, int loanId, LocalDate returnDate) throws SQLException {
+        // Get book and patron from loan
+        String getLoan = "SELECT book_id, user_id FROM loans WHERE id = ?";
+        PreparedStatement pstmt1 = conn.prepareStatement(getLoan);
+        pstmt1.setInt(1, loanId);
+        ResultSet rs = pstmt1.executeQuery();
+        
+        if (!rs.next()) {
+            rs.close();
+            pstmt1.close();
+            throw new SQLException(LOAN_NOT_FOUND);
+        }
+        
+        int bookId = rs.getInt("book_id");
+        int userId = rs.getInt("user_id");
+        rs.close();
+        pstmt1.close();
+        
+        // Update loan record; only an open loan can be returned, so a retried return
+        // neither puts a second copy back nor rewrites the return date
+        String updateLoan = "UPDATE loans SET return_date = ?, status = 'Returned' " +
+                           "WHERE id = ? AND status IN ('Active', 'Overdue')";
+        PreparedStatement pstmt2 = conn.prepareStatement(updateLoan);
+        pstmt2.setDate(1, Date.valueOf(returnDate));
+        pstmt2.setInt(2, loanId);
+        int closed = pstmt2.executeUpdate();
+        pstmt2.close();
+        if (closed == 0) {
+            throw new SQLException(LOAN_ALREADY_RETURNED);
+        }
+        
+        // Increase available copies
+        String updateBook = "UPDATE books SET available_copies = available_copies + 1 WHERE id = ?";
+        PreparedStatement pstmt3 = conn.prepareStatement(updateBook);
+        pstmt3.setInt(1, bookId);
+        pstmt3.executeUpdate();
+        pstmt3.close();
         
+        return new LoanReturned(loanId, bookId, userId, returnDate);
+    }
+    
+    // Hot loans only; archived history needs getAllLoans(true)
+    public List<Loan> getAllLoans() throws SQLException {
+        return getAllLoans(false);
+    }
+    
+    // Reads only the narrow loans columns; titles and names come from the in-memory
+    // dictionaries, with one batched lookup for any ids they don't know yet
+    public List<Loan> getAllLoans(boolean includeArchive) throws SQLException {
+        List<Loan> loans = new ArrayList<>();
+        String columns = "id, book_id, user_id, issue_date, due_date, return_date, status, fine";
+        String sql = "SELECT " + columns + " FROM loans ";
+        if (includeArchive) {
+            sql += "UNION ALL SELECT " + columns + " FROM loans_archive ";
+        }
+        sql += "ORDER BY issue_date DESC";
+        
+        Connection conn = readConnection();
+        NameDictionary titles = getBookTitles(conn);
+        NameDictionary names = getUserNames(conn);
+        
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(sql);
+        
+        Set<Integer> unknownBooks = new HashSet<>();
+        Set<Integer> unknownUsers = new HashSet<>();
+        while (rs.next()) {
+            Loan loan = new Loan(
+                rs.getInt("id"),
+                rs.getInt("book_id"),
+                rs.getInt("user_id"),
+                null,
+                null,
+                rs.getDate("issue_date").toLocalDate(),
+                rs.getDate("due_date").toLocalDate(),
+                rs.getDate("return_date") != null ? rs.getDate("return_date").toLocalDate() : null,
+                rs.getString("status"),
+                rs.getDouble("fine")
+            );
+            loan.setBookTitle(titles.get(loan.getBookId()));
+            loan.setUserName(names.get(loan.getUserId()));
+            if (loan.getBookTitle() == null) {
+                unknownBooks.add(loan.getBookId());
+            }
+            if (loan.getUserName() == null) {
+                unknownUsers.add(loan.getUserId());
+            }
+            loans.add(loan);
+        }
+        
+        rs.close();
+        stmt.close();
+        
+        // Added from another desk, or gone (archived loans can outlive their book or patron)
+        if (!unknownBooks.isEmpty() || !unknownUsers.isEmpty()) {
+            titles.resolve(conn, unknownBooks);
+            names.resolve(conn, unknownUsers);
+            for (Loan loan : loans) {
+                if (loan.getBookTitle() == null) {
+                    loan.setBookTitle(titles.get(loan.getBookId()));
+                }
+                if (loan.getUserName() == null) {
+                    loan.setUserName(names.get(loan.getUserId()));
+                }
+            }
+        }
+        
+        return loans;
+    }
+    
+    // Loaded whole the first time; after that, renames and deletes from other desks
+    // are picked up through books.updated_at and book_deletions
+    private NameDictionary getBookTitles(Connection conn) throws SQLException {
+        NameDictionary titles = bookTitles;
+        if (titles != null) {
+            titles.refresh(conn);
+            return titles;
+        }
+        synchronized (this) {
+            if (bookTitles == null) {
+                titles = new NameDictionary("books", "title",
+                    "SELECT book_id FROM book_deletions WHERE deleted_at >= FROM_UNIXTIME(? / 1000)");
+                titles.load(conn);
+                bookTitles = titles;
+            }
+        }
+        return bookTitles;
+    }
+    
+    // Patrons are never deleted, so users.updated_at is all the refresh needs
+    private NameDictionary getUserNames(Connection conn) throws SQLException {
+        NameDictionary names = userNames;
+        if (names != null) {
+            names.refresh(conn);
+            return names;
+        }
+        synchronized (this) {
+            if (userNames == null) {
+                names = new NameDictionary("users", "name", null);
+                names.load(conn);
+                userNames = names;
+            }
+        }
+        return userNames;
+    }
+    
+    // Titles for a handful of book ids (report rows), from the dictionary where it can
+    public Map<Integer, String> lookupBookTitles(Collection<Integer> bookIds) throws SQLException {
+        return lookupNames(getBookTitles(readConnection()), bookIds);
+    }
+    
+    public Map<Integer, String> lookupUserNames(Collection<Integer> userIds) throws SQLException {
+        return lookupNames(getUserNames(readConnection()), userIds);
+    }
+    
+    private Map<Integer, String> lookupNames(NameDictionary dictionary, Collection<Integer> ids) throws SQLException {
+        Set<Integer> unknown = new HashSet<>();
+        for (Integer id : ids) {
+            if (dictionary.get(id) == null) {
+                unknown.add(id);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            dictionary.resolve(readConnection(), unknown);
+        }
+        Map<Integer, String> found = new HashMap<>();
+        for (Integer id : ids) {
+            found.put(id, dictionary.get(id));
+        }
+        return found;
+    }
+    
+    public Loan getLoanById(int id) throws SQLException {
+        String sql = "SELECT l.*, b.title, u.name FROM loans l " +
+                    "JOIN books b ON l.book_id = b.id " +
+                    "JOIN users u ON l.user_id = u.id " +
+                    "WHERE l.id = ?";
+        PreparedStatement pstmt = primary().prepareStatement(sql);
+        pstmt.setInt(1, id);
+        
+        ResultSet rs = pstmt.executeQuery();
+        Loan loan = null;
+        
+        if (rs.next()) {
+            loan = extractLoanFromResultSet(rs);
+        }
+        
+        rs.close();
+        pstmt.close();
+        
+        return loan;
+    }
+    
+    // Separate connection for long-running background jobs, so they never hold
+    // up (or get caught in) the transactions of the desk connection
+    Connection openDedicatedConnection() throws SQLException {
+        return openConnection(dbUrl + dbName);
+    }
+    
+    // Same, for read-only scans: on the replica when one is configured and usable
+    Connection openDedicatedReadConnection() throws SQLException {
+        if (readConnection() == replicaConnection) {
+            return openReplicaConnection();
+        }
+        return openDedicatedConnection();
+    }
+    
+    // For bulk loaders: Connector/J rewrites each batch of inserts into multi-row statements
+    Connection openBulkLoadConnection() throws SQLException {
+        return openConnection(dbUrl + dbName + "?rewriteBatchedStatements=true");
+    }
+    
+    public interface LoanPairVisitor {
+        void visit(int userId, int bookId);
+    }
+    
+    // Every loan as (user, book), ordered by patron then date, streamed row by row.
+    // Runs on its own connection because a streaming result blocks the one it uses.
+    public void forEachLoanPair(LoanPairVisitor visitor) throws SQLException {
+        Connection scanConn = openDedicatedReadConnection();
         try {
-            // Get book ID from loan
-            String getLoan = "SELECT book_id FROM loans WHERE id = ?";
-            PreparedStatement pstmt1 = connection.prepareStatement(getLoan);
-            pstmt1.setInt(1, loanId);
-            ResultSet rs = pstmt1.executeQuery();
+            Statement stmt = scanConn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(Integer.MIN_VALUE); // Connector/J: stream instead of buffering
+            // Borrowing history spans the archive too
+            ResultSet rs = stmt.executeQuery(
+                "SELECT user_id, book_id, issue_date, id FROM loans " +
+                "UNION ALL SELECT user_id, book_id, issue_date, id FROM loans_archive " +
+                "ORDER BY user_id, issue_date, id");
             
-            if (!rs.next()) {
-                throw new SQLException("Loan not found");
+            while (rs.next()) {
+                visitor.visit(rs.getInt(1), rs.getInt(2));
             }
             
-            int bookId = rs.getInt("book_id");
             rs.close();
-            pstmt1.close();
-            
-            // Update loan record
-            String updateLoan = "UPDATE loans SET return_date = CURDATE(), status = 'Returned' WHERE id = ?";
-            PreparedStatement pstmt2 = connection.prepareStatement(updateLoan);
-            pstmt2.setInt(1, loanId);
-            pstmt2.executeUpdate();
-            pstmt2.close();
-            
-            // Increase available copies
-            String updateBook = "UPDATE books SET available_copies = available_copies + 1 WHERE id = ?";
-            PreparedStatement pstmt3 = connection.prepareStatement(updateBook);
-            pstmt3.setInt(1, bookId);
-            pstmt3.executeUpdate();
-            pstmt3.close();
+            stmt.close();
+        } finally {
+            scanConn.close();
+        }
+    }
+    
+    public interface LoanFactVisitor {
+        // Dates as epoch days (returnDay -1 while on loan); status is the ENUM index, 1 = Active
+        void visit(int bookId, int userId, int issueDay, int dueDay, int returnDay, int status, int fineCents);
+    }
+    
+    // Every loan, current and archived, as plain numbers: the server converts dates,
+    // status and fine, so the scan allocates nothing per row
+    public void forEachLoanFact(LoanFactVisitor visitor) throws SQLException {
+        String columns = "book_id, user_id, TO_DAYS(issue_date) - 719528, TO_DAYS(due_date) - 719528, " +
+                        "COALESCE(TO_DAYS(return_date) - 719528, -1), status + 0, ROUND(fine * 100)";
+        Connection scanConn = openDedicatedReadConnection();
+        try {
+            Statement stmt = scanConn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            ResultSet rs = stmt.executeQuery(
+                "SELECT " + columns + " FROM loans UNION ALL SELECT " + columns + " FROM loans_archive");
             
-            connection.commit();
+            while (rs.next()) {
+                visitor.visit(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4),
+                              rs.getInt(5), rs.getInt(6), rs.getInt(7));
+            }
             
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
+            rs.close();
+            stmt.close();
         } finally {
-            connection.setAutoCommit(true);
+            scanConn.close();
         }
     }
     
-    public List<Loan> getAllLoans() throws SQLException {
-        List<Loan> loans = new ArrayList<>();
-        String sql = "SELECT l.*, b.title, u.name FROM loans l " +
-                    "JOIN books b ON l.book_id = b.id " +
-                    "JOIN users u ON l.user_id = u.id " +
-                    "ORDER BY l.issue_date DESC";
+    // books.category by id, for analytics snapshots
+    public Map<Integer, String> getBookCategories() throws SQLException {
+        return getColumnById("SELECT id, category FROM books");
+    }
+    
+    // users.membership_type by id
+    public Map<Integer, String> getUserMembershipTypes() throws SQLException {
+        return getColumnById("SELECT id, membership_type FROM users");
+    }
+    
+    private Map<Integer, String> getColumnById(String sql) throws SQLException {
+        Map<Integer, String> values = new HashMap<>();
+        Statement stmt = readConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(sql);
         
-        Statement stmt = connection.createStatement();
+        while (rs.next()) {
+            values.put(rs.getInt(1), rs.getString(2));
+        }
+        
+        rs.close();
+        stmt.close();
+        
+        return values;
+    }
+    
+    // Times each book has been borrowed, for popularity ranking
+    public Map<Integer, Integer> getLoanCountsByBook() throws SQLException {
+        Map<Integer, Integer> counts = new HashMap<>();
+        String sql = "SELECT book_id, COUNT(*) FROM (" +
+                    "SELECT book_id FROM loans UNION ALL SELECT book_id FROM loans_archive" +
+                    ") all_loans GROUP BY book_id";
+        
+        Statement stmt = readConnection().createStatement();
         ResultSet rs = stmt.executeQuery(sql);
         
         while (rs.next()) {
-            loans.add(extractLoanFromResultSet(rs));
+            counts.put(rs.getInt(1), rs.getInt(2));
         }
         
         rs.close();
         stmt.close();
         
-        return loans;
+        return counts;
     }
     
     private Loan extractLoanFromResultSet(ResultSet rs) throws SQLException {
@@ -466,6 +1744,149 @@ public class DatabaseManager {
         );
     }
     
+    // ==================== STREAMING CURSORS ====================
+    
+    // Thrown from a stream's terminal operation when the cursor behind it fails
+    public static class CursorException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        CursorException(SQLException cause) {
+            super(cause.getMessage(), cause);
+        }
+        
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+    
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+    
+    // Every book in id order, read lazily. Close the stream (try-with-resources) to
+    // release its connection early; it also closes itself once fully consumed.
+    public Stream<Book> streamBooks() throws SQLException {
+        return streamBooks(DEFAULT_FETCH_SIZE);
+    }
+    
+    public Stream<Book> streamBooks(int fetchSize) throws SQLException {
+        return streamQuery("SELECT * FROM books ORDER BY id", fetchSize, this::extractBookFromResultSet);
+    }
+    
+    public Stream<User> streamUsers() throws SQLException {
+        return streamUsers(DEFAULT_FETCH_SIZE);
+    }
+    
+    public Stream<User> streamUsers(int fetchSize) throws SQLException {
+        return streamQuery("SELECT * FROM users ORDER BY id", fetchSize, this::extractUserFromResultSet);
+    }
+    
+    // Just the email column, for building duplicate filters. Always from the primary: an
+    // email missing from a lagging replica would be a false negative in the filter.
+    public Stream<String> streamUserEmails() throws SQLException {
+        return streamQuery("SELECT email FROM users", DEFAULT_FETCH_SIZE, rs -> rs.getString(1), true);
+    }
+    
+    public Stream<Loan> streamLoans(boolean includeArchive) throws SQLException {
+        return streamLoans(includeArchive, DEFAULT_FETCH_SIZE);
+    }
+    
+    // Current loans in id order. With the archive, the current and archived loans come
+    // in no particular order: MySQL ignores an ORDER BY inside a UNION branch that has no
+    // LIMIT, and sorting the whole union would have the server materialize it before the
+    // first row arrives.
+    public Stream<Loan> streamLoans(boolean includeArchive, int fetchSize) throws SQLException {
+        String sql = "SELECT l.id, l.book_id, l.user_id, l.issue_date, l.due_date, l.return_date, " +
+                    "l.status, l.fine, b.title, u.name FROM loans l " +
+                    "JOIN books b ON l.book_id = b.id " +
+                    "JOIN users u ON l.user_id = u.id ";
+        if (includeArchive) {
+            sql = "(" + sql + ") UNION ALL " +
+                  "(SELECT a.id, a.book_id, a.user_id, a.issue_date, a.due_date, a.return_date, " +
+                  "a.status, a.fine, COALESCE(b.title, '(deleted)'), COALESCE(u.name, '(deleted)') " +
+                  "FROM loans_archive a " +
+                  "LEFT JOIN books b ON a.book_id = b.id " +
+                  "LEFT JOIN users u ON a.user_id = u.id)";
+        } else {
+            sql += "ORDER BY l.id";
+        }
+        return streamQuery(sql, fetchSize, this::extractLoanFromResultSet);
+    }
+    
+    // A forward-only, read-only cursor on its own connection. With a positive fetch size
+    // the server hands rows over in chunks of that many (useCursorFetch); otherwise
+    // Connector/J streams row by row. Either way only the current chunk is in memory.
+    private <T> Stream<T> streamQuery(String sql, int fetchSize, RowMapper<T> mapper) throws SQLException {
+        return streamQuery(sql, fetchSize, mapper, false);
+    }
+    
+    private <T> Stream<T> streamQuery(String sql, int fetchSize, RowMapper<T> mapper,
+                                      boolean primaryOnly) throws SQLException {
+        String options = fetchSize > 0 ? "?useCursorFetch=true" : "";
+        Connection conn;
+        if (!primaryOnly && readConnection() == replicaConnection) {
+            conn = openConnection(replicaUrl + dbName + options, REPLICA_USER, REPLICA_PASSWORD);
+        } else {
+            conn = openConnection(dbUrl + dbName + options);
+        }
+        
+        Statement stmt = null;
+        ResultSet rs;
+        try {
+            conn.setReadOnly(true);
+            stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+            rs = stmt.executeQuery(sql);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        
+        Statement cursorStmt = stmt;
+        Runnable release = () -> {
+            try {
+                rs.close();
+                cursorStmt.close();
+            } catch (SQLException e) {
+                // Closing the connection below frees whatever is left
+            }
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing cursor connection: " + e.getMessage());
+            }
+        };
+        
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean done;
+            
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (done) {
+                    return false;
+                }
+                try {
+                    if (!rs.next()) {
+                        done = true;
+                        release.run();
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    done = true;
+                    release.run();
+                    throw new CursorException(e);
+                }
+            }
+        };
+        
+        // close() may run after the cursor already released itself; closing twice is harmless
+        return StreamSupport.stream(rows, false).onClose(release);
+    }
+    
     // ==================== STATISTICS ====================
     
     public int getTotalBooks() throws SQLException {
@@ -481,11 +1902,28 @@ public class DatabaseManager {
     }
     
     public int getActiveLoans() throws SQLException {
-        return getCount("SELECT COUNT(*) FROM loans WHERE status = 'Active'");
+        return getCount("SELECT COUNT(*) FROM loans WHERE status IN ('Active', 'Overdue')");
+    }
+    
+    // All four dashboard counters in a single round trip
+    public DashboardStats getDashboardStats() throws SQLException {
+        String sql = "SELECT " +
+                    "(SELECT COUNT(*) FROM books), " +
+                    "(SELECT COALESCE(SUM(available_copies), 0) FROM books), " +
+                    "(SELECT COUNT(*) FROM users), " +
+                    "(SELECT COUNT(*) FROM loans WHERE status IN ('Active', 'Overdue'))";
+        
+        Statement stmt = readConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(sql);
+        rs.next();
+        DashboardStats stats = new DashboardStats(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4));
+        rs.close();
+        stmt.close();
+        return stats;
     }
     
     private int getCount(String sql) throws SQLException {
-        Statement stmt = connection.createStatement();
+        Statement stmt = readConnection().createStatement();
         ResultSet rs = stmt.executeQuery(sql);
         rs.next();
         int count = rs.getInt(1);
@@ -494,12 +1932,33 @@ public class DatabaseManager {
         return count;
     }
     
+    private int readGeneratedId(Statement stmt) throws SQLException {
+        ResultSet keys = stmt.getGeneratedKeys();
+        int id = keys.next() ? keys.getInt(1) : 0;
+        keys.close();
+        return id;
+    }
+    
     public void closeConnection() {
+        synchronized (this) {
+            if (groupCommitter != null) {
+                groupCommitter.shutdown();
+            }
+        }
+        if (requestPool != null) {
+            requestPool.close();
+        }
+        if (auditJournal != null) {
+            auditJournal.close();
+        }
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
                 System.out.println("✅ Database connection closed");
             }
+            if (replicaConnection != null && !replicaConnection.isClosed()) {
+                replicaConnection.close();
+            }
         } catch (SQLException e) {
             System.err.println("Error closing connection: " + e.getMessage());
         }
@@ -0,0 +1,415 @@
+// BookFlow - Dataset Generator
+// Created by Michael Semera
+// DatasetGenerator.java, ZipfSampler.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+// ==================== DatasetGenerator.java ====================
+// Synthetic library for benchmarks and UI testing at scale. The same seed, sizes and
+// as-of date always produce the same rows: a catalogue where a few titles are borrowed
+// constantly, patrons from occasional to heavy borrowers, and years of loan history
+// ending in a realistic mix of returned, active and overdue loans.
+//
+// Rows are added after whatever is already there and bulk-loaded with batched inserts
+// on their own connection, committed batch by batch; no events are published, so
+// restart the desk afterwards.
+class DatasetGenerator {
+
+    static final int BATCH_SIZE = Integer.getInteger("bookflow.dataset.batchSize", 5000);
+    static final int LOAN_DAYS = 14;
+
+    // Popularity skew: exponent of the Zipf distributions over titles and patrons
+    private static final double TITLE_SKEW = 1.0;
+    private static final double PATRON_SKEW = 0.7;
+    // Chance that a loan past its due date in the last 90 days is still out
+    private static final double OVERDUE_RATE = 0.06;
+    // Chance that an older loan was never returned (lost)
+    private static final double LOST_RATE = 0.002;
+    // Chance that a returned loan came back late
+    private static final double LATE_RETURN_RATE = 0.10;
+    private static final double FINE_PER_DAY = 0.50;
+
+    private static final String[] ADJECTIVES = {
+        "Silent", "Hidden", "Broken", "Golden", "Last", "Endless", "Distant", "Secret",
+        "Burning", "Quiet", "Lost", "Winter", "Crimson", "Forgotten", "Bright", "Wild"
+    };
+    private static final String[] NOUNS = {
+        "River", "Kingdom", "Garden", "Empire", "Voyage", "Harbor", "Letters", "Machine",
+        "Orchard", "Mountain", "Archive", "Station", "Ocean", "Library", "Theory", "Tide"
+    };
+    private static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda",
+        "David", "Elizabeth", "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica",
+        "Thomas", "Sarah", "Wei", "Priya", "Ahmed", "Sofia", "Kenji", "Amara"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis",
+        "Rodriguez", "Martinez", "Hernandez", "Lopez", "Wilson", "Anderson", "Taylor",
+        "Thomas", "Moore", "Jackson", "Martin", "Lee", "Chen", "Patel", "Okafor", "Nguyen"
+    };
+    private static final String[] CATEGORIES = {
+        "Fiction", "Science Fiction", "Mystery", "Biography", "History", "Science",
+        "Technology", "Children", "Poetry", "Travel", "Philosophy", "Art"
+    };
+    private static final String[] PUBLISHERS = {
+        "Penguin", "HarperCollins", "Scribner", "Vintage", "Bantam", "Orbit", "Tor", "Knopf"
+    };
+
+    // Stream ids: each kind of row draws from its own generator, so changing one size
+    // doesn't reshuffle the others
+    private static final long BOOK_STREAM = 1;
+    private static final long USER_STREAM = 2;
+    private static final long LOAN_STREAM = 3;
+
+    private final DatabaseManager dbManager;
+    private final long seed;
+    private final int bookCount;
+    private final int userCount;
+    private final long loanCount;
+    private final int years;
+    private final LocalDate asOf;
+
+    // Outcome of one run
+    static class Result {
+        int books;
+        int users;
+        long loans;
+        long returned;
+        long active;
+        long overdue;
+        long elapsedMs;
+
+        @Override
+        public String toString() {
+            return books + " books, " + users + " users, " + loans + " loans (" + returned + " returned, " +
+                   active + " active, " + overdue + " overdue) in " + elapsedMs + " ms";
+        }
+    }
+
+    // Receives each generated loan; returnDay is -1 while the book is still out
+    private interface LoanSink {
+        void loan(int bookIndex, int userIndex, long issueDay, long dueDay, long returnDay,
+                  String status, double fine) throws SQLException;
+    }
+
+    DatasetGenerator(DatabaseManager dbManager, long seed, int books, int users, long loans,
+                     int years, LocalDate asOf) {
+        if (books < 1 || users < 1 || loans < 0 || years < 1) {
+            throw new IllegalArgumentException("Sizes must be positive");
+        }
+        this.dbManager = dbManager;
+        this.seed = seed;
+        this.bookCount = books;
+        this.userCount = users;
+        this.loanCount = loans;
+        this.years = years;
+        this.asOf = asOf;
+    }
+
+    public Result generate() throws SQLException {
+        long start = System.nanoTime();
+        int[] copies = bookCopies();
+
+        // The loan history is generated twice from the same seed: a dry run to learn how
+        // many copies of each title end up on loan, then the real one that inserts rows.
+        // That way every book is written once with a correct available_copies.
+        Result result = new Result();
+        int[] outstanding = generateLoans(copies, (book, user, issue, due, ret, status, fine) -> { });
+
+        Connection conn = dbManager.openBulkLoadConnection();
+        try {
+            conn.setAutoCommit(false);
+            Statement session = conn.createStatement();
+            // Generated rows are consistent by construction; skip per-row checks while loading
+            session.execute("SET unique_checks = 0, foreign_key_checks = 0");
+
+            int firstBookId = nextId(conn, "books");
+            int firstUserId = nextId(conn, "users");
+            result.books = insertBooks(conn, firstBookId, copies, outstanding);
+            result.users = insertUsers(conn, firstUserId);
+            insertLoans(conn, firstBookId, firstUserId, copies, result);
+
+            session.execute("SET unique_checks = 1, foreign_key_checks = 1");
+            session.close();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.close();
+        }
+
+        result.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("✅ Generated " + result);
+        return result;
+    }
+
+    // First id the table's AUTO_INCREMENT hasn't handed out. MAX(id) + 1 would reuse the id
+    // of a deleted highest row, which a book_deletions tombstone or a cached "(deleted)"
+    // name still points at.
+    private int nextId(Connection conn, String table) throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            // MySQL 8 caches information_schema table stats; read the live counter
+            stmt.execute("SET SESSION information_schema_stats_expiry = 0");
+        } catch (SQLException e) {
+            // Older servers don't cache them
+        }
+        ResultSet rs = stmt.executeQuery(
+            "SELECT GREATEST(COALESCE(t.AUTO_INCREMENT, 1), (SELECT COALESCE(MAX(id), 0) + 1 FROM " + table + ")) " +
+            "FROM information_schema.TABLES t WHERE t.TABLE_SCHEMA = DATABASE() AND t.TABLE_NAME = '" + table + "'");
+        rs.next();
+        int id = rs.getInt(1);
+        rs.close();
+        stmt.close();
+        return id;
+    }
+
+    // Popular titles get more copies, as a library would buy them
+    private int[] bookCopies() {
+        SplittableRandom random = random(BOOK_STREAM);
+        int[] rankOf = rankOf(bookCount, random);
+        int[] copies = new int[bookCount];
+        for (int i = 0; i < bookCount; i++) {
+            int rank = rankOf[i];
+            copies[i] = 1 + random.nextInt(2) + (rank < bookCount / 100 ? 4 : rank < bookCount / 10 ? 2 : 0);
+        }
+        return copies;
+    }
+
+    private int insertBooks(Connection conn, int firstId, int[] copies, int[] outstanding) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(
+            "INSERT INTO books (id, title, author, isbn, isbn13, publisher, publication_year, category, " +
+            "total_copies, available_copies) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        SplittableRandom random = random(BOOK_STREAM ^ 0x5bd1e995L);
+        int thisYear = asOf.getYear();
+        for (int i = 0; i < bookCount; i++) {
+            // Unique, valid ISBN-13s: 979 prefix (no clash with real 978 samples) + index
+            String isbn = isbn13("979" + String.format("%09d", (firstId + i) % 1_000_000_000));
+            pstmt.setInt(1, firstId + i);
+            pstmt.setString(2, "The " + pick(ADJECTIVES, random) + " " + pick(NOUNS, random) +
+                               " of " + pick(LAST_NAMES, random));
+            pstmt.setString(3, pick(FIRST_NAMES, random) + " " + pick(LAST_NAMES, random));
+            pstmt.setString(4, isbn);
+            pstmt.setLong(5, Isbn.toIsbn13(isbn));
+            pstmt.setString(6, pick(PUBLISHERS, random));
+            // Skewed towards recent publications
+            pstmt.setInt(7, thisYear - (int) (Math.pow(random.nextDouble(), 3) * 120));
+            pstmt.setString(8, pick(CATEGORIES, random));
+            pstmt.setInt(9, copies[i]);
+            pstmt.setInt(10, copies[i] - outstanding[i]);
+            pstmt.addBatch();
+            if ((i + 1) % BATCH_SIZE == 0) {
+                pstmt.executeBatch();
+                conn.commit();
+            }
+        }
+        pstmt.executeBatch();
+        conn.commit();
+        pstmt.close();
+        return bookCount;
+    }
+
+    private int insertUsers(Connection conn, int firstId) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(
+            "INSERT INTO users (id, name, email, phone, membership_type, registration_date, status) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)");
+        SplittableRandom random = random(USER_STREAM);
+        // Everyone registered before the loan history starts
+        long historyStart = historyStartDay();
+        for (int i = 0; i < userCount; i++) {
+            int id = firstId + i;
+            String first = pick(FIRST_NAMES, random);
+            String last = pick(LAST_NAMES, random);
+            double membership = random.nextDouble();
+            pstmt.setInt(1, id);
+            pstmt.setString(2, first + " " + last);
+            pstmt.setString(3, first.toLowerCase() + "." + last.toLowerCase() + "." + id + "@example.org");
+            pstmt.setString(4, String.format("555-%04d", random.nextInt(10000)));
+            pstmt.setString(5, membership < 0.7 ? "Basic" : membership < 0.9 ? "Student" : "Premium");
+            pstmt.setDate(6, Date.valueOf(LocalDate.ofEpochDay(historyStart - 1 - random.nextInt(730))));
+            pstmt.setString(7, random.nextDouble() < 0.97 ? "Active" : "Inactive");
+            pstmt.addBatch();
+            if ((i + 1) % BATCH_SIZE == 0) {
+                pstmt.executeBatch();
+                conn.commit();
+            }
+        }
+        pstmt.executeBatch();
+        conn.commit();
+        pstmt.close();
+        return userCount;
+    }
+
+    private void insertLoans(Connection conn, int firstBookId, int firstUserId, int[] copies,
+                             Result result) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(
+            "INSERT INTO loans (book_id, user_id, issue_date, due_date, return_date, status, fine) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)");
+        long[] pending = new long[1];
+        generateLoans(copies, (book, user, issue, due, ret, status, fine) -> {
+            pstmt.setInt(1, firstBookId + book);
+            pstmt.setInt(2, firstUserId + user);
+            pstmt.setDate(3, Date.valueOf(LocalDate.ofEpochDay(issue)));
+            pstmt.setDate(4, Date.valueOf(LocalDate.ofEpochDay(due)));
+            if (ret < 0) {
+                pstmt.setNull(5, Types.DATE);
+            } else {
+                pstmt.setDate(5, Date.valueOf(LocalDate.ofEpochDay(ret)));
+            }
+            pstmt.setString(6, status);
+            pstmt.setDouble(7, fine);
+            pstmt.addBatch();
+            if (++pending[0] % BATCH_SIZE == 0) {
+                pstmt.executeBatch();
+                conn.commit();
+            }
+            if (pending[0] % 1_000_000 == 0) {
+                System.out.println("✅ " + pending[0] + " loans loaded");
+            }
+
+            result.loans++;
+            if (ret >= 0) {
+                result.returned++;
+            } else if ("Overdue".equals(status)) {
+                result.overdue++;
+            } else {
+                result.active++;
+            }
+        });
+        pstmt.executeBatch();
+        conn.commit();
+        pstmt.close();
+    }
+
+    // Loans in issue order, so ids run forward in time as they would in a real system.
+    // Returns how many copies of each title are still out at the end.
+    private int[] generateLoans(int[] copies, LoanSink sink) throws SQLException {
+        SplittableRandom random = random(LOAN_STREAM);
+        ZipfSampler titles = new ZipfSampler(bookCount, TITLE_SKEW, rankOf(bookCount, random(BOOK_STREAM)));
+        ZipfSampler patrons = new ZipfSampler(userCount, PATRON_SKEW, rankOf(userCount, random(USER_STREAM)));
+        int[] outstanding = new int[bookCount];
+
+        long asOfDay = asOf.toEpochDay();
+        long firstDay = historyStartDay();
+        long span = asOfDay - firstDay;
+        for (long i = 0; i < loanCount; i++) {
+            int book = titles.sample(random);
+            int user = patrons.sample(random);
+            long issue = firstDay + (long) ((double) i * span / Math.max(1, loanCount));
+            long due = issue + LOAN_DAYS;
+
+            // Is it still out? Recent loans mostly are; old ones almost never
+            boolean out;
+            if (due >= asOfDay) {
+                out = random.nextDouble() < 0.85;
+            } else if (asOfDay - due <= 90) {
+                out = random.nextDouble() < OVERDUE_RATE;
+            } else {
+                out = random.nextDouble() < LOST_RATE;
+            }
+            if (out && outstanding[book] >= copies[book]) {
+                out = false; // every copy is already lent out, so this one must have come back
+            }
+
+            if (out) {
+                outstanding[book]++;
+                boolean overdue = due < asOfDay;
+                sink.loan(book, user, issue, due, -1, overdue ? "Overdue" : "Active",
+                          overdue ? (asOfDay - due) * FINE_PER_DAY : 0);
+            } else {
+                long returned = random.nextDouble() < LATE_RETURN_RATE
+                    ? due + 1 + random.nextInt(30)
+                    : issue + 1 + random.nextInt(LOAN_DAYS);
+                returned = Math.min(returned, asOfDay);
+                sink.loan(book, user, issue, due, returned, "Returned",
+                          Math.max(0, returned - due) * FINE_PER_DAY);
+            }
+        }
+        return outstanding;
+    }
+
+    private long historyStartDay() {
+        return asOf.minusYears(years).toEpochDay();
+    }
+
+    private SplittableRandom random(long stream) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + stream);
+    }
+
+    // A seeded shuffle of popularity ranks, so the bestsellers aren't simply the lowest ids
+    private static int[] rankOf(int size, SplittableRandom random) {
+        int[] rank = new int[size];
+        for (int i = 0; i < size; i++) {
+            rank[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = rank[i];
+            rank[i] = rank[j];
+            rank[j] = swap;
+        }
+        return rank;
+    }
+
+    private static String pick(String[] values, SplittableRandom random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String isbn13(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (first12.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return first12 + (10 - sum % 10) % 10;
+    }
+}
+
+// ==================== ZipfSampler.java ====================
+// Draws indexes so that the item of popularity rank r is picked with weight 1/(r+1)^s
+class ZipfSampler {
+
+    private final double[] cumulative;
+    private final int[] indexOfRank;
+
+    // rankOf[i] is the popularity rank of index i
+    ZipfSampler(int size, double exponent, int[] rankOf) {
+        cumulative = new double[size];
+        double total = 0;
+        for (int r = 0; r < size; r++) {
+            total += 1.0 / Math.pow(r + 1, exponent);
+            cumulative[r] = total;
+        }
+        for (int r = 0; r < size; r++) {
+            cumulative[r] /= total;
+        }
+        indexOfRank = new int[size];
+        for (int i = 0; i < size; i++) {
+            indexOfRank[rankOf[i]] = i;
+        }
+    }
+
+    int sample(SplittableRandom random) {
+        double u = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return indexOfRank[low];
+    }
+}
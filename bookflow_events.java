@@ -0,0 +1,136 @@
+// BookFlow - Domain Events
+// Created by Michael Semera
+// DomainEventBus.java, DomainEvent.java and the typed events published by DatabaseManager
+
+package com.michaelsemera.bookflow;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// ==================== DomainEventBus.java ====================
+// In-process publish/subscribe for committed changes. Listeners run synchronously
+// on the publishing thread, so UI subscribers must hop to the FX thread themselves.
+class DomainEventBus {
+    private final Map<Class<?>, List<Consumer<Object>>> listeners = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <E extends DomainEvent> void subscribe(Class<E> type, Consumer<? super E> listener) {
+        listeners.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>())
+                 .add(event -> listener.accept((E) event));
+    }
+
+    // Subscribing to DomainEvent.class receives every event
+    public void publish(DomainEvent event) {
+        dispatch(event.getClass(), event);
+        dispatch(DomainEvent.class, event);
+    }
+
+    private void dispatch(Class<?> type, DomainEvent event) {
+        List<Consumer<Object>> subscribers = listeners.get(type);
+        if (subscribers == null) {
+            return;
+        }
+        for (Consumer<Object> listener : subscribers) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                // The change is already committed; a broken subscriber must not fail the caller
+                System.err.println("Event listener failed for " + event + ": " + e.getMessage());
+            }
+        }
+    }
+}
+
+// ==================== DomainEvent.java ====================
+abstract class DomainEvent {
+    private final long timestamp = System.currentTimeMillis();
+
+    public long getTimestamp() { return timestamp; }
+}
+
+// ==================== BookAdded.java ====================
+class BookAdded extends DomainEvent {
+    private final Book book;
+
+    public BookAdded(Book book) { this.book = book; }
+
+    public Book getBook() { return book; }
+
+    @Override
+    public String toString() { return "BookAdded #" + book.getId(); }
+}
+
+// ==================== BookUpdated.java ====================
+class BookUpdated extends DomainEvent {
+    private final Book book;
+
+    public BookUpdated(Book book) { this.book = book; }
+
+    public Book getBook() { return book; }
+
+    @Override
+    public String toString() { return "BookUpdated #" + book.getId(); }
+}
+
+// ==================== BookDeleted.java ====================
+class BookDeleted extends DomainEvent {
+    private final int bookId;
+
+    public BookDeleted(int bookId) { this.bookId = bookId; }
+
+    public int getBookId() { return bookId; }
+
+    @Override
+    public String toString() { return "BookDeleted #" + bookId; }
+}
+
+// ==================== UserAdded.java ====================
+class UserAdded extends DomainEvent {
+    private final User user;
+
+    public UserAdded(User user) { this.user = user; }
+
+    public User getUser() { return user; }
+
+    @Override
+    public String toString() { return "UserAdded #" + user.getId(); }
+}
+
+// ==================== LoanIssued.java ====================
+class LoanIssued extends DomainEvent {
+    private final Loan loan;
+
+    public LoanIssued(Loan loan) { this.loan = loan; }
+
+    public Loan getLoan() { return loan; }
+
+    @Override
+    public String toString() { return "LoanIssued #" + loan.getId(); }
+}
+
+// ==================== LoanReturned.java ====================
+class LoanReturned extends DomainEvent {
+    private final int loanId;
+    private final int bookId;
+    private final int userId;
+    private final LocalDate returnDate;
+
+    public LoanReturned(int loanId, int bookId, int userId, LocalDate returnDate) {
+        this.loanId = loanId;
+        this.bookId = bookId;
+        this.userId = userId;
+        this.returnDate = returnDate;
+    }
+
+    public int getLoanId() { return loanId; }
+    public int getBookId() { return bookId; }
+    public int getUserId() { return userId; }
+    public LocalDate getReturnDate() { return returnDate; }
+
+    @Override
+    public String toString() { return "LoanReturned #" + loanId; }
+}
\ No newline at end of file
@@ -0,0 +1,621 @@
+// BookFlow - Faceted Browsing
+// Created by Michael Semera
+// FacetIndex.java, CompressedBitmap.java
+
+package com.michaelsemera.bookflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+// ==================== FacetIndex.java ====================
+// One bitmap of book ids per facet value. A filter is the AND across facets of
+// the OR of the selected values within each facet; counts are intersections.
+class FacetIndex {
+
+    enum Facet {
+        CATEGORY("Category"),
+        DECADE("Decade"),
+        PUBLISHER("Publisher"),
+        AVAILABILITY("Availability");
+
+        private final String label;
+
+        Facet(String label) { this.label = label; }
+
+        public String getLabel() { return label; }
+    }
+
+    static final String AVAILABLE = "Available";
+    static final String CHECKED_OUT = "Checked out";
+    private static final String UNKNOWN = "Unknown";
+
+    private final Map<Facet, Map<String, CompressedBitmap>> bitmaps = new EnumMap<>(Facet.class);
+    private final CompressedBitmap allBooks = new CompressedBitmap();
+    private final Map<Integer, String[]> valuesByBook = new HashMap<>();
+    private final Map<Integer, Integer> availableByBook = new HashMap<>();
+
+    public FacetIndex() {
+        for (Facet facet : Facet.values()) {
+            bitmaps.put(facet, new TreeMap<>());
+        }
+    }
+
+    public synchronized void rebuild(List<Book> books) {
+        for (Map<String, CompressedBitmap> values : bitmaps.values()) {
+            values.clear();
+        }
+        allBooks.clear();
+        valuesByBook.clear();
+        availableByBook.clear();
+        for (Book book : books) {
+            addBook(book);
+        }
+    }
+
+    public synchronized void addBook(Book book) {
+        String[] values = new String[Facet.values().length];
+        values[Facet.CATEGORY.ordinal()] = orUnknown(book.getCategory(), "Uncategorized");
+        values[Facet.DECADE.ordinal()] = decadeOf(book.getPublicationYear());
+        values[Facet.PUBLISHER.ordinal()] = orUnknown(book.getPublisher(), UNKNOWN);
+        values[Facet.AVAILABILITY.ordinal()] = book.getAvailableCopies() > 0 ? AVAILABLE : CHECKED_OUT;
+
+        for (Facet facet : Facet.values()) {
+            bitmaps.get(facet).computeIfAbsent(values[facet.ordinal()], v -> new CompressedBitmap())
+                              .add(book.getId());
+        }
+        allBooks.add(book.getId());
+        valuesByBook.put(book.getId(), values);
+        availableByBook.put(book.getId(), book.getAvailableCopies());
+    }
+
+    public synchronized void updateBook(Book book) {
+        removeBook(book.getId());
+        addBook(book);
+    }
+
+    public synchronized void removeBook(int bookId) {
+        String[] values = valuesByBook.remove(bookId);
+        if (values == null) {
+            return;
+        }
+        for (Facet facet : Facet.values()) {
+            removeFromValue(facet, values[facet.ordinal()], bookId);
+        }
+        allBooks.remove(bookId);
+        availableByBook.remove(bookId);
+    }
+
+    // Loans move a book between Available and Checked out when its last copy goes or comes back
+    public synchronized void adjustAvailable(int bookId, int delta) {
+        String[] values = valuesByBook.get(bookId);
+        if (values == null) {
+            return;
+        }
+        int available = availableByBook.merge(bookId, delta, Integer::sum);
+        String availability = available > 0 ? AVAILABLE : CHECKED_OUT;
+        int slot = Facet.AVAILABILITY.ordinal();
+        if (!availability.equals(values[slot])) {
+            removeFromValue(Facet.AVAILABILITY, values[slot], bookId);
+            bitmaps.get(Facet.AVAILABILITY).computeIfAbsent(availability, v -> new CompressedBitmap())
+                                           .add(bookId);
+            values[slot] = availability;
+        }
+    }
+
+    // Books matching every facet that has a selection; an empty selection matches all
+    public synchronized CompressedBitmap filter(Map<Facet, Set<String>> selection) {
+        CompressedBitmap result = filterExcluding(selection, null);
+        // Callers read the result outside the lock, so never hand out a live bitmap
+        return result == allBooks ? allBooks.copy() : result;
+    }
+
+    // For each facet, the count every value would have if it were (also) selected
+    public synchronized Map<Facet, Map<String, Integer>> counts(Map<Facet, Set<String>> selection) {
+        Map<Facet, Map<String, Integer>> counts = new EnumMap<>(Facet.class);
+        for (Facet facet : Facet.values()) {
+            // Values within one facet are ORed, so a facet never narrows its own counts
+            CompressedBitmap base = filterExcluding(selection, facet);
+            Map<String, Integer> facetCounts = new LinkedHashMap<>();
+            for (Map.Entry<String, CompressedBitmap> entry : bitmaps.get(facet).entrySet()) {
+                facetCounts.put(entry.getKey(), entry.getValue().andCardinality(base));
+            }
+            counts.put(facet, facetCounts);
+        }
+        return counts;
+    }
+
+    public synchronized int size() {
+        return allBooks.cardinality();
+    }
+
+    private CompressedBitmap filterExcluding(Map<Facet, Set<String>> selection, Facet excluded) {
+        CompressedBitmap result = allBooks;
+        for (Facet facet : Facet.values()) {
+            Set<String> selected = selection.getOrDefault(facet, Collections.emptySet());
+            if (facet == excluded || selected.isEmpty()) {
+                continue;
+            }
+            CompressedBitmap union = new CompressedBitmap();
+            for (String value : selected) {
+                CompressedBitmap bitmap = bitmaps.get(facet).get(value);
+                if (bitmap != null) {
+                    union = union.or(bitmap);
+                }
+            }
+            result = result.and(union);
+        }
+        return result;
+    }
+
+    private void removeFromValue(Facet facet, String value, int bookId) {
+        CompressedBitmap bitmap = bitmaps.get(facet).get(value);
+        if (bitmap != null) {
+            bitmap.remove(bookId);
+            if (bitmap.isEmpty()) {
+                bitmaps.get(facet).remove(value);
+            }
+        }
+    }
+
+    private static String orUnknown(String value, String fallback) {
+        return value == null || value.trim().isEmpty() ? fallback : value.trim();
+    }
+
+    static String decadeOf(int year) {
+        return year <= 0 ? UNKNOWN : (year / 10 * 10) + "s";
+    }
+}
+
+// ==================== CompressedBitmap.java ====================
+// Roaring-style bitmap of non-negative ints: values are split by their high 16 bits
+// into chunks stored as a sorted char array (sparse) or a 64Kbit bitmap (dense).
+class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096; // above this a bitmap chunk is smaller
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+
+    public void add(int value) {
+        char key = (char) (value >>> 16);
+        int index = Arrays.binarySearch(keys, key);
+        if (index >= 0) {
+            containers[index] = containers[index].add((char) value);
+        } else {
+            insertContainer(-(index + 1), key, new ArrayContainer().add((char) value));
+        }
+    }
+
+    public void remove(int value) {
+        int index = Arrays.binarySearch(keys, (char) (value >>> 16));
+        if (index < 0) {
+            return;
+        }
+        Container container = containers[index].remove((char) value);
+        if (container.cardinality() == 0) {
+            removeContainer(index);
+        } else {
+            containers[index] = container;
+        }
+    }
+
+    public boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (Container container : containers) {
+            total += container.cardinality();
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    public void clear() {
+        keys = new char[0];
+        containers = new Container[0];
+    }
+
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        List<Character> resultKeys = new ArrayList<>();
+        List<Container> resultContainers = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    resultKeys.add(keys[i]);
+                    resultContainers.add(container);
+                }
+                i++;
+                j++;
+            }
+        }
+        result.setContainers(resultKeys, resultContainers);
+        return result;
+    }
+
+    public int andCardinality(CompressedBitmap other) {
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                total += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        List<Character> resultKeys = new ArrayList<>();
+        List<Container> resultContainers = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                resultKeys.add(keys[i]);
+                resultContainers.add(containers[i].copy());
+                i++;
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                resultKeys.add(other.keys[j]);
+                resultContainers.add(other.containers[j].copy());
+                j++;
+            } else {
+                resultKeys.add(keys[i]);
+                resultContainers.add(containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        result.setContainers(resultKeys, resultContainers);
+        return result;
+    }
+
+    public CompressedBitmap copy() {
+        return or(new CompressedBitmap());
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] position = new int[1];
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    private void setContainers(List<Character> newKeys, List<Container> newContainers) {
+        keys = new char[newKeys.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = newKeys.get(i);
+        }
+        containers = newContainers.toArray(new Container[0]);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        char[] newKeys = new char[keys.length + 1];
+        Container[] newContainers = new Container[containers.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, index);
+        System.arraycopy(containers, 0, newContainers, 0, index);
+        newKeys[index] = key;
+        newContainers[index] = container;
+        System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+        System.arraycopy(containers, index, newContainers, index + 1, containers.length - index);
+        keys = newKeys;
+        containers = newContainers;
+    }
+
+    private void removeContainer(int index) {
+        char[] newKeys = new char[keys.length - 1];
+        Container[] newContainers = new Container[containers.length - 1];
+        System.arraycopy(keys, 0, newKeys, 0, index);
+        System.arraycopy(containers, 0, newContainers, 0, index);
+        System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+        System.arraycopy(containers, index + 1, newContainers, index, containers.length - index - 1);
+        keys = newKeys;
+        containers = newContainers;
+    }
+
+    // Mutating operations return the container to keep, which may have changed representation
+    private abstract static class Container {
+        abstract Container add(char value);
+        abstract Container remove(char value);
+        abstract boolean contains(char value);
+        abstract int cardinality();
+        abstract Container and(Container other);
+        abstract int andCardinality(Container other);
+        abstract Container or(Container other);
+        abstract Container copy();
+        abstract void forEach(int high, IntConsumer action);
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] values = new char[4];
+        int size;
+
+        ArrayContainer() { }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (size == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            index = -(index + 1);
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, values.length * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                size--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[size];
+            int count = 0;
+            if (other instanceof BitmapContainer) {
+                for (int i = 0; i < size; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            } else {
+                ArrayContainer o = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < size && j < o.size) {
+                    if (values[i] < o.values[j]) {
+                        i++;
+                    } else if (values[i] > o.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int count = 0;
+            if (other instanceof BitmapContainer) {
+                for (int i = 0; i < size; i++) {
+                    if (other.contains(values[i])) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            ArrayContainer o = (ArrayContainer) other;
+            int i = 0;
+            int j = 0;
+            while (i < size && j < o.size) {
+                if (values[i] < o.values[j]) {
+                    i++;
+                } else if (values[i] > o.values[j]) {
+                    j++;
+                } else {
+                    count++;
+                    i++;
+                    j++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer o = (ArrayContainer) other;
+            char[] merged = new char[size + o.size];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < size || j < o.size) {
+                if (j == o.size || (i < size && values[i] < o.values[j])) {
+                    merged[count++] = values[i++];
+                } else if (i == size || values[i] > o.values[j]) {
+                    merged[count++] = o.values[j++];
+                } else {
+                    merged[count++] = values[i++];
+                    j++;
+                }
+            }
+            ArrayContainer result = new ArrayContainer(merged, count);
+            return count > ARRAY_LIMIT ? result.toBitmap() : result;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(size, 1)), size);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < size; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words = new long[1024];
+        int cardinality;
+
+        @Override
+        Container add(char value) {
+            long mask = 1L << value;
+            if ((words[value >>> 6] & mask) == 0) {
+                words[value >>> 6] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long mask = 1L << value;
+            if ((words[value >>> 6] & mask) != 0) {
+                words[value >>> 6] &= ~mask;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_LIMIT / 2 ? toArrayContainer() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer o = (BitmapContainer) other;
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < words.length; i++) {
+                result.words[i] = words[i] & o.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result.cardinality <= ARRAY_LIMIT ? result.toArrayContainer() : result;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            BitmapContainer o = (BitmapContainer) other;
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                count += Long.bitCount(words[i] & o.words[i]);
+            }
+            return count;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer o = (ArrayContainer) other;
+                for (int i = 0; i < o.size; i++) {
+                    result.add(o.values[i]);
+                }
+                return result;
+            }
+            BitmapContainer o = (BitmapContainer) other;
+            result.cardinality = 0;
+            for (int i = 0; i < words.length; i++) {
+                result.words[i] |= o.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result;
+        }
+
+        @Override
+        Container copy() {
+            BitmapContainer copy = new BitmapContainer();
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(high | (i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        ArrayContainer toArrayContainer() {
+            char[] values = new char[Math.max(cardinality, 1)];
+            int[] count = new int[1];
+            forEach(0, value -> values[count[0]++] = (char) value);
+            return new ArrayContainer(values, count[0]);
+        }
+    }
+}
\ No newline at end of file
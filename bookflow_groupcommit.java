@@ -0,0 +1,201 @@
+// BookFlow - Group Commit
+// Created by Michael Semera
+// GroupCommitter.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// ==================== GroupCommitter.java ====================
+// Queues circulation writes from many callers and applies them together in one
+// transaction, so a burst of checkouts shares a single commit (and fsync) instead
+// of paying one each. Every caller still gets its own result or exception.
+class GroupCommitter {
+
+    static final boolean ENABLED = Boolean.getBoolean("bookflow.groupCommit.enabled");
+    // A group is flushed once it holds this many operations...
+    static final int MAX_BATCH = Integer.getInteger("bookflow.groupCommit.maxBatch", 32);
+    // ...or once its oldest operation has waited this long
+    static final long MAX_DELAY_MS = Long.getLong("bookflow.groupCommit.maxDelayMs", 5L);
+    // Attempts per transaction when MySQL picks it as a deadlock victim
+    static final int MAX_ATTEMPTS = Integer.getInteger("bookflow.groupCommit.maxAttempts", 4);
+
+    // MySQL error code / SQLSTATE for a transaction rolled back as a deadlock victim
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final String SQLSTATE_SERIALIZATION_FAILURE = "40001";
+
+    // A unit of work applied inside someone else's transaction: no commit, no rollback
+    interface Operation<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Pending<T> {
+        final Operation<T> operation;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+
+        Pending(Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        void apply(Connection conn) throws SQLException {
+            result = operation.apply(conn);
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+
+    private final Connection connection;
+    private final BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    GroupCommitter(Connection connection) {
+        this.connection = connection;
+        this.flusher = new Thread(this::flushLoop, "bookflow-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Blocks until the operation's group has committed; rethrows its own failure
+    <T> T execute(Operation<T> operation) throws SQLException {
+        Pending<T> pending = new Pending<>(operation);
+        queue.add(pending);
+        if (!running) {
+            failAll(new SQLException("Group commit is shut down"));
+        }
+
+        try {
+            return pending.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for commit", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException(cause.getMessage(), cause);
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        flusher.interrupt();
+        failAll(new SQLException("Group commit is shut down"));
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing group commit connection: " + e.getMessage());
+        }
+    }
+
+    private void flushLoop() {
+        List<Pending<?>> group = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MS);
+                while (group.size() < MAX_BATCH) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            flush(group);
+            group.clear();
+        }
+        failAll(new SQLException("Group commit is shut down"));
+    }
+
+    private void flush(List<Pending<?>> group) {
+        try {
+            inTransaction(connection, conn -> {
+                for (Pending<?> pending : group) {
+                    pending.apply(conn);
+                }
+                return null;
+            });
+            for (Pending<?> pending : group) {
+                pending.complete();
+            }
+        } catch (SQLException e) {
+            if (group.size() == 1) {
+                group.get(0).future.completeExceptionally(e);
+                return;
+            }
+            // One bad operation (e.g. an unknown loan) must not fail its neighbours:
+            // replay each on its own so only the real culprit sees an error
+            for (Pending<?> pending : group) {
+                retryAlone(pending);
+            }
+        }
+    }
+
+    private <T> void retryAlone(Pending<T> pending) {
+        try {
+            pending.future.complete(inTransaction(connection, pending.operation));
+        } catch (SQLException e) {
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private void failAll(SQLException reason) {
+        Pending<?> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(reason);
+        }
+    }
+
+    // Runs the operation in its own transaction on conn, retrying with jittered
+    // exponential backoff when it is rolled back as a deadlock victim
+    static <T> T inTransaction(Connection conn, Operation<T> operation) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            conn.setAutoCommit(false);
+            try {
+                T result = operation.apply(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException e) {
+                conn.rollback();
+                if (!isDeadlock(e) || attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                backoff(attempt);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    static boolean isDeadlock(SQLException e) {
+        return e.getErrorCode() == ER_LOCK_DEADLOCK || SQLSTATE_SERIALIZATION_FAILURE.equals(e.getSQLState());
+    }
+
+    private static void backoff(int attempt) throws SQLException {
+        long maxMs = 10L << Math.min(attempt, 6);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxMs / 2, maxMs + 1));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted during deadlock backoff", ie);
+        }
+    }
+}
\ No newline at end of file
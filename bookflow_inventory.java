@@ -0,0 +1,319 @@
+// BookFlow - Inventory Reconciliation
+// Created by Michael Semera
+// InventoryReconciler.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// ==================== InventoryReconciler.java ====================
+// Checks books.available_copies against total_copies minus the book's active loans.
+// Books are grouped into chunks of consecutive ids. Two grouped queries (books and
+// active loans, GROUP BY id DIV chunk) give each chunk a checksum. A chunk whose
+// checksum matches the last run's and was clean then has not drifted since, so it is
+// skipped. Only changed chunks are compared book by book. An hourly run reads little
+// more than the two index scans.
+class InventoryReconciler {
+
+    // Book ids per chunk; changing it starts the saved state over
+    static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("bookflow.inventory.chunkSize", 1000);
+    // Changed chunks compared per round trip
+    private static final int CHUNKS_PER_QUERY = 50;
+
+    private static final String ACTIVE = "status IN ('Active', 'Overdue')";
+
+    // One book whose shelf count disagrees with its loans
+    static class Drift {
+        final int bookId;
+        final String title;
+        final int totalCopies;
+        final int availableCopies;
+        final int activeLoans;
+        boolean repaired;
+
+        Drift(int bookId, String title, int totalCopies, int availableCopies, int activeLoans) {
+            this.bookId = bookId;
+            this.title = title;
+            this.totalCopies = totalCopies;
+            this.availableCopies = availableCopies;
+            this.activeLoans = activeLoans;
+        }
+
+        public int getExpectedAvailable() {
+            return Math.max(0, totalCopies - activeLoans);
+        }
+
+        // More copies out than the library owns: a repair can't make this right
+        public boolean isOverLoaned() {
+            return activeLoans > totalCopies;
+        }
+    }
+
+    // Outcome of one run
+    static class Result {
+        int chunks;
+        int chunksSkipped;
+        int booksChecked;
+        int repaired;
+        int changedDuringRepair;   // moved on between audit and repair; rechecked next run
+        List<Drift> drifts = new ArrayList<>();
+        long elapsedMs;
+
+        @Override
+        public String toString() {
+            return drifts.size() + " drifted of " + booksChecked + " books checked (" + chunksSkipped + " of " +
+                   chunks + " chunks unchanged), " + repaired + " repaired" +
+                   (changedDuringRepair > 0 ? ", " + changedDuringRepair + " changed during repair" : "");
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final int chunkSize;
+
+    public InventoryReconciler(DatabaseManager dbManager) {
+        this(dbManager, DEFAULT_CHUNK_SIZE);
+    }
+
+    public InventoryReconciler(DatabaseManager dbManager, int chunkSize) {
+        this.dbManager = dbManager;
+        this.chunkSize = chunkSize;
+    }
+
+    // full: compare every chunk, ignoring the saved checksums. repair: set drifted
+    // books to total - active loans.
+    public Result run(boolean full, boolean repair) throws SQLException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        // The primary: a replica a few seconds behind would report drift that isn't there
+        Connection conn = dbManager.openDedicatedConnection();
+
+        try {
+            // One consistent snapshot for all the reads, so a checkout committing between
+            // the books and loans queries can't look like drift. Plain reads take no locks.
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            Statement begin = conn.createStatement();
+            begin.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+            begin.close();
+
+            Map<Integer, Long> checksums = readChecksums(conn);
+            Map<Integer, long[]> saved = readSavedState(conn);
+            result.chunks = checksums.size();
+
+            TreeSet<Integer> changed = new TreeSet<>();
+            for (Map.Entry<Integer, Long> entry : checksums.entrySet()) {
+                long[] previous = saved.get(entry.getKey());
+                if (!full && previous != null && previous[0] == entry.getValue() && previous[1] == 1) {
+                    result.chunksSkipped++;
+                } else {
+                    changed.add(entry.getKey());
+                }
+            }
+
+            Map<Integer, Boolean> clean = new HashMap<>();
+            for (int chunk : changed) {
+                clean.put(chunk, true);
+            }
+            List<Integer> batch = new ArrayList<>();
+            for (int chunk : changed) {
+                batch.add(chunk);
+                if (batch.size() == CHUNKS_PER_QUERY) {
+                    compareChunks(conn, batch, result, clean);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                compareChunks(conn, batch, result, clean);
+            }
+            conn.commit();
+
+            // Short autocommit statements from here on, each seeing the latest commits
+            conn.setAutoCommit(true);
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            if (repair) {
+                repairDrift(conn, result);
+            }
+            saveState(conn, checksums, clean, saved);
+        } catch (SQLException e) {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            conn.close();
+        }
+
+        result.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("✅ Inventory reconciliation: " + result + " in " + result.elapsedMs + " ms");
+        return result;
+    }
+
+    // chunk -> checksum over its books (id, total, available) and its active loan ids.
+    // BIT_XOR of CRC32 is order-independent; the counts and sums guard against two
+    // changes cancelling out in the XOR.
+    private Map<Integer, Long> readChecksums(Connection conn) throws SQLException {
+        Map<Integer, Long> checksums = new TreeMap<>();
+        PreparedStatement books = conn.prepareStatement(
+            "SELECT id DIV ?, COUNT(*), SUM(total_copies), SUM(available_copies), " +
+            "BIT_XOR(CRC32(CONCAT_WS(',', id, total_copies, available_copies))) FROM books GROUP BY 1");
+        books.setInt(1, chunkSize);
+        ResultSet rs = books.executeQuery();
+        while (rs.next()) {
+            checksums.put(rs.getInt(1), mix(mix(mix(rs.getLong(2), rs.getLong(3)), rs.getLong(4)), rs.getLong(5)));
+        }
+        rs.close();
+        books.close();
+
+        // Index-only on idx_loans_status_book (the loan id rides along in InnoDB)
+        PreparedStatement loans = conn.prepareStatement(
+            "SELECT book_id DIV ?, COUNT(*), BIT_XOR(CRC32(id)) FROM loans WHERE " + ACTIVE + " GROUP BY 1");
+        loans.setInt(1, chunkSize);
+        rs = loans.executeQuery();
+        while (rs.next()) {
+            int chunk = rs.getInt(1);
+            long loansSum = mix(rs.getLong(2), rs.getLong(3));
+            checksums.merge(chunk, loansSum, (booksSum, l) -> mix(booksSum, l));
+        }
+        rs.close();
+        loans.close();
+        return checksums;
+    }
+
+    // chunk -> { checksum, clean ? 1 : 0 } from the last run at this chunk size
+    private Map<Integer, long[]> readSavedState(Connection conn) throws SQLException {
+        Map<Integer, long[]> saved = new HashMap<>();
+        PreparedStatement pstmt = conn.prepareStatement(
+            "SELECT chunk_id, checksum, clean FROM inventory_checksums WHERE chunk_size = ?");
+        pstmt.setInt(1, chunkSize);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            saved.put(rs.getInt(1), new long[] { rs.getLong(2), rs.getBoolean(3) ? 1 : 0 });
+        }
+        rs.close();
+        pstmt.close();
+        return saved;
+    }
+
+    // Book-by-book comparison of the given chunks: their books, and one grouped count of
+    // active loans per book
+    private void compareChunks(Connection conn, List<Integer> chunks, Result result,
+                               Map<Integer, Boolean> clean) throws SQLException {
+        StringBuilder ranges = new StringBuilder();
+        StringBuilder loanRanges = new StringBuilder();
+        for (int i = 0; i < chunks.size(); i++) {
+            ranges.append(i == 0 ? "" : " OR ").append("id BETWEEN ? AND ?");
+            loanRanges.append(i == 0 ? "" : " OR ").append("book_id BETWEEN ? AND ?");
+        }
+
+        Map<Integer, Integer> active = new HashMap<>();
+        PreparedStatement loans = conn.prepareStatement(
+            "SELECT book_id, COUNT(*) FROM loans WHERE " + ACTIVE + " AND (" + loanRanges + ") GROUP BY book_id");
+        bindRanges(loans, chunks);
+        ResultSet rs = loans.executeQuery();
+        while (rs.next()) {
+            active.put(rs.getInt(1), rs.getInt(2));
+        }
+        rs.close();
+        loans.close();
+
+        PreparedStatement books = conn.prepareStatement(
+            "SELECT id, title, total_copies, available_copies FROM books WHERE " + ranges);
+        bindRanges(books, chunks);
+        rs = books.executeQuery();
+        while (rs.next()) {
+            int bookId = rs.getInt(1);
+            int total = rs.getInt(3);
+            int available = rs.getInt(4);
+            int out = active.getOrDefault(bookId, 0);
+            result.booksChecked++;
+            if (available != total - out) {
+                result.drifts.add(new Drift(bookId, rs.getString(2), total, available, out));
+                clean.put(bookId / chunkSize, false);
+            }
+        }
+        rs.close();
+        books.close();
+    }
+
+    private void bindRanges(PreparedStatement pstmt, List<Integer> chunks) throws SQLException {
+        int index = 1;
+        for (int chunk : chunks) {
+            pstmt.setLong(index++, (long) chunk * chunkSize);
+            pstmt.setLong(index++, (long) chunk * chunkSize + chunkSize - 1);
+        }
+    }
+
+    // Recomputes each drifted book from its loans at the moment of the update. The row is
+    // only touched if it still holds the values the audit saw: a desk that checked a copy
+    // out in between has already moved it on, and the next run looks again.
+    private void repairDrift(Connection conn, Result result) throws SQLException {
+        PreparedStatement update = conn.prepareStatement(
+            "UPDATE books b SET available_copies = GREATEST(0, b.total_copies - " +
+            "(SELECT COUNT(*) FROM loans l WHERE l.book_id = b.id AND l." + ACTIVE + ")) " +
+            "WHERE b.id = ? AND b.total_copies = ? AND b.available_copies = ?");
+        for (Drift drift : result.drifts) {
+            if (drift.isOverLoaned() && drift.availableCopies == 0) {
+                continue; // already as low as it goes; needs a person, not a repair
+            }
+            update.setInt(1, drift.bookId);
+            update.setInt(2, drift.totalCopies);
+            update.setInt(3, drift.availableCopies);
+            if (update.executeUpdate() == 1) {
+                drift.repaired = true;
+                result.repaired++;
+            } else {
+                result.changedDuringRepair++;
+            }
+        }
+        update.close();
+    }
+
+    // Chunks compared this run get their checksum and verdict; a chunk that drifted is
+    // saved as not clean so it is compared again even if nothing about it changes
+    private void saveState(Connection conn, Map<Integer, Long> checksums, Map<Integer, Boolean> clean,
+                           Map<Integer, long[]> saved) throws SQLException {
+        PreparedStatement upsert = conn.prepareStatement(
+            "REPLACE INTO inventory_checksums (chunk_size, chunk_id, checksum, clean) VALUES (?, ?, ?, ?)");
+        int pending = 0;
+        for (Map.Entry<Integer, Boolean> entry : clean.entrySet()) {
+            upsert.setInt(1, chunkSize);
+            upsert.setInt(2, entry.getKey());
+            upsert.setLong(3, checksums.get(entry.getKey()));
+            upsert.setBoolean(4, entry.getValue());
+            upsert.addBatch();
+            if (++pending % 500 == 0) {
+                upsert.executeBatch();
+            }
+        }
+        upsert.executeBatch();
+        upsert.close();
+
+        // Chunks whose books are all gone, and state kept for other chunk sizes
+        PreparedStatement delete = conn.prepareStatement(
+            "DELETE FROM inventory_checksums WHERE chunk_size = ? AND chunk_id = ?");
+        for (int chunk : saved.keySet()) {
+            if (!checksums.containsKey(chunk)) {
+                delete.setInt(1, chunkSize);
+                delete.setInt(2, chunk);
+                delete.addBatch();
+            }
+        }
+        delete.executeBatch();
+        delete.close();
+        PreparedStatement others = conn.prepareStatement("DELETE FROM inventory_checksums WHERE chunk_size <> ?");
+        others.setInt(1, chunkSize);
+        others.executeUpdate();
+        others.close();
+    }
+
+    private static long mix(long hash, long value) {
+        long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 31);
+    }
+}
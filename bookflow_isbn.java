@@ -0,0 +1,254 @@
+// BookFlow - ISBN Support
+// Created by Michael Semera
+// Isbn.java, IsbnIndex.java, LongLongHashMap.java
+
+package com.michaelsemera.bookflow;
+
+import java.util.Arrays;
+
+// ==================== Isbn.java ====================
+// Validates ISBN-10/ISBN-13 input and encodes it as the 13-digit number in a long,
+// so "0-306-40615-2", "ISBN 978-0-306-40615-7" and a scanned EAN all meet at one key
+final class Isbn {
+    static final long INVALID = -1L;
+
+    private Isbn() { }
+
+    // Returns the ISBN-13 as a number, or INVALID if it is not a 978/979 number with a valid checksum
+    static long toIsbn13(String raw) {
+        if (raw == null) {
+            return INVALID;
+        }
+
+        // Keep digits and a trailing X; hyphens, spaces and an "ISBN" prefix are dropped
+        char[] digits = new char[13];
+        int length = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9' || c == 'X' || c == 'x') {
+                if (length == 13) {
+                    return INVALID;
+                }
+                digits[length++] = Character.toUpperCase(c);
+            }
+        }
+
+        if (length == 10) {
+            return isValidIsbn10(digits) ? convertIsbn10(digits) : INVALID;
+        }
+        if (length == 13) {
+            return isValidIsbn13(digits) ? parse(digits, 13) : INVALID;
+        }
+        return INVALID;
+    }
+
+    static boolean isValid(String raw) {
+        return toIsbn13(raw) != INVALID;
+    }
+
+    static String format(long isbn13) {
+        return String.format("%013d", isbn13);
+    }
+
+    private static boolean isValidIsbn10(char[] digits) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            int value;
+            if (digits[i] == 'X') {
+                if (i != 9) {
+                    return false;
+                }
+                value = 10;
+            } else {
+                value = digits[i] - '0';
+            }
+            sum += (10 - i) * value;
+        }
+        return sum % 11 == 0;
+    }
+
+    // Only the Bookland prefixes: any other EAN-13 is a product barcode, not an ISBN
+    // (and "0000000000000" would encode to the index's empty-slot key)
+    private static boolean isValidIsbn13(char[] digits) {
+        if (digits[0] != '9' || digits[1] != '7' || (digits[2] != '8' && digits[2] != '9')) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 13; i++) {
+            if (digits[i] == 'X') {
+                return false;
+            }
+            sum += (i % 2 == 0 ? 1 : 3) * (digits[i] - '0');
+        }
+        return sum % 10 == 0;
+    }
+
+    // 978 prefix + first nine digits + recomputed ISBN-13 check digit
+    private static long convertIsbn10(char[] digits) {
+        long value = 978;
+        int sum = 9 + 3 * 7 + 8;
+        for (int i = 0; i < 9; i++) {
+            int d = digits[i] - '0';
+            value = value * 10 + d;
+            sum += ((i + 3) % 2 == 0 ? 1 : 3) * d;
+        }
+        return value * 10 + (10 - sum % 10) % 10;
+    }
+
+    private static long parse(char[] digits, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = value * 10 + (digits[i] - '0');
+        }
+        return value;
+    }
+}
+
+// ==================== IsbnIndex.java ====================
+// Exact ISBN-13 -> book id lookups without touching the database
+class IsbnIndex {
+    private final LongLongHashMap idByIsbn = new LongLongHashMap(1024);
+    private final LongLongHashMap isbnById = new LongLongHashMap(1024);
+
+    public synchronized int findBookId(long isbn13) {
+        return (int) idByIsbn.get(isbn13, 0L);
+    }
+
+    // Re-points the book at its (possibly changed) ISBN
+    public synchronized void put(int bookId, long isbn13) {
+        remove(bookId);
+        if (isbn13 != Isbn.INVALID) {
+            idByIsbn.put(isbn13, bookId);
+            isbnById.put(bookId, isbn13);
+        }
+    }
+
+    public synchronized void remove(int bookId) {
+        long previous = isbnById.remove(bookId, Isbn.INVALID);
+        if (previous != Isbn.INVALID && idByIsbn.get(previous, 0L) == bookId) {
+            idByIsbn.remove(previous, 0L);
+        }
+    }
+
+    public synchronized int size() {
+        return idByIsbn.size();
+    }
+}
+
+// ==================== LongLongHashMap.java ====================
+// Open-addressing map of primitive longs (no boxing, two parallel arrays).
+// Key 0 is reserved as the empty-slot marker.
+class LongLongHashMap {
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int mask;
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public long get(long key, long missingValue) {
+        int slot = slotOf(key);
+        return slot >= 0 ? values[slot] : missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    public void put(long key, long value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    public long remove(long key, long missingValue) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return missingValue;
+        }
+        long removed = values[slot];
+
+        // Backward-shift deletion keeps every probe chain unbroken without tombstones
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != 0) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        values[hole] = 0;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(values, 0L);
+        size = 0;
+    }
+
+    private int slotOf(long key) {
+        if (key == 0) {
+            return -1;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // Murmur3 finalizer: sequential ids and ISBNs otherwise cluster in one region
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
\ No newline at end of file
@@ -5,8 +5,11 @@
 package com.michaelsemera.bookflow;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
@@ -16,53 +19,204 @@ import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Main extends Application {
     
+    // Set -Dbookflow.exitAfterStartup=true for AppCDS training runs (see README)
+    private static final boolean EXIT_AFTER_STARTUP =
+        Boolean.parseBoolean(System.getProperty("bookflow.exitAfterStartup", "false"));
+    
     private DatabaseManager dbManager;
     private BorderPane mainLayout;
+    private HBox topNav;
     private TableView<Book> bookTable;
     private TableView<User> userTable;
     private TableView<Loan> loanTable;
+    private TableView<Loan> recentLoanTable;
     private Label statusLabel;
     
+    // Views are built once and kept; their data lists are refreshed in place
+    private final ObservableList<Book> bookData = FXCollections.observableArrayList();
+    private final ObservableList<User> userData = FXCollections.observableArrayList();
+    private final ObservableList<Loan> loanData = FXCollections.observableArrayList();
+    private ExecutorService backgroundExecutor;
+    private RetainedView<DashboardData> dashboardView;
+    private RetainedView<List<Book>> booksView;
+    private RetainedView<List<User>> usersView;
+    private RetainedView<List<Loan>> loansView;
+    private FilteredList<Book> filteredBooks;
+    private final AutocompleteService autocomplete = new AutocompleteService();
+    private final FacetIndex facetIndex = new FacetIndex();
+    private final RecommendationEngine recommendations = new RecommendationEngine();
+    private Label alsoBorrowedLabel;
+    private final Map<FacetIndex.Facet, Set<String>> facetSelection = new EnumMap<>(FacetIndex.Facet.class);
+    private CompressedBitmap facetMatches; // null while no facet is selected
+    private String searchQuery = "";
+    private VBox facetPanel;
+    
+    // Long facets (publishers) list only their most common values
+    private static final int MAX_FACET_VALUES = 12;
+    private VBox reportsView;
+    
+    // Columnar loan history for the Reports screen; loaded on first visit, refreshed on request
+    private volatile LoanAnalytics loanAnalytics;
+    private Label analyticsLabel;
+    private ComboBox<String> reportCategoryBox;
+    private static final String ALL = "All";
+    private static final String NO_GROUP = "(none)";
+    private Label totalBooksValue;
+    private Label availableBooksValue;
+    private Label totalUsersValue;
+    private Label activeLoansValue;
+    private DashboardStats dashboardStats;
+    
+    // Frame times, FX-thread stalls and UI-side database latencies for the status bar
+    private final PerformanceMonitor performance = new PerformanceMonitor();
+    
+    // Local copy of the catalogue; created once connected, used from the background executor
+    private CatalogSnapshot catalogSnapshot;
+    
     @Override
     public void start(Stage primaryStage) {
-        try {
-            dbManager = new DatabaseManager();
-            dbManager.initializeDatabase();
-            
-            primaryStage.setTitle("BookFlow - Library Management System");
-            
-            mainLayout = new BorderPane();
-            mainLayout.setPadding(new Insets(10));
-            
-            // Top navigation
-            HBox topNav = createTopNavigation();
-            mainLayout.setTop(topNav);
-            
-            // Bottom status bar
-            HBox statusBar = createStatusBar();
-            mainLayout.setBottom(statusBar);
-            
-            // Show dashboard by default
-            showDashboard();
-            
-            Scene scene = new Scene(mainLayout, 1200, 700);
-            primaryStage.setScene(scene);
-            primaryStage.show();
+        long startNanos = System.nanoTime();
+        
+        backgroundExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "bookflow-background");
+            t.setDaemon(true);
+            return t;
+        });
+        createRetainedViews();
+        
+        // Connect and load the dashboard data while the window is being built
+        Task<DashboardData> bootstrap = createBootstrapTask();
+        Thread bootstrapThread = new Thread(bootstrap, "bookflow-bootstrap");
+        bootstrapThread.setDaemon(true);
+        bootstrapThread.start();
+        
+        primaryStage.setTitle("BookFlow - Library Management System");
+        
+        mainLayout = new BorderPane();
+        mainLayout.setPadding(new Insets(10));
+        
+        // Top navigation stays disabled until the database is ready
+        topNav = createTopNavigation();
+        topNav.setDisable(true);
+        mainLayout.setTop(topNav);
+        
+        // Bottom status bar
+        HBox statusBar = createStatusBar();
+        mainLayout.setBottom(statusBar);
+        
+        // Show an empty dashboard by default, filled in once the data arrives
+        showDashboard();
+        
+        Scene scene = new Scene(mainLayout, 1200, 700);
+        primaryStage.setScene(scene);
+        primaryStage.show();
+        performance.start();
+        
+        updateStatus("Connecting to database...");
+        
+        bootstrap.setOnSucceeded(e -> {
+            DashboardData data = bootstrap.getValue();
+            dbManager = data.dbManager;
+            subscribeToDomainEvents();
+            dashboardView.accept(data);
+            loadSearchIndexes();
+            startLoanArchiver();
+            topNav.setDisable(false);
             
-            updateStatus("BookFlow started successfully");
+            long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+            updateStatus("BookFlow started successfully in " + elapsedMs + " ms");
             
-        } catch (SQLException e) {
-            showAlert("Database Error", "Failed to initialize database: " + e.getMessage());
+            if (EXIT_AFTER_STARTUP) {
+                Platform.exit();
+            }
+        });
+        
+        bootstrap.setOnFailed(e -> {
+            showAlert("Database Error", "Failed to initialize database: " +
+                      bootstrap.getException().getMessage());
             Platform.exit();
+        });
+    }
+    
+    private Task<DashboardData> createBootstrapTask() {
+        return new Task<DashboardData>() {
+            @Override
+            protected DashboardData call() throws SQLException {
+                DatabaseManager db = new DatabaseManager();
+                db.initializeDatabase();
+                return loadDashboardData(db);
+            }
+        };
+    }
+    
+    private DashboardData loadDashboardData(DatabaseManager db) throws SQLException {
+        return new DashboardData(db, performance.time("getDashboardStats", db::getDashboardStats),
+                                 performance.time("getAllLoans", db::getAllLoans));
+    }
+    
+    // Dashboard counters plus loans, loaded together off the FX thread
+    private static class DashboardData {
+        final DatabaseManager dbManager;
+        final DashboardStats stats;
+        final List<Loan> loans;
+        
+        DashboardData(DatabaseManager dbManager, DashboardStats stats, List<Loan> loans) {
+            this.dbManager = dbManager;
+            this.stats = stats;
+            this.loans = loans;
+        }
+    }
+    
+    private void createRetainedViews() {
+        dashboardView = new RetainedView<>(this::buildDashboardView,
+            () -> loadDashboardData(dbManager),
+            data -> {
+                applyDashboardStats(data.stats);
+                loanData.setAll(data.loans);
+            },
+            backgroundExecutor);
+        dashboardView.setOnError(e -> showAlert("Error", "Failed to load dashboard: " + e.getMessage()));
+        
+        booksView = new RetainedView<>(this::buildBooksView,
+            () -> performance.time("loadCatalog", this::loadCatalog), bookData::setAll, backgroundExecutor);
+        booksView.setOnError(e -> showAlert("Error", "Failed to load books: " + e.getMessage()));
+        
+        usersView = new RetainedView<>(this::buildUsersView,
+            () -> performance.time("getAllUsers", dbManager::getAllUsers), userData::setAll, backgroundExecutor);
+        usersView.setOnError(e -> showAlert("Error", "Failed to load users: " + e.getMessage()));
+        
+        loansView = new RetainedView<>(this::buildLoansView,
+            () -> performance.time("getAllLoans", dbManager::getAllLoans), loanData::setAll, backgroundExecutor);
+        loansView.setOnError(e -> showAlert("Error", "Failed to load loans: " + e.getMessage()));
+    }
+    
+    // Shows the last data immediately and revalidates it in the background if stale
+    private void showView(RetainedView<?> view, String status) {
+        mainLayout.setCenter(view.getNode());
+        if (dbManager != null) {
+            view.refreshIfStale();
         }
+        updateStatus(status);
     }
     
     private HBox createTopNavigation() {
@@ -110,7 +264,11 @@ public class Main extends Application {
         statusLabel.setTextFill(Color.WHITE);
         statusLabel.setFont(Font.font("Arial", 12));
         
-        statusBar.getChildren().add(statusLabel);
+        // Live frame and stall summary on the right
+        Region spacer = new Region();
+        HBox.setHgrow(spacer, Priority.ALWAYS);
+        
+        statusBar.getChildren().addAll(statusLabel, spacer, performance.createPanel());
         
         return statusBar;
     }
@@ -135,6 +293,10 @@ public class Main extends Application {
     }
     
     private void showDashboard() {
+        showView(dashboardView, "Dashboard loaded");
+    }
+    
+    private Node buildDashboardView() {
         VBox dashboard = new VBox(20);
         dashboard.setPadding(new Insets(20));
         
@@ -148,40 +310,55 @@ public class Main extends Application {
         Label recentLabel = new Label("Recent Loans");
         recentLabel.setFont(Font.font("Arial", FontWeight.BOLD, 18));
         
-        loanTable = createLoanTable();
-        updateLoanTable();
+        recentLoanTable = createLoanTable();
+        recentLoanTable.setItems(loanData);
         
-        dashboard.getChildren().addAll(title, statsCards, recentLabel, loanTable);
-        mainLayout.setCenter(dashboard);
+        dashboard.getChildren().addAll(title, statsCards, recentLabel, recentLoanTable);
         
-        updateStatus("Dashboard loaded");
+        return dashboard;
     }
     
     private HBox createStatsCards() {
         HBox cards = new HBox(20);
         cards.setAlignment(Pos.CENTER);
         
-        try {
-            int totalBooks = dbManager.getTotalBooks();
-            int availableBooks = dbManager.getAvailableBooks();
-            int totalUsers = dbManager.getTotalUsers();
-            int activeLoans = dbManager.getActiveLoans();
-            
-            VBox booksCard = createStatCard("Total Books", String.valueOf(totalBooks), "#3498db");
-            VBox availCard = createStatCard("Available", String.valueOf(availableBooks), "#27ae60");
-            VBox usersCard = createStatCard("Users", String.valueOf(totalUsers), "#9b59b6");
-            VBox loansCard = createStatCard("Active Loans", String.valueOf(activeLoans), "#e74c3c");
-            
-            cards.getChildren().addAll(booksCard, availCard, usersCard, loansCard);
-            
-        } catch (SQLException e) {
-            showAlert("Error", "Failed to load statistics: " + e.getMessage());
-        }
+        totalBooksValue = new Label("…");
+        availableBooksValue = new Label("…");
+        totalUsersValue = new Label("…");
+        activeLoansValue = new Label("…");
+        
+        VBox booksCard = createStatCard("Total Books", totalBooksValue, "#3498db");
+        VBox availCard = createStatCard("Available", availableBooksValue, "#27ae60");
+        VBox usersCard = createStatCard("Users", totalUsersValue, "#9b59b6");
+        VBox loansCard = createStatCard("Active Loans", activeLoansValue, "#e74c3c");
+        
+        cards.getChildren().addAll(booksCard, availCard, usersCard, loansCard);
         
         return cards;
     }
     
-    private VBox createStatCard(String title, String value, String color) {
+    private void applyDashboardStats(DashboardStats stats) {
+        dashboardStats = stats;
+        totalBooksValue.setText(String.valueOf(stats.getTotalBooks()));
+        availableBooksValue.setText(String.valueOf(stats.getAvailableBooks()));
+        totalUsersValue.setText(String.valueOf(stats.getTotalUsers()));
+        activeLoansValue.setText(String.valueOf(stats.getActiveLoans()));
+    }
+    
+    // Adjusts the counters in place after a committed change
+    private void patchDashboardStats(int booksDelta, int availableDelta, int usersDelta, int loansDelta) {
+        if (dashboardStats == null) {
+            return;
+        }
+        dashboardStats.setTotalBooks(dashboardStats.getTotalBooks() + booksDelta);
+        dashboardStats.setAvailableBooks(dashboardStats.getAvailableBooks() + availableDelta);
+        dashboardStats.setTotalUsers(dashboardStats.getTotalUsers() + usersDelta);
+        dashboardStats.setActiveLoans(dashboardStats.getActiveLoans() + loansDelta);
+        applyDashboardStats(dashboardStats);
+        dashboardView.supersedeInFlight();
+    }
+    
+    private VBox createStatCard(String title, Label valueLabel, String color) {
         VBox card = new VBox(10);
         card.setAlignment(Pos.CENTER);
         card.setPadding(new Insets(20));
@@ -194,7 +371,6 @@ public class Main extends Application {
         titleLabel.setFont(Font.font("Arial", FontWeight.BOLD, 16));
         titleLabel.setTextFill(Color.WHITE);
         
-        Label valueLabel = new Label(value);
         valueLabel.setFont(Font.font("Arial", FontWeight.BOLD, 36));
         valueLabel.setTextFill(Color.WHITE);
         
@@ -204,6 +380,10 @@ public class Main extends Application {
     }
     
     private void showBooks() {
+        showView(booksView, "Book management loaded");
+    }
+    
+    private Node buildBooksView() {
         VBox booksView = new VBox(20);
         booksView.setPadding(new Insets(20));
         
@@ -231,18 +411,49 @@ public class Main extends Application {
         TextField searchField = new TextField();
         searchField.setPromptText("Search books...");
         searchField.setPrefWidth(300);
-        searchField.textProperty().addListener((obs, oldVal, newVal) -> searchBooks(newVal));
+        ContextMenu suggestionMenu = new ContextMenu();
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> {
+            searchBooks(newVal);
+            showSuggestions(searchField, suggestionMenu, newVal);
+        });
+        // Barcode scanners type the ISBN and press Enter
+        searchField.setOnAction(e -> {
+            if (scanIsbn(searchField.getText())) {
+                suggestionMenu.hide();
+                searchField.clear();
+            }
+        });
         
         actionBar.getChildren().addAll(addBtn, editBtn, deleteBtn, searchField);
         
-        // Books table
+        // Books table, filtered in memory by the search field
         bookTable = createBookTable();
-        updateBookTable();
-        
-        booksView.getChildren().addAll(title, actionBar, bookTable);
-        mainLayout.setCenter(booksView);
-        
-        updateStatus("Book management loaded");
+        filteredBooks = new FilteredList<>(bookData);
+        SortedList<Book> sortedBooks = new SortedList<>(filteredBooks);
+        sortedBooks.comparatorProperty().bind(bookTable.comparatorProperty());
+        bookTable.setItems(sortedBooks);
+        
+        // Facet filters to the left of the table
+        facetPanel = new VBox(8);
+        facetPanel.setPadding(new Insets(5));
+        ScrollPane facetScroll = new ScrollPane(facetPanel);
+        facetScroll.setFitToWidth(true);
+        facetScroll.setPrefWidth(230);
+        facetScroll.setMinWidth(230);
+        refreshFacetPanel();
+        
+        HBox content = new HBox(10, facetScroll, bookTable);
+        HBox.setHgrow(bookTable, Priority.ALWAYS);
+        
+        // Co-borrowing suggestions for the selected book
+        alsoBorrowedLabel = new Label();
+        alsoBorrowedLabel.setWrapText(true);
+        bookTable.getSelectionModel().selectedItemProperty().addListener(
+            (obs, oldVal, newVal) -> showAlsoBorrowed(newVal));
+        
+        booksView.getChildren().addAll(title, actionBar, content, alsoBorrowedLabel);
+        
+        return booksView;
     }
     
     private TableView<Book> createBookTable() {
@@ -290,24 +501,215 @@ public class Main extends Application {
         return table;
     }
     
-    private void updateBookTable() {
-        try {
-            List<Book> books = dbManager.getAllBooks();
-            ObservableList<Book> bookData = FXCollections.observableArrayList(books);
-            bookTable.setItems(bookData);
-        } catch (SQLException e) {
-            showAlert("Error", "Failed to load books: " + e.getMessage());
+    // Same matching as DatabaseManager.searchBooks, but over the retained list
+    private void searchBooks(String query) {
+        searchQuery = query.trim().toLowerCase();
+        applyBookFilter();
+    }
+    
+    private void applyBookFilter() {
+        String needle = searchQuery;
+        CompressedBitmap matches = facetMatches;
+        if (needle.isEmpty() && matches == null) {
+            filteredBooks.setPredicate(null);
+            return;
         }
+        filteredBooks.setPredicate(book ->
+            (matches == null || matches.contains(book.getId())) &&
+            (needle.isEmpty() ||
+             containsIgnoreCase(book.getTitle(), needle) ||
+             containsIgnoreCase(book.getAuthor(), needle) ||
+             containsIgnoreCase(book.getIsbn(), needle)));
     }
     
-    private void searchBooks(String query) {
+    // Re-runs the bitmap filter and redraws the counts after a selection or index change
+    private void onFacetsChanged() {
+        boolean anySelected = facetSelection.values().stream().anyMatch(values -> !values.isEmpty());
+        facetMatches = anySelected ? facetIndex.filter(facetSelection) : null;
+        if (filteredBooks != null) {
+            applyBookFilter();
+        }
+        refreshFacetPanel();
+    }
+    
+    private void refreshFacetPanel() {
+        if (facetPanel == null) {
+            return;
+        }
+        facetPanel.getChildren().clear();
+        
+        Button clearBtn = new Button("Clear filters");
+        clearBtn.setOnAction(e -> {
+            facetSelection.clear();
+            onFacetsChanged();
+        });
+        facetPanel.getChildren().add(clearBtn);
+        
+        Map<FacetIndex.Facet, Map<String, Integer>> counts = facetIndex.counts(facetSelection);
+        for (FacetIndex.Facet facet : FacetIndex.Facet.values()) {
+            Label header = new Label(facet.getLabel());
+            header.setFont(Font.font("Arial", FontWeight.BOLD, 14));
+            facetPanel.getChildren().add(header);
+            
+            Set<String> selected = facetSelection.computeIfAbsent(facet, f -> new HashSet<>());
+            List<Map.Entry<String, Integer>> values = new ArrayList<>(counts.get(facet).entrySet());
+            if (values.size() > MAX_FACET_VALUES) {
+                values.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+            }
+            
+            int shown = 0;
+            for (Map.Entry<String, Integer> value : values) {
+                boolean isSelected = selected.contains(value.getKey());
+                if (!isSelected && (value.getValue() == 0 || shown >= MAX_FACET_VALUES)) {
+                    continue;
+                }
+                CheckBox box = new CheckBox(value.getKey() + " (" + value.getValue() + ")");
+                box.setSelected(isSelected);
+                box.setOnAction(e -> {
+                    if (box.isSelected()) {
+                        selected.add(value.getKey());
+                    } else {
+                        selected.remove(value.getKey());
+                    }
+                    onFacetsChanged();
+                });
+                facetPanel.getChildren().add(box);
+                shown++;
+            }
+        }
+    }
+    
+    // Selects the book with this ISBN; false if the text isn't a valid ISBN
+    private boolean scanIsbn(String text) {
+        if (!Isbn.isValid(text)) {
+            return false;
+        }
         try {
-            List<Book> books = dbManager.searchBooks(query);
-            ObservableList<Book> bookData = FXCollections.observableArrayList(books);
-            bookTable.setItems(bookData);
+            Book book = performance.time("getBookByIsbn", () -> dbManager.getBookByIsbn(text));
+            if (book == null) {
+                updateStatus("No book with ISBN " + text.trim());
+                return true;
+            }
+            searchQuery = "";
+            facetSelection.clear();
+            onFacetsChanged();
+            for (Book row : bookTable.getItems()) {
+                if (row.getId() == book.getId()) {
+                    bookTable.getSelectionModel().select(row);
+                    bookTable.scrollTo(row);
+                    break;
+                }
+            }
+            updateStatus("Scanned: " + book.getTitle());
         } catch (SQLException e) {
-            showAlert("Error", "Search failed: " + e.getMessage());
+            showAlert("Error", "ISBN lookup failed: " + e.getMessage());
+        }
+        return true;
+    }
+    
+    private static boolean containsIgnoreCase(String value, String lowerCaseNeedle) {
+        return value != null && value.toLowerCase().contains(lowerCaseNeedle);
+    }
+    
+    private void showSuggestions(TextField field, ContextMenu menu, String text) {
+        List<Suggestion> suggestions = autocomplete.suggest(text, 8);
+        // Nothing to add once the text already is the only suggestion
+        if (suggestions.isEmpty() ||
+            (suggestions.size() == 1 && suggestions.get(0).getText().equalsIgnoreCase(text.trim()))) {
+            menu.hide();
+            return;
+        }
+        
+        menu.getItems().clear();
+        for (Suggestion suggestion : suggestions) {
+            MenuItem item = new MenuItem(suggestion.toString());
+            item.setOnAction(e -> {
+                field.setText(suggestion.getText());
+                field.positionCaret(field.getText().length());
+            });
+            menu.getItems().add(item);
+        }
+        if (!menu.isShowing()) {
+            menu.show(field, javafx.geometry.Side.BOTTOM, 0, 0);
+        }
+    }
+    
+    // Built once in the background, then kept current from domain events
+    private void loadSearchIndexes() {
+        backgroundExecutor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                List<Book> books = performance.time("loadCatalog", this::loadCatalog);
+                Map<Integer, Integer> loanCounts = performance.time("getLoanCountsByBook", dbManager::getLoanCountsByBook);
+                autocomplete.rebuild(books, loanCounts);
+                facetIndex.rebuild(books);
+                long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                System.out.println("✅ Search indexes built for " + books.size() + " books in " + elapsedMs + " ms");
+                Platform.runLater(this::onFacetsChanged);
+            } catch (SQLException e) {
+                System.err.println("Search indexes unavailable: " + e.getMessage());
+            }
+        });
+        // Own thread rather than the background executor: the full loan history scan would
+        // hold up every view refresh queued behind it
+        Thread builder = new Thread(() -> {
+            try {
+                long start = System.nanoTime();
+                recommendations.build(dbManager);
+                long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                System.out.println("✅ Recommendations built for " + recommendations.rowCount() +
+                                   " books in " + elapsedMs + " ms");
+            } catch (SQLException e) {
+                System.err.println("Recommendations unavailable: " + e.getMessage());
+            }
+        }, "bookflow-recommendations");
+        builder.setDaemon(true);
+        builder.start();
+    }
+    
+    // The catalogue from the local snapshot plus whatever changed since it was written
+    private List<Book> loadCatalog() throws SQLException {
+        if (!CatalogSnapshot.ENABLED) {
+            return dbManager.getAllBooks();
+        }
+        if (catalogSnapshot == null) {
+            catalogSnapshot = new CatalogSnapshot(new java.io.File(CatalogSnapshot.DEFAULT_DIR),
+                                                  dbManager.getDatabaseName());
+        }
+        return catalogSnapshot.sync(dbManager);
+    }
+    
+    // Own thread rather than the background executor: a first run can move years of history
+    private void startLoanArchiver() {
+        if (!LoanArchiver.ENABLED) {
+            return;
+        }
+        Thread archiver = new Thread(() -> {
+            try {
+                new LoanArchiver(dbManager).archive();
+            } catch (SQLException e) {
+                System.err.println("Loan archival failed: " + e.getMessage());
+            }
+        }, "bookflow-archiver");
+        archiver.setDaemon(true);
+        archiver.setPriority(Thread.MIN_PRIORITY);
+        archiver.start();
+    }
+    
+    private void showAlsoBorrowed(Book book) {
+        if (book == null) {
+            alsoBorrowedLabel.setText("");
+            return;
         }
+        List<String> titles = new ArrayList<>();
+        for (int bookId : recommendations.alsoBorrowed(book.getId(), 5)) {
+            int index = indexOfBook(bookId);
+            if (index >= 0) {
+                titles.add(bookData.get(index).getTitle());
+            }
+        }
+        alsoBorrowedLabel.setText(titles.isEmpty() ? "" :
+            "Patrons who borrowed this also borrowed: " + String.join(", ", titles));
     }
     
     private void showAddBookDialog() {
@@ -364,8 +766,10 @@ public class Main extends Application {
                     Integer.parseInt(copiesField.getText())
                 );
                 
-                dbManager.addBook(book);
-                updateBookTable();
+                performance.time("addBook", () -> {
+                    dbManager.addBook(book);
+                    return null;
+                });
                 updateStatus("Book added successfully");
                 
             } catch (Exception e) {
@@ -401,8 +805,10 @@ public class Main extends Application {
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
             try {
-                dbManager.deleteBook(selected.getId());
-                updateBookTable();
+                performance.time("deleteBook", () -> {
+                    dbManager.deleteBook(selected.getId());
+                    return null;
+                });
                 updateStatus("Book deleted successfully");
             } catch (SQLException e) {
                 showAlert("Error", "Failed to delete book: " + e.getMessage());
@@ -411,6 +817,10 @@ public class Main extends Application {
     }
     
     private void showUsers() {
+        showView(usersView, "User management loaded");
+    }
+    
+    private Node buildUsersView() {
         VBox usersView = new VBox(20);
         usersView.setPadding(new Insets(20));
         
@@ -427,12 +837,11 @@ public class Main extends Application {
         actionBar.getChildren().add(addBtn);
         
         userTable = createUserTable();
-        updateUserTable();
+        userTable.setItems(userData);
         
         usersView.getChildren().addAll(title, actionBar, userTable);
-        mainLayout.setCenter(usersView);
         
-        updateStatus("User management loaded");
+        return usersView;
     }
     
     private TableView<User> createUserTable() {
@@ -466,22 +875,16 @@ public class Main extends Application {
         return table;
     }
     
-    private void updateUserTable() {
-        try {
-            List<User> users = dbManager.getAllUsers();
-            ObservableList<User> userData = FXCollections.observableArrayList(users);
-            userTable.setItems(userData);
-        } catch (SQLException e) {
-            showAlert("Error", "Failed to load users: " + e.getMessage());
-        }
-    }
-    
     private void showAddUserDialog() {
         // Implementation similar to add book
         updateStatus("Add user dialog");
     }
     
     private void showLoans() {
+        showView(loansView, "Loan management loaded");
+    }
+    
+    private Node buildLoansView() {
         VBox loansView = new VBox(20);
         loansView.setPadding(new Insets(20));
         
@@ -500,15 +903,41 @@ public class Main extends Application {
                           "-fx-font-size: 14px; -fx-padding: 10 20;");
         returnBtn.setOnAction(e -> returnSelectedLoan());
         
-        actionBar.getChildren().addAll(issueBtn, returnBtn);
+        // Archived history is only read on request; the retained list stays hot-table only
+        CheckBox includeArchived = new CheckBox("Include archived");
+        includeArchived.setOnAction(e -> showLoanHistory(includeArchived.isSelected()));
+        
+        actionBar.setAlignment(Pos.CENTER_LEFT);
+        actionBar.getChildren().addAll(issueBtn, returnBtn, includeArchived);
         
         loanTable = createLoanTable();
-        updateLoanTable();
+        loanTable.setItems(loanData);
         
         loansView.getChildren().addAll(title, actionBar, loanTable);
-        mainLayout.setCenter(loansView);
         
-        updateStatus("Loan management loaded");
+        return loansView;
+    }
+    
+    private void showLoanHistory(boolean includeArchived) {
+        if (!includeArchived) {
+            loanTable.setItems(loanData);
+            return;
+        }
+        
+        updateStatus("Loading archived loans...");
+        Task<List<Loan>> load = new Task<>() {
+            @Override
+            protected List<Loan> call() throws SQLException {
+                return performance.time("getAllLoans(archive)", () -> dbManager.getAllLoans(true));
+            }
+        };
+        load.setOnSucceeded(e -> {
+            loanTable.setItems(FXCollections.observableArrayList(load.getValue()));
+            updateStatus("Showing " + load.getValue().size() + " loans including archive");
+        });
+        load.setOnFailed(e -> showAlert("Error", "Failed to load archived loans: " +
+                                       load.getException().getMessage()));
+        backgroundExecutor.execute(load);
     }
     
     private TableView<Loan> createLoanTable() {
@@ -546,16 +975,6 @@ public class Main extends Application {
         return table;
     }
     
-    private void updateLoanTable() {
-        try {
-            List<Loan> loans = dbManager.getAllLoans();
-            ObservableList<Loan> loanData = FXCollections.observableArrayList(loans);
-            loanTable.setItems(loanData);
-        } catch (SQLException e) {
-            showAlert("Error", "Failed to load loans: " + e.getMessage());
-        }
-    }
-    
     private void showIssueLoanDialog() {
         updateStatus("Issue loan dialog");
     }
@@ -573,8 +992,10 @@ public class Main extends Application {
         }
         
         try {
-            dbManager.returnBook(selected.getId());
-            updateLoanTable();
+            performance.time("returnBook", () -> {
+                dbManager.returnBook(selected.getId());
+                return null;
+            });
             updateStatus("Book returned successfully");
         } catch (SQLException e) {
             showAlert("Error", "Failed to return book: " + e.getMessage());
@@ -582,18 +1003,335 @@ public class Main extends Application {
     }
     
     private void showReports() {
-        VBox reportsView = new VBox(20);
-        reportsView.setPadding(new Insets(20));
+        if (reportsView == null) {
+            reportsView = buildReportsView();
+        }
+        mainLayout.setCenter(reportsView);
+        if (loanAnalytics == null) {
+            loadLoanAnalytics();
+        }
+        
+        updateStatus("Reports loaded");
+    }
+    
+    private VBox buildReportsView() {
+        VBox view = new VBox(15);
+        view.setPadding(new Insets(20));
         
         Label title = new Label("Reports & Analytics");
         title.setFont(Font.font("Arial", FontWeight.BOLD, 24));
         
-        Label info = new Label("Generate reports: Most borrowed books, overdue items, user activity");
+        analyticsLabel = new Label("Loan history not loaded");
+        Button reloadBtn = new Button("🔄 Reload history");
+        reloadBtn.setOnAction(e -> loadLoanAnalytics());
+        HBox snapshotBar = new HBox(10, analyticsLabel, reloadBtn);
+        snapshotBar.setAlignment(Pos.CENTER_LEFT);
+        
+        // Filters
+        DatePicker fromPicker = new DatePicker();
+        fromPicker.setPromptText("Issued from");
+        DatePicker toPicker = new DatePicker();
+        toPicker.setPromptText("Issued to");
+        reportCategoryBox = new ComboBox<>(FXCollections.observableArrayList(ALL));
+        reportCategoryBox.setValue(ALL);
+        ComboBox<String> membershipBox = choiceBox(LoanAnalytics.getMembershipTypeNames());
+        ComboBox<String> statusBox = choiceBox(LoanAnalytics.getStatusNames());
+        HBox filterBar = new HBox(10, new Label("Issued"), fromPicker, new Label("to"), toPicker,
+                                  new Label("Category"), reportCategoryBox, new Label("Membership"), membershipBox,
+                                  new Label("Status"), statusBox);
+        filterBar.setAlignment(Pos.CENTER_LEFT);
+        
+        // Grouping, order and top-k
+        List<String> dimensionLabels = new ArrayList<>();
+        dimensionLabels.add(NO_GROUP);
+        for (LoanQuery.Dimension dimension : LoanQuery.Dimension.values()) {
+            dimensionLabels.add(dimension.getLabel());
+        }
+        List<ComboBox<String>> groupBoxes = new ArrayList<>();
+        for (int i = 0; i < LoanQuery.MAX_DIMENSIONS; i++) {
+            ComboBox<String> box = new ComboBox<>(FXCollections.observableArrayList(dimensionLabels));
+            box.setValue(i == 0 ? LoanQuery.Dimension.CATEGORY.getLabel() : NO_GROUP);
+            groupBoxes.add(box);
+        }
+        ComboBox<LoanQuery.Order> orderBox = new ComboBox<>(FXCollections.observableArrayList(LoanQuery.Order.values()));
+        orderBox.setValue(LoanQuery.Order.LOANS);
+        TextField topField = new TextField("50");
+        topField.setPrefWidth(60);
+        Button runBtn = new Button("▶ Run");
+        runBtn.setStyle("-fx-background-color: #27ae60; -fx-text-fill: white; " +
+                       "-fx-font-size: 14px; -fx-padding: 6 16;");
+        
+        HBox groupBar = new HBox(10, new Label("Group by"));
+        groupBar.getChildren().addAll(groupBoxes);
+        groupBar.getChildren().addAll(new Label("Order"), orderBox, new Label("Top"), topField, runBtn);
+        groupBar.setAlignment(Pos.CENTER_LEFT);
+        
+        Label resultLabel = new Label();
+        TableView<LoanAnalytics.Row> resultTable = new TableView<>();
+        resultTable.setPrefHeight(450);
+        
+        runBtn.setOnAction(e -> {
+            LoanQuery query = new LoanQuery().issuedBetween(fromPicker.getValue(), toPicker.getValue());
+            addFilter(reportCategoryBox, query::category);
+            addFilter(membershipBox, query::membership);
+            addFilter(statusBox, query::status);
+            for (ComboBox<String> box : groupBoxes) {
+                for (LoanQuery.Dimension dimension : LoanQuery.Dimension.values()) {
+                    if (dimension.getLabel().equals(box.getValue())) {
+                        query.groupBy(dimension);
+                    }
+                }
+            }
+            query.orderBy(orderBox.getValue());
+            try {
+                query.top(Integer.parseInt(topField.getText().trim()));
+            } catch (NumberFormatException ex) {
+                showAlert("Invalid Top", "Top must be a whole number (0 for every group)");
+                return;
+            }
+            runLoanReport(query, resultTable, resultLabel);
+        });
         
-        reportsView.getChildren().addAll(title, info);
-        mainLayout.setCenter(reportsView);
+        view.getChildren().addAll(title, snapshotBar, filterBar, groupBar, resultLabel, resultTable);
+        return view;
+    }
+    
+    private static ComboBox<String> choiceBox(List<String> values) {
+        ComboBox<String> box = new ComboBox<>(FXCollections.observableArrayList(ALL));
+        box.getItems().addAll(values);
+        box.setValue(ALL);
+        return box;
+    }
+    
+    private static void addFilter(ComboBox<String> box, Consumer<String> filter) {
+        if (box.getValue() != null && !ALL.equals(box.getValue())) {
+            filter.accept(box.getValue());
+        }
+    }
+    
+    // Own thread rather than the background executor: reading 10M loans takes a while
+    private void loadLoanAnalytics() {
+        analyticsLabel.setText("Loading loan history...");
+        Task<LoanAnalytics> load = new Task<>() {
+            @Override
+            protected LoanAnalytics call() throws SQLException {
+                return performance.time("loadLoanAnalytics", () -> LoanAnalytics.load(dbManager));
+            }
+        };
+        load.setOnSucceeded(e -> {
+            loanAnalytics = load.getValue();
+            String selected = reportCategoryBox.getValue();
+            reportCategoryBox.getItems().setAll(ALL);
+            reportCategoryBox.getItems().addAll(loanAnalytics.getCategories());
+            reportCategoryBox.setValue(reportCategoryBox.getItems().contains(selected) ? selected : ALL);
+            analyticsLabel.setText(String.format("%,d loans loaded at %s", loanAnalytics.size(),
+                LocalTime.now().withNano(0)));
+        });
+        load.setOnFailed(e -> {
+            analyticsLabel.setText("Loan history not loaded");
+            showAlert("Error", "Failed to load loan history: " + load.getException().getMessage());
+        });
+        Thread loader = new Thread(load, "bookflow-analytics");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    private void runLoanReport(LoanQuery query, TableView<LoanAnalytics.Row> table, Label resultLabel) {
+        LoanAnalytics analytics = loanAnalytics;
+        if (analytics == null) {
+            showAlert("Not Ready", "Loan history is still loading");
+            return;
+        }
+        Task<LoanAnalytics.Report> run = new Task<>() {
+            @Override
+            protected LoanAnalytics.Report call() throws SQLException {
+                LoanAnalytics.Report report = analytics.run(query);
+                performance.time("reportNames", () -> {
+                    report.resolveNames(dbManager);
+                    return null;
+                });
+                return report;
+            }
+        };
+        run.setOnSucceeded(e -> {
+            LoanAnalytics.Report report = run.getValue();
+            showLoanReport(report, table);
+            resultLabel.setText(query + ": " + report);
+            updateStatus("Report ready in " + report.elapsedMs + " ms");
+        });
+        run.setOnFailed(e -> showAlert("Error", "Report failed: " + run.getException().getMessage()));
+        backgroundExecutor.execute(run);
+    }
+    
+    // Columns follow the query: one per group-by dimension, then the measures
+    private void showLoanReport(LoanAnalytics.Report report, TableView<LoanAnalytics.Row> table) {
+        table.getColumns().clear();
+        List<LoanQuery.Dimension> dimensions = report.query.getGroupBy();
+        for (int i = 0; i < dimensions.size(); i++) {
+            int index = i;
+            TableColumn<LoanAnalytics.Row, String> col = new TableColumn<>(dimensions.get(i).getLabel());
+            col.setCellValueFactory(data ->
+                new javafx.beans.property.SimpleStringProperty(data.getValue().getLabel(index)));
+            col.setPrefWidth(dimensions.get(i) == LoanQuery.Dimension.BOOK ? 300 : 150);
+            table.getColumns().add(col);
+        }
         
-        updateStatus("Reports loaded");
+        TableColumn<LoanAnalytics.Row, Number> loansCol = new TableColumn<>("Loans");
+        loansCol.setCellValueFactory(data ->
+            new javafx.beans.property.SimpleLongProperty(data.getValue().getLoans()));
+        
+        TableColumn<LoanAnalytics.Row, String> finesCol = new TableColumn<>("Fines");
+        finesCol.setCellValueFactory(data ->
+            new javafx.beans.property.SimpleStringProperty(String.format("$%,.2f", data.getValue().getFines())));
+        
+        TableColumn<LoanAnalytics.Row, Number> lateCol = new TableColumn<>("Late");
+        lateCol.setCellValueFactory(data ->
+            new javafx.beans.property.SimpleLongProperty(data.getValue().getLate()));
+        
+        TableColumn<LoanAnalytics.Row, String> daysCol = new TableColumn<>("Avg days out");
+        daysCol.setCellValueFactory(data ->
+            new javafx.beans.property.SimpleStringProperty(String.format("%.1f", data.getValue().getAverageDays())));
+        
+        table.getColumns().add(loansCol);
+        table.getColumns().add(finesCol);
+        table.getColumns().add(lateCol);
+        table.getColumns().add(daysCol);
+        table.setItems(FXCollections.observableArrayList(report.rows));
+    }
+    
+    // ==================== DOMAIN EVENT PATCHES ====================
+    
+    private void subscribeToDomainEvents() {
+        DomainEventBus bus = dbManager.getEventBus();
+        
+        // The autocomplete index is thread-safe and updated on the publishing thread
+        bus.subscribe(BookAdded.class, e -> autocomplete.addBook(e.getBook()));
+        bus.subscribe(BookUpdated.class, e -> autocomplete.updateBook(e.getBook()));
+        bus.subscribe(BookDeleted.class, e -> autocomplete.removeBook(e.getBookId()));
+        bus.subscribe(LoanIssued.class, e -> autocomplete.recordLoan(e.getLoan().getBookId()));
+        bus.subscribe(BookAdded.class, e -> facetIndex.addBook(e.getBook()));
+        bus.subscribe(BookUpdated.class, e -> facetIndex.updateBook(e.getBook()));
+        bus.subscribe(BookDeleted.class, e -> facetIndex.removeBook(e.getBookId()));
+        bus.subscribe(LoanIssued.class, e -> facetIndex.adjustAvailable(e.getLoan().getBookId(), -1));
+        bus.subscribe(LoanReturned.class, e -> facetIndex.adjustAvailable(e.getBookId(), 1));
+        bus.subscribe(LoanIssued.class, e ->
+            recommendations.recordLoan(e.getLoan().getUserId(), e.getLoan().getBookId()));
+        
+        subscribeOnFx(bus, BookAdded.class, e -> onBookAdded(e.getBook()));
+        subscribeOnFx(bus, BookUpdated.class, e -> onBookUpdated(e.getBook()));
+        subscribeOnFx(bus, BookDeleted.class, e -> onBookDeleted(e.getBookId()));
+        subscribeOnFx(bus, UserAdded.class, e -> onUserAdded(e.getUser()));
+        subscribeOnFx(bus, LoanIssued.class, e -> onLoanIssued(e.getLoan()));
+        subscribeOnFx(bus, LoanReturned.class, e -> onLoanReturned(e));
+        // Live facet counts, redrawn after the patches above
+        subscribeOnFx(bus, DomainEvent.class, e -> onFacetsChanged());
+    }
+    
+    private <E extends DomainEvent> void subscribeOnFx(DomainEventBus bus, Class<E> type, Consumer<E> patch) {
+        bus.subscribe(type, event -> Platform.runLater(() -> patch.accept(event)));
+    }
+    
+    // Same order as getAllUsers (ORDER BY name)
+    private static final Comparator<User> USERS_BY_NAME = Comparator
+        .comparing(User::getName, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+        .thenComparingInt(User::getId);
+    
+    // Where item goes to keep a list sorted by order: after everything that sorts with or before it
+    private static <T> int sortedIndex(List<T> list, T item, Comparator<? super T> order) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(list.get(mid), item) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private void onBookAdded(Book book) {
+        bookData.add(sortedIndex(bookData, book, CatalogSnapshot.BY_TITLE), book);
+        booksView.supersedeInFlight();
+        patchDashboardStats(1, book.getAvailableCopies(), 0, 0);
+    }
+    
+    private void onBookUpdated(Book book) {
+        int index = indexOfBook(book.getId());
+        if (index < 0) {
+            return;
+        }
+        int availableDelta = book.getAvailableCopies() - bookData.get(index).getAvailableCopies();
+        if (CatalogSnapshot.BY_TITLE.compare(bookData.get(index), book) == 0) {
+            bookData.set(index, book);
+        } else {
+            // Retitled: move it to where the new title sorts
+            bookData.remove(index);
+            bookData.add(sortedIndex(bookData, book, CatalogSnapshot.BY_TITLE), book);
+        }
+        booksView.supersedeInFlight();
+        patchDashboardStats(0, availableDelta, 0, 0);
+    }
+    
+    private void onBookDeleted(int bookId) {
+        int index = indexOfBook(bookId);
+        if (index < 0) {
+            // Not in the retained list yet, so the available total is unknown
+            dashboardView.invalidate();
+            return;
+        }
+        Book removed = bookData.remove(index);
+        booksView.supersedeInFlight();
+        patchDashboardStats(-1, -removed.getAvailableCopies(), 0, 0);
+    }
+    
+    private void onUserAdded(User user) {
+        userData.add(sortedIndex(userData, user, USERS_BY_NAME), user);
+        usersView.supersedeInFlight();
+        patchDashboardStats(0, 0, 1, 0);
+    }
+    
+    private void onLoanIssued(Loan loan) {
+        // Newest first, matching ORDER BY issue_date DESC
+        loanData.add(0, loan);
+        loansView.supersedeInFlight();
+        adjustAvailableCopies(loan.getBookId(), -1);
+        patchDashboardStats(0, -1, 0, 1);
+    }
+    
+    private void onLoanReturned(LoanReturned event) {
+        for (int i = 0; i < loanData.size(); i++) {
+            Loan loan = loanData.get(i);
+            if (loan.getId() == event.getLoanId()) {
+                loan.setStatus("Returned");
+                loan.setReturnDate(event.getReturnDate());
+                loanData.set(i, loan); // Replacing the element redraws the row
+                break;
+            }
+        }
+        loansView.supersedeInFlight();
+        adjustAvailableCopies(event.getBookId(), 1);
+        patchDashboardStats(0, 1, 0, -1);
+    }
+    
+    private void adjustAvailableCopies(int bookId, int delta) {
+        int index = indexOfBook(bookId);
+        if (index >= 0) {
+            Book book = bookData.get(index);
+            book.setAvailableCopies(book.getAvailableCopies() + delta);
+            bookData.set(index, book);
+            booksView.supersedeInFlight();
+        }
+    }
+    
+    private int indexOfBook(int bookId) {
+        for (int i = 0; i < bookData.size(); i++) {
+            if (bookData.get(i).getId() == bookId) {
+                return i;
+            }
+        }
+        return -1;
     }
     
     private void updateStatus(String message) {
@@ -612,6 +1350,13 @@ public class Main extends Application {
     
     @Override
     public void stop() {
+        performance.stop();
+        if (backgroundExecutor != null) {
+            backgroundExecutor.shutdownNow();
+        }
+        if (catalogSnapshot != null) {
+            catalogSnapshot.flush();
+        }
         if (dbManager != null) {
             dbManager.closeConnection();
         }
@@ -620,4 +1365,13 @@ public class Main extends Application {
     public static void main(String[] args) {
         launch(args);
     }
+}
+
+// ==================== Launcher.java ====================
+// Plain entry point for running with JavaFX on the class path, which the
+// AppCDS archive needs (a main class extending Application refuses to start there)
+class Launcher {
+    public static void main(String[] args) {
+        Application.launch(Main.class, args);
+    }
 }
\ No newline at end of file
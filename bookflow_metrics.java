@@ -0,0 +1,97 @@
+// BookFlow - Metrics
+// Created by Michael Semera
+// LatencyHistogram.java
+
+package com.michaelsemera.bookflow;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// ==================== LatencyHistogram.java ====================
+// Lock-free latency distribution in microseconds. Buckets are log-linear: exact below
+// 16 µs, then eight sub-buckets per power of two, so any percentile is within 12.5%
+// of the true value while recording stays a couple of atomic adds.
+class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    // 2^4 .. 2^40 µs (about 12 days) is plenty
+    private static final int BUCKETS = LINEAR_BUCKETS + (41 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sumMicros.add(value);
+        maxMicros.accumulate(value);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public double meanMillis() {
+        long n = total.sum();
+        return n == 0 ? 0 : sumMicros.sum() / 1000.0 / n;
+    }
+
+    public double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100), in milliseconds
+    public double percentileMillis(double percentile) {
+        long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBoundOf(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sumMicros.reset();
+        maxMicros.reset();
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
\ No newline at end of file
@@ -1,6 +1,6 @@
 // BookFlow - Model Classes
 // Created by Michael Semera
-// Book.java, User.java, Loan.java
+// Book.java, User.java, Loan.java, DashboardStats.java
 
 package com.michaelsemera.bookflow;
 
@@ -207,6 +207,18 @@ class Loan {
         return getDaysOverdue() * finePerDay;
     }
     
+    // Days late that the branch was actually open, as of the calendar's business date
+    public int getOpenDaysOverdue(BusinessCalendar calendar) {
+        if ("Returned".equals(status)) {
+            return 0;
+        }
+        return calendar.openDaysOverdue(dueDate.toEpochDay(), calendar.todayEpochDay());
+    }
+    
+    public double calculateFine(BusinessCalendar calendar, double finePerDay) {
+        return getOpenDaysOverdue(calendar) * finePerDay;
+    }
+    
     public int getLoanDuration() {
         LocalDate endDate = (returnDate != null) ? returnDate : LocalDate.now();
         return (int) java.time.temporal.ChronoUnit.DAYS.between(issueDate, endDate);
@@ -217,4 +229,37 @@ class Loan {
         return String.format("Loan #%d: %s -> %s (Due: %s, Status: %s)", 
             id, bookTitle, userName, dueDate, status);
     }
+}
+
+// ==================== DashboardStats.java ====================
+class DashboardStats {
+    private int totalBooks;
+    private int availableBooks;
+    private int totalUsers;
+    private int activeLoans;
+    
+    public DashboardStats(int totalBooks, int availableBooks, int totalUsers, int activeLoans) {
+        this.totalBooks = totalBooks;
+        this.availableBooks = availableBooks;
+        this.totalUsers = totalUsers;
+        this.activeLoans = activeLoans;
+    }
+    
+    // Getters
+    public int getTotalBooks() { return totalBooks; }
+    public int getAvailableBooks() { return availableBooks; }
+    public int getTotalUsers() { return totalUsers; }
+    public int getActiveLoans() { return activeLoans; }
+    
+    // Setters
+    public void setTotalBooks(int totalBooks) { this.totalBooks = totalBooks; }
+    public void setAvailableBooks(int availableBooks) { this.availableBooks = availableBooks; }
+    public void setTotalUsers(int totalUsers) { this.totalUsers = totalUsers; }
+    public void setActiveLoans(int activeLoans) { this.activeLoans = activeLoans; }
+    
+    @Override
+    public String toString() {
+        return String.format("%d books (%d available), %d users, %d active loans",
+            totalBooks, availableBooks, totalUsers, activeLoans);
+    }
 }
\ No newline at end of file
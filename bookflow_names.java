@@ -0,0 +1,189 @@
+// BookFlow - Name Dictionaries
+// Created by Michael Semera
+// NameDictionary.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ==================== NameDictionary.java ====================
+// id -> display string for one dimension table (book titles, patron names), so loan
+// listings can read the narrow loans rows and fill the labels from memory. This
+// desk's own writes arrive from the event bus; refresh() picks up rows other desks
+// changed (updated_at) or deleted since the last sync, and ids it hasn't seen are
+// fetched in IN (...) batches.
+class NameDictionary {
+
+    // Shown for rows whose book or patron no longer exists (archived loans)
+    static final String MISSING = "(deleted)";
+
+    // How long an id found missing is shown as MISSING before it is looked up again
+    static final long MISS_TTL_MS = Long.getLong("bookflow.names.missTtlMs", 60_000L);
+
+    // Re-read this much before the last sync: a transaction that committed after it
+    // may carry an earlier updated_at (same margin as the catalog snapshot)
+    private static final long OVERLAP_MS = 60_000;
+
+    private static final int LOOKUP_CHUNK = 500;
+
+    private final String table;
+    private final String column;
+    // Ids deleted at or after a time (epoch ms parameter); null when rows are never deleted
+    private final String deletionsSql;
+    private final Map<Integer, String> names = new HashMap<>();
+    private final Map<Integer, Long> missedAtMillis = new HashMap<>();
+    private long syncedAtMillis; // server clock
+
+    NameDictionary(String table, String column, String deletionsSql) {
+        this.table = table;
+        this.column = column;
+        this.deletionsSql = deletionsSql;
+    }
+
+    // Whole-table load; two narrow columns, so even large catalogues load quickly
+    public void load(Connection conn) throws SQLException {
+        long serverNow = readServerTimeMillis(conn);
+        Map<Integer, String> loaded = new HashMap<>();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT id, " + column + " FROM " + table);
+        while (rs.next()) {
+            loaded.put(rs.getInt(1), rs.getString(2));
+        }
+        rs.close();
+        stmt.close();
+        synchronized (this) {
+            names.putAll(loaded);
+            syncedAtMillis = serverNow;
+        }
+    }
+
+    // Rows changed or deleted since the last sync, found through the updated_at index
+    public void refresh(Connection conn) throws SQLException {
+        long since;
+        synchronized (this) {
+            since = syncedAtMillis - OVERLAP_MS;
+        }
+        long serverNow = readServerTimeMillis(conn);
+
+        Map<Integer, String> changed = new HashMap<>();
+        PreparedStatement pstmt = conn.prepareStatement("SELECT id, " + column + " FROM " + table +
+                                                        " WHERE updated_at >= FROM_UNIXTIME(? / 1000)");
+        pstmt.setLong(1, since);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            changed.put(rs.getInt(1), rs.getString(2));
+        }
+        rs.close();
+        pstmt.close();
+
+        List<Integer> deleted = new ArrayList<>();
+        if (deletionsSql != null) {
+            pstmt = conn.prepareStatement(deletionsSql);
+            pstmt.setLong(1, since);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                deleted.add(rs.getInt(1));
+            }
+            rs.close();
+            pstmt.close();
+        }
+
+        synchronized (this) {
+            for (Map.Entry<Integer, String> entry : changed.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            for (Integer id : deleted) {
+                names.remove(id);
+            }
+            syncedAtMillis = Math.max(syncedAtMillis, serverNow);
+        }
+    }
+
+    // The name, MISSING for an id recently found not to exist, or null if unknown
+    public synchronized String get(int id) {
+        String name = names.get(id);
+        if (name != null) {
+            return name;
+        }
+        Long missedAt = missedAtMillis.get(id);
+        if (missedAt == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - missedAt >= MISS_TTL_MS) {
+            missedAtMillis.remove(id);
+            return null;
+        }
+        return MISSING;
+    }
+
+    public synchronized void put(int id, String name) {
+        names.put(id, name);
+        missedAtMillis.remove(id);
+    }
+
+    public synchronized void remove(int id) {
+        names.remove(id);
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    // Fetches the given ids in batches. Ids that don't exist are shown as MISSING for
+    // MISS_TTL_MS, then looked up again: one not yet visible on this connection (a
+    // lagging replica) may exist by then.
+    public void resolve(Connection conn, Collection<Integer> ids) throws SQLException {
+        List<Integer> pending = new ArrayList<>(ids);
+        for (int from = 0; from < pending.size(); from += LOOKUP_CHUNK) {
+            List<Integer> chunk = pending.subList(from, Math.min(pending.size(), from + LOOKUP_CHUNK));
+            StringBuilder sql = new StringBuilder("SELECT id, ").append(column)
+                .append(" FROM ").append(table).append(" WHERE id IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            PreparedStatement pstmt = conn.prepareStatement(sql.append(')').toString());
+            for (int i = 0; i < chunk.size(); i++) {
+                pstmt.setInt(i + 1, chunk.get(i));
+            }
+
+            Map<Integer, String> found = new HashMap<>();
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                found.put(rs.getInt(1), rs.getString(2));
+            }
+            rs.close();
+            pstmt.close();
+
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                for (Integer id : chunk) {
+                    String name = found.get(id);
+                    if (name != null) {
+                        put(id, name);
+                    } else {
+                        missedAtMillis.put(id, now);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long readServerTimeMillis(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000)");
+        rs.next();
+        long millis = rs.getLong(1);
+        rs.close();
+        stmt.close();
+        return millis;
+    }
+}
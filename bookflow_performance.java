@@ -0,0 +1,309 @@
+// BookFlow - Performance Monitor
+// Created by Michael Semera
+// PerformanceMonitor.java, Stall.java
+
+package com.michaelsemera.bookflow;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// ==================== PerformanceMonitor.java ====================
+// What the desk feels: an AnimationTimer measures the time between FX pulses, a
+// watchdog thread notices when pulses stop and captures the FX thread's stack while
+// it is still stuck, and every database call made on behalf of the UI is timed into
+// a per-operation histogram. The status bar shows a one-line summary; the details
+// window exports everything as a plain-text report to attach to a complaint.
+class PerformanceMonitor {
+
+    static final long STALL_THRESHOLD_MS = Long.getLong("bookflow.perf.stallMs", 250L);
+    static final String REPORT_DIR = System.getProperty("bookflow.perf.reportDir",
+        System.getProperty("user.home") + File.separator + ".bookflow" + File.separator + "diagnostics");
+
+    private static final long WATCHDOG_INTERVAL_MS = 50;
+    private static final long PANEL_REFRESH_NANOS = 500_000_000L;
+    private static final int MAX_STALLS = 50;
+
+    // A database call whose latency is recorded under an operation name
+    interface TimedCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+    private final ArrayDeque<Stall> stalls = new ArrayDeque<>();
+    private final AtomicReference<Stall> pendingStall = new AtomicReference<>();
+    private final long startedMillis = System.currentTimeMillis();
+
+    private volatile Thread fxThread;
+    private volatile long lastPulseNanos;
+    private volatile boolean running;
+    private long stallCount;
+    private long framesSinceRefresh;
+    private long lastRefreshNanos;
+    private Label summaryLabel;
+    private Thread watchdog;
+
+    private final AnimationTimer pulseTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            onPulse(now);
+        }
+    };
+
+    // Call on the FX thread once the stage is showing
+    public void start() {
+        fxThread = Thread.currentThread();
+        lastPulseNanos = System.nanoTime();
+        lastRefreshNanos = lastPulseNanos;
+        running = true;
+        pulseTimer.start();
+
+        watchdog = new Thread(this::watch, "bookflow-fx-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    public void stop() {
+        running = false;
+        pulseTimer.stop();
+        if (watchdog != null) {
+            watchdog.interrupt();
+        }
+    }
+
+    // Times a call into the named operation's histogram, failures included
+    public <T> T time(String operation, TimedCall<T> call) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            operations.computeIfAbsent(operation, k -> new LatencyHistogram()).recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    // ---------- FX thread ----------
+
+    private void onPulse(long pulseNanos) {
+        // Same clock as the watchdog, so the two agree on what counts as a stall
+        long now = System.nanoTime();
+        long gapNanos = now - lastPulseNanos;
+        lastPulseNanos = now;
+        frameTimes.recordNanos(gapNanos);
+        framesSinceRefresh++;
+
+        if (gapNanos < STALL_THRESHOLD_MS * 1_000_000L) {
+            // A sample the watchdog took just as the pulse arrived belongs to no stall
+            pendingStall.set(null);
+        } else {
+            // The watchdog usually caught this one mid-stall with a stack; if the stall was
+            // too short for it, it is still recorded, just without a stack
+            Stall stall = pendingStall.getAndSet(null);
+            if (stall == null) {
+                stall = new Stall(System.currentTimeMillis() - gapNanos / 1_000_000L, null);
+            }
+            stall.durationMs = gapNanos / 1_000_000L;
+            synchronized (stalls) {
+                stalls.addLast(stall);
+                if (stalls.size() > MAX_STALLS) {
+                    stalls.removeFirst();
+                }
+                stallCount++;
+            }
+        }
+
+        if (summaryLabel != null && now - lastRefreshNanos >= PANEL_REFRESH_NANOS) {
+            double fps = framesSinceRefresh * 1e9 / (now - lastRefreshNanos);
+            summaryLabel.setText(String.format("%.0f fps · frame p99 %.0f ms · stalls %d",
+                                               fps, frameTimes.percentileMillis(99), stallCount));
+            summaryLabel.setTextFill(gapNanos >= STALL_THRESHOLD_MS * 1_000_000L ? Color.ORANGE : Color.WHITE);
+            framesSinceRefresh = 0;
+            lastRefreshNanos = now;
+        }
+    }
+
+    // ---------- Watchdog ----------
+
+    private void watch() {
+        while (running) {
+            try {
+                Thread.sleep(WATCHDOG_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long silentMs = (System.nanoTime() - lastPulseNanos) / 1_000_000L;
+            Thread fx = fxThread;
+            if (silentMs >= STALL_THRESHOLD_MS && fx != null && pendingStall.get() == null) {
+                // Still inside the blocking call: this stack is the culprit
+                pendingStall.compareAndSet(null,
+                    new Stall(System.currentTimeMillis() - silentMs, fx.getStackTrace()));
+            }
+        }
+    }
+
+    // ---------- Status bar and details ----------
+
+    // Summary label plus a button that opens the details window
+    public Node createPanel() {
+        summaryLabel = new Label("measuring...");
+        summaryLabel.setTextFill(Color.WHITE);
+        summaryLabel.setFont(Font.font("Arial", 12));
+
+        Button details = new Button("Performance");
+        details.setStyle("-fx-font-size: 11px; -fx-padding: 2 8 2 8;");
+        details.setOnAction(e -> showDetails());
+
+        HBox panel = new HBox(10, summaryLabel, details);
+        panel.setAlignment(Pos.CENTER_RIGHT);
+        return panel;
+    }
+
+    private void showDetails() {
+        TextArea text = new TextArea(report());
+        text.setEditable(false);
+        text.setFont(Font.font("Monospaced", 12));
+
+        Label saved = new Label();
+        Button refresh = new Button("Refresh");
+        refresh.setOnAction(e -> text.setText(report()));
+        Button export = new Button("Export report");
+        export.setOnAction(e -> {
+            try {
+                saved.setText("Saved to " + exportReport());
+            } catch (IOException ex) {
+                saved.setText("Export failed: " + ex.getMessage());
+            }
+        });
+        Button reset = new Button("Reset");
+        reset.setOnAction(e -> {
+            reset();
+            text.setText(report());
+        });
+
+        HBox buttons = new HBox(10, refresh, export, reset, saved);
+        buttons.setAlignment(Pos.CENTER_LEFT);
+        buttons.setPadding(new Insets(10, 0, 0, 0));
+        BorderPane root = new BorderPane(text);
+        root.setBottom(buttons);
+        root.setPadding(new Insets(10));
+
+        Stage stage = new Stage();
+        stage.setTitle("BookFlow - Performance");
+        stage.setScene(new Scene(root, 900, 600));
+        stage.show();
+    }
+
+    public void reset() {
+        frameTimes.reset();
+        for (LatencyHistogram histogram : operations.values()) {
+            histogram.reset();
+        }
+        synchronized (stalls) {
+            stalls.clear();
+            stallCount = 0;
+        }
+    }
+
+    // Writes the report to the diagnostics folder and returns its path
+    public Path exportReport() throws IOException {
+        Path dir = new File(REPORT_DIR).toPath();
+        Files.createDirectories(dir);
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path file = dir.resolve("bookflow-performance-" + stamp + ".txt");
+        Files.write(file, report().getBytes(StandardCharsets.UTF_8));
+        System.out.println("✅ Performance report written to " + file);
+        return file;
+    }
+
+    public String report() {
+        DateTimeFormatter time = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder out = new StringBuilder();
+        out.append("BookFlow performance report\n");
+        out.append("Generated:  ").append(LocalDateTime.now().format(time)).append('\n');
+        out.append("Running:    ").append((System.currentTimeMillis() - startedMillis) / 1000).append(" s\n");
+        out.append("Java:       ").append(System.getProperty("java.version")).append(", ")
+           .append(Runtime.getRuntime().availableProcessors()).append(" CPUs, heap ")
+           .append(Runtime.getRuntime().totalMemory() / (1024 * 1024)).append(" of ")
+           .append(Runtime.getRuntime().maxMemory() / (1024 * 1024)).append(" MB, uptime ")
+           .append(ManagementFactory.getRuntimeMXBean().getUptime() / 1000).append(" s\n\n");
+
+        out.append(String.format("Frames (%d): mean %.1f ms, p50 %.1f, p95 %.1f, p99 %.1f, max %.1f%n%n",
+                                 frameTimes.count(), frameTimes.meanMillis(), frameTimes.percentileMillis(50),
+                                 frameTimes.percentileMillis(95), frameTimes.percentileMillis(99),
+                                 frameTimes.maxMillis()));
+
+        out.append("Database calls from the UI (ms)\n");
+        out.append(String.format("%-28s %8s %8s %8s %8s %8s %8s%n", "operation", "count", "mean", "p50", "p95", "p99", "max"));
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(operations).entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            out.append(String.format("%-28s %8d %8.1f %8.1f %8.1f %8.1f %8.1f%n", entry.getKey(), h.count(),
+                                     h.meanMillis(), h.percentileMillis(50), h.percentileMillis(95),
+                                     h.percentileMillis(99), h.maxMillis()));
+        }
+
+        List<Stall> recent;
+        long total;
+        synchronized (stalls) {
+            recent = new ArrayList<>(stalls);
+            total = stallCount;
+        }
+        out.append("\nStalls over ").append(STALL_THRESHOLD_MS).append(" ms: ").append(total)
+           .append(total > recent.size() ? " (last " + recent.size() + " shown)" : "").append('\n');
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            Stall stall = recent.get(i);
+            out.append('\n').append(Instant.ofEpochMilli(stall.startedMillis).atZone(ZoneId.systemDefault())
+                                           .toLocalDateTime().format(time))
+               .append("  blocked ").append(stall.durationMs).append(" ms\n");
+            if (stall.stack == null) {
+                out.append("    (over before the watchdog could sample the FX thread)\n");
+                continue;
+            }
+            for (StackTraceElement frame : stall.stack) {
+                out.append("    at ").append(frame).append('\n');
+            }
+        }
+        return out.toString();
+    }
+}
+
+// ==================== Stall.java ====================
+// One period without FX pulses; stack is the FX thread as the watchdog found it
+class Stall {
+    final long startedMillis;
+    final StackTraceElement[] stack;
+    volatile long durationMs;
+
+    Stall(long startedMillis, StackTraceElement[] stack) {
+        this.startedMillis = startedMillis;
+        this.stack = stack;
+    }
+}
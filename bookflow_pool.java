@@ -0,0 +1,115 @@
+// BookFlow - Connection Pool
+// Created by Michael Semera
+// ConnectionPool.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// ==================== ConnectionPool.java ====================
+// A fixed number of primary connections shared by concurrent request handlers, so
+// requests run their queries side by side instead of queueing on the desk connection.
+// Connections are opened on demand up to the limit and handed out most recently used
+// first; one that sat idle long enough for the server to drop it is checked first.
+class ConnectionPool {
+
+    // Idle longer than this and a connection is pinged before it is handed out
+    private static final long VALIDATE_AFTER_MS = 30_000L;
+    private static final int VALIDATE_TIMEOUT_SECONDS = 1;
+
+    interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    private static final class Idle {
+        final Connection connection;
+        final long sinceMillis;
+
+        Idle(Connection connection, long sinceMillis) {
+            this.connection = connection;
+            this.sinceMillis = sinceMillis;
+        }
+    }
+
+    private final Opener opener;
+    private final int size;
+    private final Semaphore available;
+    private final BlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+    private volatile boolean closed;
+
+    ConnectionPool(Opener opener, int size) {
+        this.opener = opener;
+        this.size = size;
+        this.available = new Semaphore(size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Connections out right now
+    int inUse() {
+        return size - available.availablePermits();
+    }
+
+    // Waits up to timeoutMs for a free connection; null if none came free in time
+    Connection borrow(long timeoutMs) throws SQLException, InterruptedException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        if (!available.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        try {
+            Idle next;
+            while ((next = idle.pollFirst()) != null) {
+                boolean stale = System.currentTimeMillis() - next.sinceMillis > VALIDATE_AFTER_MS;
+                if (!stale || next.connection.isValid(VALIDATE_TIMEOUT_SECONDS)) {
+                    return next.connection;
+                }
+                closeQuietly(next.connection);
+            }
+            return opener.open();
+        } catch (SQLException | RuntimeException e) {
+            available.release();
+            throw e;
+        }
+    }
+
+    // Returns a borrowed connection; one left closed or mid-transaction is dropped instead
+    void release(Connection conn) {
+        try {
+            if (closed || conn.isClosed() || !conn.getAutoCommit()) {
+                closeQuietly(conn);
+            } else {
+                idle.offerFirst(new Idle(conn, System.currentTimeMillis()));
+            }
+        } catch (SQLException e) {
+            closeQuietly(conn);
+        } finally {
+            available.release();
+        }
+    }
+
+    // Closes the idle connections; borrowed ones are closed as they come back
+    void close() {
+        closed = true;
+        Idle next;
+        while ((next = idle.pollFirst()) != null) {
+            closeQuietly(next.connection);
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+}
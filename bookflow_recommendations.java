@@ -0,0 +1,277 @@
+// BookFlow - Recommendations
+// Created by Michael Semera
+// RecommendationEngine.java, IntIntHashMap.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// ==================== RecommendationEngine.java ====================
+// "Patrons who borrowed this also borrowed": a sparse book-to-book matrix counting
+// how many patrons borrowed both books. Built once from the loan history, then
+// updated per loan; lookups are served from memory.
+class RecommendationEngine {
+
+    // Only a patron's most recent distinct books count; keeps heavy borrowers from dominating
+    static final int MAX_HISTORY = Integer.getInteger("bookflow.recommendations.maxHistory", 100);
+    // Pairs seen fewer times than this are dropped after the bulk build
+    static final int MIN_SUPPORT = Integer.getInteger("bookflow.recommendations.minSupport", 2);
+
+    private final Map<Integer, int[]> historyByUser = new HashMap<>();
+    private final Map<Integer, IntIntHashMap> rows = new HashMap<>();
+    private final Map<Integer, int[]> topCache = new HashMap<>();
+    private static final int CACHED_TOP_K = 10;
+
+    // Streams (user, book) pairs ordered by user and issue date, then counts co-borrowed pairs
+    public void build(DatabaseManager db) throws SQLException {
+        Map<Integer, int[]> histories = new HashMap<>();
+        int[] current = { -1 };
+        List<Integer> books = new ArrayList<>();
+
+        db.forEachLoanPair((userId, bookId) -> {
+            if (userId != current[0]) {
+                if (current[0] >= 0) {
+                    histories.put(current[0], recentDistinct(books));
+                }
+                current[0] = userId;
+                books.clear();
+            }
+            books.add(bookId);
+        });
+        if (current[0] >= 0) {
+            histories.put(current[0], recentDistinct(books));
+        }
+
+        build(histories);
+    }
+
+    public void build(Map<Integer, int[]> histories) {
+        int[][] userHistories = histories.values().toArray(new int[0][]);
+        int partitions = Runtime.getRuntime().availableProcessors();
+
+        // Every worker walks all patrons but only counts rows (first book of a pair) it owns,
+        // so the partial matrices are disjoint and need no merge step
+        List<Map<Integer, IntIntHashMap>> partials = new ArrayList<>();
+        for (int p = 0; p < partitions; p++) {
+            partials.add(new HashMap<>());
+        }
+        IntStream.range(0, partitions).parallel().forEach(p -> {
+            Map<Integer, IntIntHashMap> owned = partials.get(p);
+            for (int[] history : userHistories) {
+                for (int a : history) {
+                    if (Math.floorMod(a, partitions) != p) {
+                        continue;
+                    }
+                    IntIntHashMap row = owned.computeIfAbsent(a, k -> new IntIntHashMap(8));
+                    for (int b : history) {
+                        if (b != a) {
+                            row.increment(b, 1);
+                        }
+                    }
+                }
+            }
+            for (IntIntHashMap row : owned.values()) {
+                row.removeBelow(MIN_SUPPORT);
+            }
+        });
+
+        synchronized (this) {
+            historyByUser.clear();
+            historyByUser.putAll(histories);
+            rows.clear();
+            for (Map<Integer, IntIntHashMap> partial : partials) {
+                rows.putAll(partial);
+            }
+            topCache.clear();
+        }
+    }
+
+    // Incremental update for a new loan: pairs it with the patron's earlier books
+    public synchronized void recordLoan(int userId, int bookId) {
+        int[] history = historyByUser.getOrDefault(userId, new int[0]);
+        for (int previous : history) {
+            if (previous == bookId) {
+                return; // Borrowing the same title again adds no new pairs
+            }
+        }
+
+        for (int previous : history) {
+            rows.computeIfAbsent(bookId, k -> new IntIntHashMap(8)).increment(previous, 1);
+            rows.computeIfAbsent(previous, k -> new IntIntHashMap(8)).increment(bookId, 1);
+            topCache.remove(previous);
+        }
+        topCache.remove(bookId);
+
+        int[] updated = Arrays.copyOf(history, history.length + 1);
+        updated[history.length] = bookId;
+        if (updated.length > MAX_HISTORY) {
+            updated = Arrays.copyOfRange(updated, updated.length - MAX_HISTORY, updated.length);
+        }
+        historyByUser.put(userId, updated);
+    }
+
+    // Up to k book ids most often borrowed by patrons who also borrowed bookId
+    public synchronized int[] alsoBorrowed(int bookId, int k) {
+        if (k <= CACHED_TOP_K) {
+            int[] top = topCache.computeIfAbsent(bookId, id -> computeTop(id, CACHED_TOP_K));
+            return top.length <= k ? top : Arrays.copyOf(top, k);
+        }
+        return computeTop(bookId, k);
+    }
+
+    public synchronized int rowCount() {
+        return rows.size();
+    }
+
+    private int[] computeTop(int bookId, int k) {
+        IntIntHashMap row = rows.get(bookId);
+        if (row == null || row.size() == 0) {
+            return new int[0];
+        }
+
+        // Partial selection: keep the k best seen so far in a small sorted array
+        int[] topBooks = new int[k];
+        int[] topCounts = new int[k];
+        int[] size = { 0 };
+        row.forEach((other, count) -> {
+            if (size[0] == k && count <= topCounts[k - 1]) {
+                return;
+            }
+            int position = size[0] < k ? size[0]++ : k - 1;
+            while (position > 0 && topCounts[position - 1] < count) {
+                topBooks[position] = topBooks[position - 1];
+                topCounts[position] = topCounts[position - 1];
+                position--;
+            }
+            topBooks[position] = other;
+            topCounts[position] = count;
+        });
+        return Arrays.copyOf(topBooks, size[0]);
+    }
+
+    private static int[] recentDistinct(List<Integer> books) {
+        // Walk backwards so the most recent MAX_HISTORY distinct books are kept
+        List<Integer> distinct = new ArrayList<>();
+        for (int i = books.size() - 1; i >= 0 && distinct.size() < MAX_HISTORY; i--) {
+            Integer book = books.get(i);
+            if (!distinct.contains(book)) {
+                distinct.add(book);
+            }
+        }
+        int[] result = new int[distinct.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = distinct.get(result.length - 1 - i);
+        }
+        return result;
+    }
+}
+
+// ==================== IntIntHashMap.java ====================
+// Open-addressing int -> int map for counters. Key 0 is reserved as the empty marker.
+class IntIntHashMap {
+
+    interface Visitor {
+        void visit(int key, int value);
+    }
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public int get(int key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public void increment(int key, int delta) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    // Drops entries under the threshold and shrinks the table to fit the rest
+    public void removeBelow(int threshold) {
+        int kept = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && values[i] >= threshold) {
+                kept++;
+            }
+        }
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        int capacity = Integer.highestOneBit(Math.max(4, kept * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0 && oldValues[i] >= threshold) {
+                increment(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                increment(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
\ No newline at end of file
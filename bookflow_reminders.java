@@ -0,0 +1,333 @@
+// BookFlow - Due Date Reminders
+// Created by Michael Semera
+// DueDateReminderJob.java
+
+package com.michaelsemera.bookflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+// ==================== DueDateReminderJob.java ====================
+// Nightly job: streams active loans due within the next few days, looks up the patrons
+// and titles for each batch in two IN queries, and drops one RFC 5322 message per loan
+// into a Maildir-style outbox (written to tmp/, then moved into new/) for the mail relay.
+// Progress is checkpointed after every batch, so a rerun on the same day resumes.
+class DueDateReminderJob {
+
+    static final int DEFAULT_DAYS_AHEAD = Integer.getInteger("bookflow.reminders.daysAhead", 3);
+    static final int DEFAULT_BATCH_SIZE = Integer.getInteger("bookflow.reminders.batchSize", 1000);
+    static final String DEFAULT_OUTBOX = System.getProperty("bookflow.reminders.outbox",
+        System.getProperty("user.home") + File.separator + ".bookflow" + File.separator + "outbox");
+    static final String FROM_ADDRESS = System.getProperty("bookflow.reminders.from", "library@bookflow.local");
+
+    private static final String CHECKPOINT_FILE = "reminders.checkpoint";
+
+    private final DatabaseManager dbManager;
+    private final Path outbox;
+    private final int daysAhead;
+    private final int batchSize;
+
+    // Outcome of one run
+    static class Result {
+        int scanned;
+        int written;
+        int skippedNoEmail;
+        boolean resumed;
+
+        @Override
+        public String toString() {
+            return "scanned " + scanned + ", written " + written + ", no email " + skippedNoEmail +
+                   (resumed ? " (resumed from checkpoint)" : "");
+        }
+    }
+
+    // What the current batch needs from the cursor
+    private static final class DueLoan {
+        final int loanId;
+        final int bookId;
+        final int userId;
+        final LocalDate dueDate;
+
+        DueLoan(int loanId, int bookId, int userId, LocalDate dueDate) {
+            this.loanId = loanId;
+            this.bookId = bookId;
+            this.userId = userId;
+            this.dueDate = dueDate;
+        }
+    }
+
+    public DueDateReminderJob(DatabaseManager dbManager) {
+        this(dbManager, new File(DEFAULT_OUTBOX).toPath(), DEFAULT_DAYS_AHEAD, DEFAULT_BATCH_SIZE);
+    }
+
+    public DueDateReminderJob(DatabaseManager dbManager, Path outbox, int daysAhead, int batchSize) {
+        this.dbManager = dbManager;
+        this.outbox = outbox;
+        this.daysAhead = daysAhead;
+        this.batchSize = batchSize;
+    }
+
+    public Result run() throws SQLException, IOException {
+        return run(LocalDate.now());
+    }
+
+    public Result run(LocalDate runDate) throws SQLException, IOException {
+        Files.createDirectories(outbox.resolve("tmp"));
+        Files.createDirectories(outbox.resolve("new"));
+
+        Result result = new Result();
+        int afterLoanId = 0;
+        Properties checkpoint = readCheckpoint();
+        if (runDate.toString().equals(checkpoint.getProperty("runDate"))) {
+            if (Boolean.parseBoolean(checkpoint.getProperty("complete"))) {
+                System.out.println("✅ Reminders for " + runDate + " already sent");
+                return result;
+            }
+            afterLoanId = Integer.parseInt(checkpoint.getProperty("lastLoanId", "0"));
+            result.resumed = afterLoanId > 0;
+        }
+
+        // The cursor streams on one connection while batch lookups use a second;
+        // a streaming result set blocks its connection for anything else
+        Connection cursorConn = dbManager.openDedicatedReadConnection();
+        Connection lookupConn = dbManager.openDedicatedReadConnection();
+        try {
+            PreparedStatement cursor = cursorConn.prepareStatement(
+                "SELECT id, book_id, user_id, due_date FROM loans " +
+                "WHERE status = 'Active' AND due_date BETWEEN ? AND ? AND id > ? ORDER BY id",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            cursor.setFetchSize(Integer.MIN_VALUE); // Connector/J: stream instead of buffering
+            cursor.setDate(1, Date.valueOf(runDate));
+            cursor.setDate(2, Date.valueOf(runDate.plusDays(daysAhead)));
+            cursor.setInt(3, afterLoanId);
+
+            ResultSet rs = cursor.executeQuery();
+            List<DueLoan> batch = new ArrayList<>(batchSize);
+            while (rs.next()) {
+                batch.add(new DueLoan(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getDate(4).toLocalDate()));
+                if (batch.size() == batchSize) {
+                    processBatch(lookupConn, batch, runDate, result);
+                    batch.clear();
+                }
+            }
+            processBatch(lookupConn, batch, runDate, result);
+
+            rs.close();
+            cursor.close();
+        } finally {
+            cursorConn.close();
+            lookupConn.close();
+        }
+
+        writeCheckpoint(runDate, Integer.MAX_VALUE, true);
+        System.out.println("✅ Due date reminders for " + runDate + ": " + result);
+        return result;
+    }
+
+    private void processBatch(Connection conn, List<DueLoan> batch, LocalDate runDate,
+                              Result result) throws SQLException, IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> userIds = new LinkedHashSet<>();
+        Set<Integer> bookIds = new LinkedHashSet<>();
+        for (DueLoan loan : batch) {
+            userIds.add(loan.userId);
+            bookIds.add(loan.bookId);
+        }
+        Map<Integer, String[]> users = lookup(conn, "SELECT id, name, email FROM users WHERE id IN ", userIds);
+        Map<Integer, String[]> books = lookup(conn, "SELECT id, title, author FROM books WHERE id IN ", bookIds);
+
+        for (DueLoan loan : batch) {
+            result.scanned++;
+            String[] user = users.get(loan.userId);
+            if (user == null || user[1] == null || user[1].isBlank()) {
+                result.skippedNoEmail++;
+                continue;
+            }
+            String[] book = books.getOrDefault(loan.bookId, new String[] { "(unknown title)", "" });
+            writeMessage(loan, user[0], user[1], book[0], book[1], runDate);
+            result.written++;
+        }
+
+        // Only after every file of the batch is in new/: a crash re-renders at most one batch
+        writeCheckpoint(runDate, batch.get(batch.size() - 1).loanId, false);
+    }
+
+    // id -> remaining selected columns, for one IN batch
+    private static Map<Integer, String[]> lookup(Connection conn, String sqlPrefix,
+                                                 Set<Integer> ids) throws SQLException {
+        StringBuilder sql = new StringBuilder(sqlPrefix).append('(');
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+
+        PreparedStatement pstmt = conn.prepareStatement(sql.toString());
+        int index = 1;
+        for (int id : ids) {
+            pstmt.setInt(index++, id);
+        }
+
+        Map<Integer, String[]> rows = new HashMap<>();
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            rows.put(rs.getInt(1), new String[] { rs.getString(2), rs.getString(3) });
+        }
+        rs.close();
+        pstmt.close();
+        return rows;
+    }
+
+    // One deterministic file name per loan and run date, so a resumed run overwrites
+    // rather than duplicates anything it rendered before the crash
+    private void writeMessage(DueLoan loan, String name, String email, String title,
+                              String author, LocalDate runDate) throws IOException {
+        String fileName = "reminder-" + runDate + "-" + loan.loanId + ".eml";
+        String message =
+            "From: BookFlow Library <" + headerValue(FROM_ADDRESS) + ">\r\n" +
+            "To: " + displayName(name) + " <" + headerValue(email) + ">\r\n" +
+            "Subject: " + encodeText("Reminder: \"" + title + "\" is due " + loan.dueDate) + "\r\n" +
+            "Date: " + ZonedDateTime.now().format(DateTimeFormatter.RFC_1123_DATE_TIME) + "\r\n" +
+            "Message-ID: <reminder-" + runDate + "-" + loan.loanId + "@bookflow>\r\n" +
+            "MIME-Version: 1.0\r\n" +
+            "Content-Type: text/plain; charset=UTF-8\r\n" +
+            "\r\n" +
+            "Dear " + name + ",\r\n" +
+            "\r\n" +
+            "This is a reminder that the following book is due back on " + loan.dueDate + ":\r\n" +
+            "\r\n" +
+            "    " + title + (author == null || author.isEmpty() ? "" : " by " + author) + "\r\n" +
+            "\r\n" +
+            "Please return or renew it by then to avoid a late fine.\r\n" +
+            "\r\n" +
+            "BookFlow Library\r\n";
+
+        Path tmp = outbox.resolve("tmp").resolve(fileName);
+        Files.write(tmp, message.getBytes(StandardCharsets.UTF_8));
+        moveIntoPlace(tmp, outbox.resolve("new").resolve(fileName));
+    }
+
+    // ---------- Header values ----------
+    // Patron names and titles come straight from the database, so nothing in them may
+    // end the header line: CR and LF become spaces before anything else is done.
+
+    // UTF-8 bytes per encoded word: 60 base64 characters, inside RFC 2047's 75 limit
+    private static final int ENCODED_WORD_BYTES = 45;
+
+    static String headerValue(String value) {
+        return value.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    // The name before <address>: plain if it's only atoms, a quoted string if it has
+    // specials such as a comma, encoded words if it isn't ASCII
+    static String displayName(String name) {
+        String value = headerValue(name);
+        if (!isAscii(value)) {
+            return encodeText(value);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if ("()<>[]:;@\\,.\"".indexOf(value.charAt(i)) >= 0) {
+                return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            }
+        }
+        return value;
+    }
+
+    // Unstructured text (Subject): as is when ASCII, otherwise RFC 2047 base64 encoded
+    // words, split on whole characters and folded onto continuation lines
+    static String encodeText(String text) {
+        String value = headerValue(text);
+        if (isAscii(value)) {
+            return value;
+        }
+        StringBuilder encoded = new StringBuilder();
+        ByteArrayOutputStream word = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < value.length()) {
+            int end = value.offsetByCodePoints(i, 1);
+            byte[] bytes = value.substring(i, end).getBytes(StandardCharsets.UTF_8);
+            if (word.size() + bytes.length > ENCODED_WORD_BYTES) {
+                appendEncodedWord(encoded, word.toByteArray());
+                word.reset();
+            }
+            word.write(bytes, 0, bytes.length);
+            i = end;
+        }
+        appendEncodedWord(encoded, word.toByteArray());
+        return encoded.toString();
+    }
+
+    private static void appendEncodedWord(StringBuilder encoded, byte[] bytes) {
+        if (encoded.length() > 0) {
+            encoded.append("\r\n ");
+        }
+        encoded.append("=?UTF-8?B?").append(Base64.getEncoder().encodeToString(bytes)).append("?=");
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Properties readCheckpoint() throws IOException {
+        Properties checkpoint = new Properties();
+        Path file = outbox.resolve(CHECKPOINT_FILE);
+        if (Files.exists(file)) {
+            java.io.Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            checkpoint.load(reader);
+            reader.close();
+        }
+        return checkpoint;
+    }
+
+    private void writeCheckpoint(LocalDate runDate, int lastLoanId, boolean complete) throws IOException {
+        String content = "runDate=" + runDate + "\n" +
+                         "lastLoanId=" + lastLoanId + "\n" +
+                         "complete=" + complete + "\n";
+        Path tmp = outbox.resolve("tmp").resolve(CHECKPOINT_FILE);
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        moveIntoPlace(tmp, outbox.resolve(CHECKPOINT_FILE));
+    }
+
+    // The relay must never see a half-written file
+    private static void moveIntoPlace(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            new DueDateReminderJob(dbManager).run();
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,413 @@
+// BookFlow - Search Services
+// Created by Michael Semera
+// AutocompleteService.java, Suggestion.java
+
+package com.michaelsemera.bookflow;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ==================== AutocompleteService.java ====================
+// Prefix suggestions for titles and authors from an in-memory radix trie.
+// Every node caches the top-k suggestions of its subtree, ranked by how often
+// the book has been borrowed, so a lookup is a walk down the typed prefix.
+class AutocompleteService {
+    static final int DEFAULT_TOP_K = 10;
+
+    // Keys are cut here; nobody types further than this before picking a suggestion
+    private static final int MAX_KEY_LENGTH = 32;
+    // Title suffixes are indexed from each of the first few words ("gatsby" finds "The Great Gatsby")
+    private static final int MAX_TITLE_WORD_STARTS = 4;
+
+    private final int topK;
+    private Node root = new Node("");
+    private final Map<Integer, List<Suggestion>> suggestionsByBook = new HashMap<>();
+    private final Map<Integer, Integer> popularity = new HashMap<>();
+
+    public AutocompleteService() {
+        this(DEFAULT_TOP_K);
+    }
+
+    public AutocompleteService(int topK) {
+        this.topK = topK;
+    }
+
+    // Replaces the whole index; loanCounts maps book id to times borrowed
+    public synchronized void rebuild(List<Book> books, Map<Integer, Integer> loanCounts) {
+        root = new Node("");
+        suggestionsByBook.clear();
+        popularity.clear();
+        popularity.putAll(loanCounts);
+
+        for (Book book : books) {
+            for (Suggestion suggestion : createSuggestions(book)) {
+                insert(suggestion, false);
+            }
+        }
+        // One post-order pass is far cheaper than maintaining the caches per insert
+        recomputeSubtree(root);
+    }
+
+    public synchronized void addBook(Book book) {
+        for (Suggestion suggestion : createSuggestions(book)) {
+            insert(suggestion, true);
+        }
+    }
+
+    public synchronized void updateBook(Book book) {
+        removeBook(book.getId());
+        addBook(book);
+    }
+
+    public synchronized void removeBook(int bookId) {
+        List<Suggestion> suggestions = suggestionsByBook.remove(bookId);
+        if (suggestions == null) {
+            return;
+        }
+        for (Suggestion suggestion : suggestions) {
+            remove(suggestion);
+        }
+    }
+
+    // A new loan makes the book rank higher everywhere it appears
+    public synchronized void recordLoan(int bookId) {
+        int count = popularity.merge(bookId, 1, Integer::sum);
+        List<Suggestion> suggestions = suggestionsByBook.get(bookId);
+        if (suggestions == null) {
+            return;
+        }
+        for (Suggestion suggestion : suggestions) {
+            suggestion.setPopularity(count);
+        }
+        for (Suggestion suggestion : suggestions) {
+            recomputePath(findPath(suggestion.getKey(), true));
+        }
+    }
+
+    public synchronized List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Node node = findPrefixNode(key);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+
+        // A book reachable through several suffixes shows up once per display text
+        List<Suggestion> results = new ArrayList<>(limit);
+        Set<String> seen = new HashSet<>();
+        for (Suggestion suggestion : node.top) {
+            if (seen.add(suggestion.getKind() + ":" + suggestion.getText().toLowerCase())) {
+                results.add(suggestion);
+                if (results.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    public synchronized int size() {
+        return suggestionsByBook.size();
+    }
+
+    // ==================== KEYS ====================
+
+    private List<Suggestion> createSuggestions(Book book) {
+        int count = popularity.getOrDefault(book.getId(), 0);
+        List<Suggestion> suggestions = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+
+        String title = normalize(book.getTitle());
+        if (!title.isEmpty()) {
+            int wordStart = 0;
+            for (int word = 0; word < MAX_TITLE_WORD_STARTS && wordStart >= 0; word++) {
+                String key = truncate(title.substring(wordStart));
+                if (keys.add("T" + key)) {
+                    suggestions.add(new Suggestion(key, book.getTitle(), book.getId(),
+                                                   Suggestion.Kind.TITLE, count));
+                }
+                int space = title.indexOf(' ', wordStart);
+                wordStart = space < 0 ? -1 : space + 1;
+            }
+        }
+
+        String author = normalize(book.getAuthor());
+        if (!author.isEmpty()) {
+            keys.add("A" + truncate(author));
+            suggestions.add(new Suggestion(truncate(author), book.getAuthor(), book.getId(),
+                                           Suggestion.Kind.AUTHOR, count));
+            // Surname on its own, e.g. "orwell"
+            int lastSpace = author.lastIndexOf(' ');
+            if (lastSpace > 0 && keys.add("A" + truncate(author.substring(lastSpace + 1)))) {
+                suggestions.add(new Suggestion(truncate(author.substring(lastSpace + 1)), book.getAuthor(),
+                                               book.getId(), Suggestion.Kind.AUTHOR, count));
+            }
+        }
+
+        suggestionsByBook.put(book.getId(), suggestions);
+        return suggestions;
+    }
+
+    // Lower case, accents stripped, punctuation collapsed to single spaces
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD)
+                                  .replaceAll("\\p{M}", "")
+                                  .toLowerCase();
+        StringBuilder sb = new StringBuilder(folded.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(c);
+                pendingSpace = false;
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String truncate(String key) {
+        return key.length() <= MAX_KEY_LENGTH ? key : key.substring(0, MAX_KEY_LENGTH);
+    }
+
+    // ==================== RADIX TRIE ====================
+
+    private void insert(Suggestion suggestion, boolean maintainCaches) {
+        String key = suggestion.getKey();
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int i = 0;
+
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                child = new Node(key.substring(i));
+                node.addChild(child);
+                path.add(child);
+                node = child;
+                break;
+            }
+
+            int common = commonPrefixLength(child.label, key, i);
+            if (common < child.label.length()) {
+                // Split the edge so the new key can branch off (or end) in the middle
+                Node middle = new Node(child.label.substring(0, common));
+                middle.top = child.top;
+                node.replaceChild(child, middle);
+                child.label = child.label.substring(common);
+                middle.addChild(child);
+                child = middle;
+            }
+            path.add(child);
+            node = child;
+            i += common;
+        }
+
+        node.terminals = append(node.terminals, suggestion);
+        if (maintainCaches) {
+            recomputePath(path);
+        }
+    }
+
+    private void remove(Suggestion suggestion) {
+        List<Node> path = findPath(suggestion.getKey(), true);
+        if (path == null) {
+            return;
+        }
+        Node node = path.get(path.size() - 1);
+        node.terminals = without(node.terminals, suggestion);
+        recomputePath(path);
+    }
+
+    // Path from the root to the node where the key ends; exact=false allows ending mid-edge
+    private List<Node> findPath(String key, boolean exact) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int i = 0;
+
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                return null;
+            }
+            int remaining = key.length() - i;
+            if (remaining < child.label.length()) {
+                if (exact || !child.label.startsWith(key.substring(i))) {
+                    return null;
+                }
+                path.add(child);
+                return path;
+            }
+            if (!key.startsWith(child.label, i)) {
+                return null;
+            }
+            path.add(child);
+            node = child;
+            i += child.label.length();
+        }
+        return path;
+    }
+
+    private Node findPrefixNode(String prefix) {
+        List<Node> path = findPath(prefix, false);
+        return path == null ? null : path.get(path.size() - 1);
+    }
+
+    private void recomputePath(List<Node> path) {
+        if (path == null) {
+            return;
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+            recompute(path.get(i));
+        }
+    }
+
+    private void recomputeSubtree(Node node) {
+        for (Node child : node.children) {
+            recomputeSubtree(child);
+        }
+        recompute(node);
+    }
+
+    // Merge of the node's own suggestions with its children's cached top-k
+    private void recompute(Node node) {
+        List<Suggestion> candidates = new ArrayList<>(Arrays.asList(node.terminals));
+        for (Node child : node.children) {
+            candidates.addAll(Arrays.asList(child.top));
+        }
+        candidates.sort(Suggestion.RANKING);
+
+        List<Suggestion> top = new ArrayList<>(topK);
+        Set<Suggestion> seen = new HashSet<>();
+        for (Suggestion candidate : candidates) {
+            if (seen.add(candidate)) {
+                top.add(candidate);
+                if (top.size() == topK) {
+                    break;
+                }
+            }
+        }
+        node.top = top.toArray(new Suggestion[0]);
+    }
+
+    private static int commonPrefixLength(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static Suggestion[] append(Suggestion[] array, Suggestion value) {
+        Suggestion[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = value;
+        return copy;
+    }
+
+    private static Suggestion[] without(Suggestion[] array, Suggestion value) {
+        List<Suggestion> list = new ArrayList<>(Arrays.asList(array));
+        list.remove(value);
+        return list.toArray(new Suggestion[0]);
+    }
+
+    private static final class Node {
+        private static final Suggestion[] NO_SUGGESTIONS = new Suggestion[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        String label;
+        // Children sorted by the first character of their label
+        char[] firstChars = new char[0];
+        Node[] children = NO_CHILDREN;
+        Suggestion[] terminals = NO_SUGGESTIONS;
+        Suggestion[] top = NO_SUGGESTIONS;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(firstChars, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        void addChild(Node child) {
+            char c = child.label.charAt(0);
+            int index = -(Arrays.binarySearch(firstChars, c) + 1);
+
+            char[] chars = new char[firstChars.length + 1];
+            Node[] nodes = new Node[children.length + 1];
+            System.arraycopy(firstChars, 0, chars, 0, index);
+            System.arraycopy(children, 0, nodes, 0, index);
+            chars[index] = c;
+            nodes[index] = child;
+            System.arraycopy(firstChars, index, chars, index + 1, firstChars.length - index);
+            System.arraycopy(children, index, nodes, index + 1, children.length - index);
+            firstChars = chars;
+            children = nodes;
+        }
+
+        void replaceChild(Node oldChild, Node newChild) {
+            children[Arrays.binarySearch(firstChars, oldChild.label.charAt(0))] = newChild;
+        }
+    }
+}
+
+// ==================== Suggestion.java ====================
+class Suggestion {
+    enum Kind { TITLE, AUTHOR }
+
+    // Most borrowed first, then shorter text, then alphabetical
+    static final Comparator<Suggestion> RANKING =
+        Comparator.comparingInt(Suggestion::getPopularity).reversed()
+                  .thenComparingInt((Suggestion s) -> s.getText().length())
+                  .thenComparing(Suggestion::getText, String.CASE_INSENSITIVE_ORDER);
+
+    private final String key;
+    private final String text;
+    private final int bookId;
+    private final Kind kind;
+    private int popularity;
+
+    public Suggestion(String key, String text, int bookId, Kind kind, int popularity) {
+        this.key = key;
+        this.text = text;
+        this.bookId = bookId;
+        this.kind = kind;
+        this.popularity = popularity;
+    }
+
+    // Getters
+    public String getKey() { return key; }
+    public String getText() { return text; }
+    public int getBookId() { return bookId; }
+    public Kind getKind() { return kind; }
+    public int getPopularity() { return popularity; }
+
+    public void setPopularity(int popularity) { this.popularity = popularity; }
+
+    @Override
+    public String toString() {
+        return (kind == Kind.TITLE ? "📖 " : "✍ ") + text;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,301 @@
+// BookFlow - Branch Shards
+// Created by Michael Semera
+// BranchShards.java, BranchBook.java
+
+package com.michaelsemera.bookflow;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// ==================== BranchShards.java ====================
+// One BookFlow database per branch. Single-branch work (checkouts, returns, edits) is
+// routed to that branch's DatabaseManager; consortium-wide search and statistics are
+// scattered to every shard in parallel and gathered under a per-shard timeout, so one
+// slow branch degrades the answer instead of stalling it. Each shard has its own thread,
+// and its calls are bounded on the database side too, so a hung branch holds up only
+// its own next calls.
+//
+// Configured from system properties or the file named by -Dbookflow.shards.config:
+//   bookflow.shards=1,2,3
+//   bookflow.shard.1.url=jdbc:mysql://localhost:3306/    bookflow.shard.1.name=bookflow_branch1
+class BranchShards {
+
+    static final long DEFAULT_TIMEOUT_MS = Long.getLong("bookflow.shards.timeoutMs", 2000L);
+
+    private final Map<Integer, DatabaseManager> shards = new LinkedHashMap<>();
+    private final Map<Integer, ExecutorService> executors = new LinkedHashMap<>();
+    private final long timeoutMs;
+    private AuditJournal auditJournal;
+
+    // What came back from a scatter-gather call, including which shards missed it.
+    // merged is the consortium-wide view built from the shards that answered.
+    static class Gathered<T> {
+        final Map<Integer, T> byBranch = new LinkedHashMap<>();
+        T merged;
+        final List<Integer> timedOut = new ArrayList<>();
+        final Map<Integer, String> failed = new LinkedHashMap<>();
+
+        boolean isComplete() {
+            return timedOut.isEmpty() && failed.isEmpty();
+        }
+    }
+
+    interface ShardCall<T> {
+        T call(DatabaseManager shard) throws SQLException;
+    }
+
+    BranchShards(Map<Integer, DatabaseManager> shards, long timeoutMs) {
+        this.shards.putAll(shards);
+        this.timeoutMs = timeoutMs;
+        // One thread per branch, matching its one connection
+        for (int branchId : shards.keySet()) {
+            executors.put(branchId, Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "bookflow-shard-" + branchId);
+                t.setDaemon(true);
+                return t;
+            }));
+        }
+    }
+
+    // Connects to every configured branch; all of them share one audit journal, if it opens
+    static BranchShards fromConfig() throws SQLException, IOException {
+        Properties config = new Properties();
+        String file = System.getProperty("bookflow.shards.config");
+        if (file != null) {
+            Reader reader = new FileReader(file);
+            config.load(reader);
+            reader.close();
+        }
+        config.putAll(System.getProperties());
+
+        String ids = config.getProperty("bookflow.shards");
+        if (ids == null || ids.isBlank()) {
+            throw new IllegalArgumentException("No branches configured (bookflow.shards)");
+        }
+
+        Map<Integer, DatabaseManager> shards = new LinkedHashMap<>();
+        try {
+            for (String id : ids.split(",")) {
+                int branchId = Integer.parseInt(id.trim());
+                String url = config.getProperty("bookflow.shard." + branchId + ".url", "jdbc:mysql://localhost:3306/");
+                String name = config.getProperty("bookflow.shard." + branchId + ".name", "bookflow_branch" + branchId);
+                shards.put(branchId, new DatabaseManager(url, name, null, false));
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (DatabaseManager shard : shards.values()) {
+                shard.closeConnection();
+            }
+            throw e;
+        }
+
+        BranchShards branchShards = new BranchShards(shards, DEFAULT_TIMEOUT_MS);
+        if (AuditJournal.ENABLED) {
+            try {
+                AuditJournal journal = AuditJournal.open(new File(AuditJournal.DEFAULT_DIR));
+                for (Map.Entry<Integer, DatabaseManager> entry : shards.entrySet()) {
+                    journal.attach(entry.getValue().getEventBus(), entry.getKey());
+                }
+                branchShards.auditJournal = journal;
+            } catch (IOException e) {
+                // Auditing must never keep the branches from working (e.g. a desk on this
+                // machine holds the journal's lock)
+                System.err.println("Audit journal unavailable: " + e.getMessage());
+            }
+        }
+        return branchShards;
+    }
+
+    public List<Integer> branchIds() {
+        return new ArrayList<>(shards.keySet());
+    }
+
+    // The database holding this branch's books and loans. Once a scatter has run, its
+    // SELECTs keep the scatter's time limit; call limitCalls(0) first for long work.
+    public DatabaseManager forBranch(int branchId) {
+        DatabaseManager shard = shards.get(branchId);
+        if (shard == null) {
+            throw new IllegalArgumentException("Unknown branch " + branchId);
+        }
+        return shard;
+    }
+
+    public void initializeAll() throws SQLException {
+        Gathered<Boolean> result = scatter(shard -> {
+            shard.initializeDatabase();
+            return true;
+        }, Long.MAX_VALUE);
+        if (!result.failed.isEmpty()) {
+            throw new SQLException("Branch initialization failed: " + result.failed);
+        }
+    }
+
+    // Runs call on every shard at once; shards that miss the deadline or fail are listed
+    // in the result rather than failing the whole call
+    public <T> Gathered<T> scatter(ShardCall<T> call) {
+        return scatter(call, timeoutMs);
+    }
+
+    private <T> Gathered<T> scatter(ShardCall<T> call, long timeout) {
+        // cancel(true) doesn't interrupt a running call, so the database bounds it instead;
+        // a call still queued when its future is cancelled is skipped
+        long limitMs = timeout == Long.MAX_VALUE ? 0 : timeout;
+        Map<Integer, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        for (Map.Entry<Integer, DatabaseManager> entry : shards.entrySet()) {
+            DatabaseManager shard = entry.getValue();
+            futures.put(entry.getKey(), CompletableFuture.supplyAsync(() -> {
+                try {
+                    shard.limitCalls(limitMs);
+                    return call.call(shard);
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, executors.get(entry.getKey())));
+        }
+
+        // One deadline for the whole fan-out: each shard gets whatever time is left
+        long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeout * 1_000_000L;
+        Gathered<T> gathered = new Gathered<>();
+        for (Map.Entry<Integer, CompletableFuture<T>> entry : futures.entrySet()) {
+            try {
+                long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.nanoTime());
+                gathered.byBranch.put(entry.getKey(), entry.getValue().get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                gathered.timedOut.add(entry.getKey());
+            } catch (ExecutionException e) {
+                gathered.failed.put(entry.getKey(), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                gathered.timedOut.add(entry.getKey());
+            }
+        }
+        return gathered;
+    }
+
+    // Consortium catalogue search: each shard ranks its own matches, then the per-branch
+    // lists are k-way merged by score so only the top `limit` are ever compared
+    public Gathered<List<BranchBook>> search(String query, int limit) {
+        Gathered<List<BranchBook>> gathered = scatter(shard -> {
+            List<BranchBook> hits = new ArrayList<>();
+            for (Book book : shard.searchBooks(query)) {
+                hits.add(new BranchBook(0, book, BranchBook.score(book, query)));
+            }
+            hits.sort(BranchBook.RANKING);
+            return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+        });
+
+        // Heap of (branch, position) cursors, one per branch list
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Comparator.comparing(
+            (int[] head) -> gathered.byBranch.get(head[0]).get(head[1]), BranchBook.RANKING));
+        for (Map.Entry<Integer, List<BranchBook>> entry : gathered.byBranch.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                heads.add(new int[] { entry.getKey(), 0 });
+            }
+        }
+        List<BranchBook> results = new ArrayList<>();
+        while (!heads.isEmpty() && results.size() < limit) {
+            int[] head = heads.poll();
+            List<BranchBook> list = gathered.byBranch.get(head[0]);
+            BranchBook hit = list.get(head[1]);
+            results.add(new BranchBook(head[0], hit.getBook(), hit.getScore()));
+            if (head[1] + 1 < list.size()) {
+                heads.add(new int[] { head[0], head[1] + 1 });
+            }
+        }
+        gathered.merged = results;
+        return gathered;
+    }
+
+    // Per-branch counters, summed into the consortium total
+    public Gathered<DashboardStats> stats() {
+        Gathered<DashboardStats> gathered = scatter(DatabaseManager::getDashboardStats);
+        DashboardStats total = new DashboardStats(0, 0, 0, 0);
+        for (DashboardStats stats : gathered.byBranch.values()) {
+            total.setTotalBooks(total.getTotalBooks() + stats.getTotalBooks());
+            total.setAvailableBooks(total.getAvailableBooks() + stats.getAvailableBooks());
+            total.setTotalUsers(total.getTotalUsers() + stats.getTotalUsers());
+            total.setActiveLoans(total.getActiveLoans() + stats.getActiveLoans());
+        }
+        gathered.merged = total;
+        return gathered;
+    }
+
+    public void close() {
+        for (ExecutorService executor : executors.values()) {
+            executor.shutdownNow();
+        }
+        for (DatabaseManager shard : shards.values()) {
+            shard.closeConnection();
+        }
+        if (auditJournal != null) {
+            auditJournal.close();
+        }
+    }
+}
+
+// ==================== BranchBook.java ====================
+// A search hit tagged with the branch that holds it
+class BranchBook {
+
+    // Best score first; ties go to books with a copy on the shelf, then by title
+    static final Comparator<BranchBook> RANKING = Comparator
+        .comparingDouble(BranchBook::getScore).reversed()
+        .thenComparing(hit -> hit.getBook().getAvailableCopies() > 0 ? 0 : 1)
+        .thenComparing(hit -> hit.getBook().getTitle(), Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+
+    private final int branchId;
+    private final Book book;
+    private final double score;
+
+    public BranchBook(int branchId, Book book, double score) {
+        this.branchId = branchId;
+        this.book = book;
+        this.score = score;
+    }
+
+    public int getBranchId() { return branchId; }
+    public Book getBook() { return book; }
+    public double getScore() { return score; }
+
+    // Relevance of a LIKE match: exact ISBN or title beats a title prefix, which beats
+    // a word inside the title, which beats an author match
+    static double score(Book book, String query) {
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        String title = book.getTitle() == null ? "" : book.getTitle().toLowerCase(Locale.ROOT);
+        String author = book.getAuthor() == null ? "" : book.getAuthor().toLowerCase(Locale.ROOT);
+        if (q.equals(title) || q.equals(book.getIsbn())) {
+            return 4;
+        }
+        if (title.startsWith(q)) {
+            return 3;
+        }
+        if (title.contains(" " + q)) {
+            return 2.5;
+        }
+        if (title.contains(q)) {
+            return 2;
+        }
+        if (author.contains(q)) {
+            return 1;
+        }
+        return 0.5;
+    }
+}
\ No newline at end of file
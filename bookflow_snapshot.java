@@ -0,0 +1,253 @@
+// BookFlow - Catalog Snapshot
+// Created by Michael Semera
+// CatalogSnapshot.java
+
+package com.michaelsemera.bookflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// ==================== CatalogSnapshot.java ====================
+// The catalogue as of the last time this desk saw it, kept in a local binary file.
+// On startup the file is memory-mapped and decoded, then only books changed
+// (books.updated_at) or deleted (book_deletions) since it was written are fetched,
+// so a morning of desks logging in costs the database a few index range scans
+// instead of a full catalogue read each.
+//
+// File layout: 32-byte header (magic, version, watermark, book count, CRC32 of the
+// body), then per book: id, year, total and available copies, and the title, author,
+// ISBN, publisher and category as length-prefixed UTF-8 (-1 for null).
+class CatalogSnapshot {
+
+    static final boolean ENABLED =
+        Boolean.parseBoolean(System.getProperty("bookflow.snapshot.enabled", "true"));
+    static final String DEFAULT_DIR = System.getProperty("bookflow.snapshot.dir",
+        System.getProperty("user.home") + File.separator + ".bookflow" + File.separator + "cache");
+    // Every checkout and return touches books.updated_at, so at a busy desk nearly every
+    // sync has changes; the file is rewritten at most this often, and at shutdown
+    static final long SAVE_INTERVAL_MS = Long.getLong("bookflow.snapshot.saveIntervalMs", 10 * 60_000L);
+
+    private static final int MAGIC = 0x42464353; // "BFCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    // Each catch-up re-reads this much before the watermark, so rows from transactions
+    // that committed just after the last read are not missed (re-applying is harmless)
+    private static final long OVERLAP_MS = 60_000;
+
+    // Same order as getAllBooks (ORDER BY title)
+    static final Comparator<Book> BY_TITLE = Comparator
+        .comparing(Book::getTitle, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+        .thenComparingInt(Book::getId);
+
+    private final File file;
+    private final Map<Integer, Book> books = new HashMap<>();
+    // Server time up to which this copy is complete; -1 until loaded or fetched
+    private long watermark = -1;
+    // Changes not yet in the file. The file keeps its own older watermark, so a start
+    // from it just catches up a little further.
+    private boolean dirty;
+    private boolean saved;
+    private long savedAtNanos;
+
+    CatalogSnapshot(File dir, String databaseName) {
+        this.file = new File(dir, "catalog-" + databaseName + ".snap");
+    }
+
+    // The current catalogue in title order. The first call starts from the snapshot file
+    // (or a full read if there is none); every call then applies the changes since the
+    // previous one. The file is rewritten when there are changes and SAVE_INTERVAL_MS has
+    // passed since the last write (at once after the first load).
+    public synchronized List<Book> sync(DatabaseManager db) throws SQLException {
+        // Taken before the reads, so anything committed while they run is fetched next time
+        long serverNow = db.readServerTimeMillis();
+        if (watermark < 0) {
+            load();
+        }
+
+        boolean changed;
+        if (watermark < 0) {
+            books.clear();
+            for (Book book : db.getAllBooks()) {
+                books.put(book.getId(), book);
+            }
+            changed = true;
+            System.out.println("✅ Catalog snapshot: full load of " + books.size() + " books");
+        } else {
+            long since = watermark - OVERLAP_MS;
+            List<Book> updated = db.getBooksChangedSince(since);
+            List<Integer> deleted = db.getBookDeletionsSince(since);
+            for (Book book : updated) {
+                books.put(book.getId(), book);
+            }
+            for (int id : deleted) {
+                books.remove(id);
+            }
+            changed = !updated.isEmpty() || !deleted.isEmpty();
+        }
+        watermark = serverNow;
+
+        dirty |= changed;
+        if (dirty && (!saved || System.nanoTime() - savedAtNanos >= SAVE_INTERVAL_MS * 1_000_000L)) {
+            saveQuietly();
+        }
+
+        List<Book> result = new ArrayList<>(books.values());
+        result.sort(BY_TITLE);
+        return result;
+    }
+
+    public synchronized int size() {
+        return books.size();
+    }
+
+    // Writes any changes the interval has held back; for shutdown
+    public synchronized void flush() {
+        if (dirty) {
+            saveQuietly();
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+            dirty = false;
+        } catch (IOException e) {
+            // Only costs a slower start next time
+            System.err.println("Catalog snapshot not saved: " + e.getMessage());
+        }
+        // A failed write isn't retried on every sync either
+        saved = true;
+        savedAtNanos = System.nanoTime();
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    System.err.println("Catalog snapshot ignored: unrecognized file " + file);
+                    return;
+                }
+                long savedWatermark = buffer.getLong(8);
+                int count = buffer.getInt(16);
+                int checksum = buffer.getInt(20);
+
+                ByteBuffer body = buffer.duplicate();
+                body.position(HEADER_BYTES);
+                CRC32 crc = new CRC32();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    System.err.println("Catalog snapshot ignored: checksum mismatch in " + file);
+                    return;
+                }
+
+                for (int i = 0; i < count; i++) {
+                    int id = body.getInt();
+                    int year = body.getInt();
+                    int total = body.getInt();
+                    int available = body.getInt();
+                    String title = readString(body);
+                    String author = readString(body);
+                    String isbn = readString(body);
+                    String publisher = readString(body);
+                    String category = readString(body);
+                    books.put(id, new Book(id, title, author, isbn, publisher, year, category, total, available));
+                }
+                watermark = savedWatermark;
+            } finally {
+                raf.close();
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("✅ Catalog snapshot: " + books.size() + " books mapped in " + elapsedMs + " ms");
+        } catch (IOException | RuntimeException e) {
+            books.clear();
+            watermark = -1;
+            System.err.println("Catalog snapshot ignored: " + e.getMessage());
+        }
+    }
+
+    // Written beside the old file and moved over it, so a crash never leaves half a snapshot
+    private void save() throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(Math.max(1024, books.size() * 128));
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        for (Book book : books.values()) {
+            body.writeInt(book.getId());
+            body.writeInt(book.getPublicationYear());
+            body.writeInt(book.getTotalCopies());
+            body.writeInt(book.getAvailableCopies());
+            writeString(body, book.getTitle());
+            writeString(body, book.getAuthor());
+            writeString(body, book.getIsbn());
+            writeString(body, book.getPublisher());
+            writeString(body, book.getCategory());
+        }
+        body.flush();
+        byte[] bytes = bodyBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putLong(watermark).putInt(books.size()).putInt((int) crc.getValue());
+
+        Path target = file.toPath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(temp.toFile(), "rw");
+        try {
+            raf.setLength(0);
+            raf.write(header.array());
+            raf.write(bytes);
+        } finally {
+            raf.close();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
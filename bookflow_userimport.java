@@ -0,0 +1,223 @@
+// BookFlow - User Import
+// Created by Michael Semera
+// UserImporter.java, BloomFilter.java
+
+package com.michaelsemera.bookflow;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// ==================== UserImporter.java ====================
+// Term-start roster uploads. Emails are normalized, and a Bloom filter built from the
+// registered emails sorts the roster: a "no" from the filter is certain, so those
+// students go straight into the insert batches; only the "maybe" rows (re-registrations
+// plus about 1% false positives) are checked against the database, a batch at a time.
+// No row ever costs a failed INSERT round trip.
+class UserImporter {
+
+    // Target false-positive rate of the prefilter
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final DatabaseManager dbManager;
+
+    // Outcome of one import
+    static class Result {
+        int rows;
+        int invalid;
+        int duplicatesInFile;
+        int alreadyRegistered;
+        int verified;       // rows the filter couldn't rule out, checked in the database
+        int inserted;
+
+        @Override
+        public String toString() {
+            return rows + " rows: " + inserted + " registered, " + alreadyRegistered + " already registered, " +
+                   duplicatesInFile + " repeated in file, " + invalid + " invalid (" + verified +
+                   " checked against the database)";
+        }
+    }
+
+    UserImporter(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    // Lowercased, trimmed; null if it can't be an address
+    static String normalizeEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        String normalized = email.trim().toLowerCase(Locale.ROOT);
+        if (normalized.startsWith("mailto:")) {
+            normalized = normalized.substring(7);
+        }
+        int at = normalized.indexOf('@');
+        if (at <= 0 || at != normalized.lastIndexOf('@') || at == normalized.length() - 1 ||
+            normalized.indexOf(' ') >= 0) {
+            return null;
+        }
+        return normalized;
+    }
+
+    // One of the users.membership_type values; rosters default to Student
+    static String normalizeMembership(String type) {
+        if (type == null || type.isBlank()) {
+            return "Student";
+        }
+        for (String known : new String[] { "Basic", "Premium", "Student" }) {
+            if (known.equalsIgnoreCase(type.trim())) {
+                return known;
+            }
+        }
+        return null;
+    }
+
+    public Result importUsers(List<User> roster) throws SQLException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        result.rows = roster.size();
+
+        // Clean rows, minus repeats within the file itself
+        List<User> candidates = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (User user : roster) {
+            String email = normalizeEmail(user.getEmail());
+            String membership = normalizeMembership(user.getMembershipType());
+            if (email == null || membership == null || user.getName() == null || user.getName().isBlank()) {
+                result.invalid++;
+                continue;
+            }
+            if (!seen.add(email)) {
+                result.duplicatesInFile++;
+                continue;
+            }
+            user.setEmail(email);
+            user.setName(user.getName().trim());
+            user.setMembershipType(membership);
+            if (user.getRegistrationDate() == null) {
+                user.setRegistrationDate(LocalDate.now());
+            }
+            candidates.add(user);
+        }
+
+        BloomFilter registered = buildFilter(candidates.size());
+
+        List<User> definitelyNew = new ArrayList<>();
+        List<User> maybeRegistered = new ArrayList<>();
+        for (User user : candidates) {
+            (registered.mightContain(user.getEmail()) ? maybeRegistered : definitelyNew).add(user);
+        }
+
+        // Settle the maybes with IN lookups; registered emails may be stored in any case
+        result.verified = maybeRegistered.size();
+        if (!maybeRegistered.isEmpty()) {
+            List<String> emails = new ArrayList<>();
+            for (User user : maybeRegistered) {
+                emails.add(user.getEmail());
+            }
+            Set<String> existing = new HashSet<>();
+            for (String email : dbManager.findExistingEmails(emails)) {
+                existing.add(normalizeEmail(email));
+            }
+            for (User user : maybeRegistered) {
+                if (existing.contains(user.getEmail())) {
+                    result.alreadyRegistered++;
+                } else {
+                    definitelyNew.add(user);
+                }
+            }
+        }
+
+        // Registered by someone else since the filter was built
+        int raced = dbManager.importUsers(definitelyNew);
+        result.alreadyRegistered += raced;
+        result.inserted = definitelyNew.size() - raced;
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("✅ User import: " + result + " in " + elapsedMs + " ms");
+        return result;
+    }
+
+    // Sized for everyone registered plus this roster, filled from one streamed pass over
+    // the primary (streamUserEmails never reads a replica)
+    private BloomFilter buildFilter(int incoming) throws SQLException {
+        BloomFilter filter = new BloomFilter(dbManager.getTotalUsers() + incoming, FALSE_POSITIVE_RATE);
+        Stream<String> emails = dbManager.streamUserEmails();
+        try {
+            for (Iterator<String> it = emails.iterator(); it.hasNext(); ) {
+                String email = normalizeEmail(it.next());
+                if (email != null) {
+                    filter.add(email);
+                }
+            }
+        } catch (DatabaseManager.CursorException e) {
+            throw e.getCause();
+        } finally {
+            emails.close();
+        }
+        return filter;
+    }
+}
+
+// ==================== BloomFilter.java ====================
+// Set membership with no false negatives and a tunable false-positive rate, in
+// m = -n ln p / (ln 2)^2 bits. The k probe positions come from one 64-bit hash split
+// in two (Kirsch-Mitzenmacher double hashing).
+class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomFilter(int expectedItems, double falsePositiveRate) {
+        int n = Math.max(1, expectedItems);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, m);
+        this.bits = new long[(int) ((bitCount + 63) >>> 6)];
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    public void add(String value) {
+        long hash = hash64(value);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash64(value);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a over the characters, then a final avalanche so both halves are well mixed
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
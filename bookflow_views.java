@@ -0,0 +1,128 @@
+// BookFlow - RetainedView.java
+// Created by Michael Semera
+// Keeps a view's scene graph alive between navigations and refreshes its data
+// in the background (stale-while-revalidate)
+
+package com.michaelsemera.bookflow;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+class RetainedView<T> {
+
+    // How long loaded data counts as fresh; override with -Dbookflow.view.freshnessMs
+    static final long DEFAULT_FRESHNESS_MS = Long.getLong("bookflow.view.freshnessMs", 15_000L);
+
+    private final Supplier<Node> builder;
+    private final Callable<T> loader;
+    private final Consumer<T> applier;
+    private final Executor executor;
+    private final long freshnessNanos;
+
+    // Everything below is only touched on the FX thread
+    private Node node;
+    private boolean loaded;
+    private long loadedAtNanos;
+    private boolean refreshing;
+    private boolean reloadRequested;
+    private int generation; // bumped whenever data is applied, so superseded loads are dropped
+    private Consumer<Throwable> onError = e -> { };
+
+    RetainedView(Supplier<Node> builder, Callable<T> loader, Consumer<T> applier, Executor executor) {
+        this(builder, loader, applier, executor, DEFAULT_FRESHNESS_MS);
+    }
+
+    RetainedView(Supplier<Node> builder, Callable<T> loader, Consumer<T> applier,
+                 Executor executor, long freshnessMillis) {
+        this.builder = builder;
+        this.loader = loader;
+        this.applier = applier;
+        this.executor = executor;
+        this.freshnessNanos = freshnessMillis * 1_000_000L;
+    }
+
+    void setOnError(Consumer<Throwable> onError) {
+        this.onError = onError;
+    }
+
+    // Built on first use and reused for every later navigation
+    Node getNode() {
+        if (node == null) {
+            node = builder.get();
+        }
+        return node;
+    }
+
+    boolean isStale() {
+        return !loaded || System.nanoTime() - loadedAtNanos > freshnessNanos;
+    }
+
+    void refreshIfStale() {
+        if (isStale()) {
+            refresh();
+        }
+    }
+
+    // Reloads in the background; the view keeps showing the last data meanwhile
+    void refresh() {
+        if (refreshing) {
+            // The in-flight load may have started before the change we now need to see
+            reloadRequested = true;
+            return;
+        }
+        refreshing = true;
+        int startGeneration = generation;
+
+        executor.execute(() -> {
+            try {
+                T data = loader.call();
+                Platform.runLater(() -> {
+                    if (startGeneration == generation) {
+                        accept(data);
+                    }
+                    finishRefresh();
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    finishRefresh();
+                    onError.accept(e);
+                });
+            }
+        });
+    }
+
+    private void finishRefresh() {
+        refreshing = false;
+        if (reloadRequested) {
+            reloadRequested = false;
+            refresh();
+        }
+    }
+
+    // Applies data loaded elsewhere (e.g. during startup) and marks the view fresh
+    void accept(T data) {
+        generation++;
+        applier.accept(data);
+        loaded = true;
+        loadedAtNanos = System.nanoTime();
+    }
+
+    void invalidate() {
+        loaded = false;
+    }
+
+    // Called after the data was patched in place: a load that started before the
+    // patch could overwrite it with older rows, so its result is dropped and a fresh
+    // load follows it
+    void supersedeInFlight() {
+        generation++;
+        if (refreshing) {
+            reloadRequested = true;
+        }
+    }
+}
\ No newline at end of file